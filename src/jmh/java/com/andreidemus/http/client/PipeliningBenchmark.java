@@ -0,0 +1,80 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import com.andreidemus.http.server.Responses;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of GET requests to an in-process keep-alive {@link Responses} server, pipelined by
+ * {@link RequestsClient#sendAll(List)} or sent one by one over a pooled connection
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipeliningBenchmark {
+    @Param({"10", "100"})
+    public int batchSize;
+
+    @Param({"1", "16"})
+    public int pipelineDepth;
+
+    private Responses server;
+    private RequestsClient client;
+    private List<Request> requests;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = Responses.builder()
+                          .maxRecordedRequests(1)
+                          .build();
+        final String url = "http://127.0.0.1:" + server.start(0);
+        requests = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            requests.add(new Request(url).path("items").pathParam("page", i).method("GET"));
+        }
+        client = RequestsClient.builder()
+                               .engine(Engine.NIO)
+                               .pipelineDepth(pipelineDepth)
+                               .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public List<Response> sendAll() {
+        return client.sendAll(requests);
+    }
+
+    @Benchmark
+    public List<Response> sequential() {
+        final List<Response> responses = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            responses.add(client.send(request));
+        }
+        return responses;
+    }
+}
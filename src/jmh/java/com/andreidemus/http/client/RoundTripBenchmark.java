@@ -0,0 +1,58 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import com.andreidemus.http.server.Responses;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request sent by {@link RequestsClient} to an in-process {@link Responses} server over the loopback interface
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+    @Param({"NIO", "URL_CONNECTION"})
+    public Engine engine;
+
+    private Responses server;
+    private RequestsClient client;
+    private Request request;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new Responses();
+        request = new Request("http://127.0.0.1:" + server.start(0)).path("/round-trip");
+        client = RequestsClient.builder()
+                               .engine(engine)
+                               .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public Response get() {
+        return client.get(request);
+    }
+}
@@ -0,0 +1,102 @@
+package com.andreidemus.http.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building requests with the immutable fluent API and rendering their parameters
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+    private final Request request = new Request("http://localhost:8080")
+            .path("items")
+            .header("Accept", "application/json")
+            .header("User-Agent", "http-kit")
+            .pathParam("page", 2)
+            .pathParam("size", 50)
+            .pathParam("q", "name with spaces & symbols")
+            .formParam("id", 1)
+            .formParam("id", 2)
+            .formParam("comment", "a=b&c");
+    private final ByteBuffer wire = ByteBuffer.allocateDirect(4096);
+
+    @Benchmark
+    public Request headers() {
+        return new Request("http://localhost:8080")
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .header("Authorization", "Bearer token")
+                .header("User-Agent", "http-kit")
+                .header("X-Request-Id", "42");
+    }
+
+    @Benchmark
+    public Request pathParams() {
+        return new Request("http://localhost:8080")
+                .path("items")
+                .pathParam("page", 2)
+                .pathParam("size", 50)
+                .pathParam("sort", "name")
+                .pathParam("q", "name with spaces");
+    }
+
+    @Benchmark
+    public Request headersWithBuilder() {
+        return Request.builder("http://localhost:8080")
+                      .header("Accept", "application/json")
+                      .header("Accept-Encoding", "gzip")
+                      .header("Authorization", "Bearer token")
+                      .header("User-Agent", "http-kit")
+                      .header("X-Request-Id", "42")
+                      .build();
+    }
+
+    @Benchmark
+    public Request pathParamsWithBuilder() {
+        return Request.builder("http://localhost:8080")
+                      .path("items")
+                      .pathParam("page", 2)
+                      .pathParam("size", 50)
+                      .pathParam("sort", "name")
+                      .pathParam("q", "name with spaces")
+                      .build();
+    }
+
+    /**
+     * Encodes the params of a new request, a request caches its encoded params
+     */
+    @Benchmark
+    public String pathParamsAsString() {
+        return request.toBuilder().build().pathParamsAsString();
+    }
+
+    @Benchmark
+    public String formParamsAsString() {
+        return request.toBuilder().build().formParamsAsString();
+    }
+
+    /**
+     * Serializes the request line, headers and form body of a new request straight into a buffer
+     */
+    @Benchmark
+    public ByteBuffer writeTo() {
+        wire.clear();
+        request.toBuilder().build().writeTo(wire);
+        return wire;
+    }
+}
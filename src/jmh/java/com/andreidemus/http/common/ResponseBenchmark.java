@@ -0,0 +1,79 @@
+package com.andreidemus.http.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating a response from the parsed head, which includes the charset detection, and decoding its body
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseBenchmark {
+    private final byte[] body = "{\"id\": 1, \"name\": \"Item\", \"tags\": [\"one\", \"two\"]}".getBytes(StandardCharsets.UTF_8);
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Headers fields;
+
+    public ResponseBenchmark() {
+        headers.put("Content-Type", Collections.singletonList("application/json; charset=utf-8"));
+        headers.put("Content-Length", Collections.singletonList(String.valueOf(body.length)));
+        headers.put("Cache-Control", Arrays.asList("no-cache", "private"));
+        headers.put("Date", Collections.singletonList("Mon, 01 Jan 2018 00:00:00 GMT"));
+        fields = Headers.of(headers);
+    }
+
+    @Benchmark
+    public Response create() {
+        return new Response(200, "OK", body, headers);
+    }
+
+    /**
+     * The way the client creates responses, from the fields collected by the parser
+     */
+    @Benchmark
+    public Response createFromFields() {
+        return new Response(200, "OK", body, fields);
+    }
+
+    /**
+     * Collects the fields the way the parser does, names in arbitrary case
+     */
+    @Benchmark
+    public Headers buildFields() {
+        return Headers.builder()
+                      .add("content-type", "application/json; charset=utf-8")
+                      .add("Content-Length", "52")
+                      .add("cache-control", "no-cache")
+                      .add("Cache-Control", "private")
+                      .add("X-Request-Id", "42")
+                      .build();
+    }
+
+    @Benchmark
+    public String lookupWellKnown() {
+        return fields.first(Headers.CONTENT_LENGTH);
+    }
+
+    @Benchmark
+    public String createAndDecode() {
+        return new Response(200, "OK", body, headers).text();
+    }
+}
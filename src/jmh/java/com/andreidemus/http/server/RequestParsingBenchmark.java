@@ -0,0 +1,52 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a request head by the test server
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestParsingBenchmark {
+    private final byte[] request = ("GET /items?page=2&size=50 HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "Accept: application/json\r\n" +
+            "Accept-Encoding: gzip, deflate\r\n" +
+            "User-Agent: http-kit\r\n" +
+            "If-Modified-Since: Mon, 01 Jan 2018 00:00:00 GMT\r\n" +
+            "X-Request-Id: 42\r\n" +
+            "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    @Benchmark
+    public Request parse() {
+        final RequestParser parser = new RequestParser();
+        parser.parseHead(ByteBuffer.wrap(request));
+        return parser.request(new byte[0]);
+    }
+
+    @Benchmark
+    public Request parseSplit() {
+        // the head arrives in two reads, the parser resumes in the middle of a header line
+        final RequestParser parser = new RequestParser();
+        parser.parseHead(ByteBuffer.wrap(request, 0, 100));
+        parser.parseHead(ByteBuffer.wrap(request, 100, request.length - 100));
+        return parser.request(new byte[0]);
+    }
+}
@@ -0,0 +1,70 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Choosing the stub for a request among a few dozen routes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteBenchmark {
+    private RouteTable routes = RouteTable.EMPTY;
+    private Request literal;
+    private Request wildcard;
+    private Request unmatched;
+
+    @Setup
+    public void setUp() {
+        final Stub stub = Stub.builder(200).body("[]").build();
+        for (String resource : new String[]{"users", "orders", "items", "carts", "payments", "reviews"}) {
+            routes = routes.with(Route.get("/api/" + resource), stub)
+                           .with(Route.post("/api/" + resource), stub)
+                           .with(Route.get("/api/" + resource + "/*"), stub)
+                           .with(Route.builder("GET", "/api/" + resource).queryParam("page", 2).build(), stub);
+        }
+        routes = routes.with(Route.any("/static/**"), stub);
+        literal = request("GET /api/payments?page=2&size=50 HTTP/1.1");
+        wildcard = request("GET /api/reviews/42 HTTP/1.1");
+        unmatched = request("GET /api/reviews/42/comments HTTP/1.1");
+    }
+
+    @Benchmark
+    public Stub matchLiteral() {
+        return routes.match(literal);
+    }
+
+    @Benchmark
+    public Stub matchWildcard() {
+        return routes.match(wildcard);
+    }
+
+    @Benchmark
+    public Stub matchNone() {
+        return routes.match(unmatched);
+    }
+
+    private static Request request(String requestLine) {
+        final RequestParser parser = new RequestParser();
+        parser.parseHead(ByteBuffer.wrap((requestLine + "\r\nHost: localhost\r\nAccept: application/json\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII)));
+        return parser.request(new byte[0]);
+    }
+}
@@ -0,0 +1,83 @@
+package com.andreidemus.http.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable byte sequence made of pooled chunks, so reading a body of unknown length doesn't
+ * reallocate and copy the whole content every time it outgrows the buffer
+ */
+class BodyBuffer {
+    private final BufferPool pool;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long size;
+
+    BodyBuffer(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return the chunk to write the next bytes to, it has at least one byte of free space
+     */
+    ByteBuffer writable() {
+        if (!chunks.isEmpty()) {
+            final ByteBuffer last = chunks.get(chunks.size() - 1);
+            if (last.hasRemaining()) {
+                return last;
+            }
+        }
+        final ByteBuffer chunk = pool.acquire();
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    /**
+     * Must be called after bytes are put into the chunk returned by {@link #writable()}
+     */
+    void written(int count) throws IOException {
+        size += count;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Response body is too large: more than " + Integer.MAX_VALUE + " bytes");
+        }
+    }
+
+    /**
+     * Reads the stream to the end
+     */
+    void readFrom(InputStream in) throws IOException {
+        while (true) {
+            final ByteBuffer chunk = writable();
+            final int read = in.read(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            if (read < 0) {
+                return;
+            }
+            chunk.position(chunk.position() + read);
+            written(read);
+        }
+    }
+
+    /**
+     * Copies the content to an array of the exact size and returns the chunks to the pool
+     */
+    byte[] toByteArray() {
+        final byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        for (ByteBuffer chunk : chunks) {
+            chunk.flip();
+            final int length = chunk.remaining();
+            chunk.get(bytes, offset, length);
+            offset += length;
+        }
+        release();
+        return bytes;
+    }
+
+    void release() {
+        chunks.forEach(pool::release);
+        chunks.clear();
+        size = 0;
+    }
+}
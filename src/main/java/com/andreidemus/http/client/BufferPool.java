@@ -0,0 +1,47 @@
+package com.andreidemus.http.client;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of equally sized heap buffers used to accumulate response bodies of unknown length
+ */
+class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return a cleared buffer, a new one is allocated if the pool is empty
+     */
+    ByteBuffer acquire() {
+        final ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool, it must not be used by the caller afterwards
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || pooled.incrementAndGet() > maxPooled) {
+            if (buffer.capacity() == bufferSize) {
+                pooled.decrementAndGet();
+            }
+            return;
+        }
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,70 @@
+package com.andreidemus.http.client;
+
+/**
+ * Snapshot of the response cache state
+ */
+public class CacheStats {
+    private final long hits;
+    private final long revalidations;
+    private final long misses;
+    private final int entries;
+    private final long memoryBytes;
+    private final long diskBytes;
+
+    public CacheStats(long hits, long revalidations, long misses, int entries, long memoryBytes, long diskBytes) {
+        this.hits = hits;
+        this.revalidations = revalidations;
+        this.misses = misses;
+        this.entries = entries;
+        this.memoryBytes = memoryBytes;
+        this.diskBytes = diskBytes;
+    }
+
+    /**
+     * @return the number of requests answered from the cache without contacting the server
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of stale entries confirmed by the server with 304 Not Modified, so the body wasn't sent again
+     */
+    public long revalidations() {
+        return revalidations;
+    }
+
+    /**
+     * @return the number of cacheable requests which got the full response from the server
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public int entries() {
+        return entries;
+    }
+
+    /**
+     * @return the approximate heap size of the cached responses in bytes
+     */
+    public long memoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return the size of the response bodies spilled to disk in bytes
+     */
+    public long diskBytes() {
+        return diskBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + hits + ", revalidations: " + revalidations + ", misses: " + misses + ", entries: " + entries
+                + ", memory: " + memoryBytes + ", disk: " + diskBytes;
+    }
+}
@@ -0,0 +1,250 @@
+package com.andreidemus.http.client;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of requests in flight to every host and adapts the limit to the host's latency with AIMD:
+ * the limit grows by one for every fast response while it is in use and is cut by the backoff ratio on a failure,
+ * a 503 or 429 status or a latency above the tolerated multiple of the host's baseline. The baseline is the min
+ * latency of the recent responses.
+ * <p>
+ * A request above the limit waits for a free slot for at most {@code maxWait} and is rejected with
+ * {@link LimitExceededException} afterwards, so callers fail fast instead of piling up behind a slow host.
+ * For a streamed response the slot is released when the response head is received.
+ */
+public class ConcurrencyLimiter {
+    private static final int BASELINE_WINDOW = 500;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final long maxWaitNanos;
+    private final ConcurrentMap<String, HostLimit> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ConcurrencyLimiter(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.initialLimit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+        this.backoffRatio = builder.backoffRatio;
+        this.latencyTolerance = builder.latencyTolerance;
+        this.maxWaitNanos = builder.maxWait.toNanos();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param host the "host:port" of the requests
+     * @return the current limit of the host
+     */
+    public int limit(String host) {
+        final HostLimit limit = hosts.get(host);
+        return limit == null ? initialLimit : limit.limit();
+    }
+
+    /**
+     * @param host the "host:port" of the requests
+     * @return the number of requests to the host in flight at the moment
+     */
+    public int inFlight(String host) {
+        final HostLimit limit = hosts.get(host);
+        return limit == null ? 0 : limit.inFlight();
+    }
+
+    /**
+     * @return the total number of requests rejected because the limit of their host was reached
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Takes a slot of the host, waiting for at most maxWait
+     *
+     * @param route the "host:port" of the request
+     * @throws LimitExceededException if no slot was freed in time
+     */
+    HostLimit acquire(String route) {
+        final HostLimit limit = hosts.computeIfAbsent(route, it -> new HostLimit());
+        limit.acquire(route);
+        return limit;
+    }
+
+    /**
+     * The limit of a single host
+     */
+    final class HostLimit {
+        private double limit = initialLimit;
+        private int inFlight;
+        private long baseline = Long.MAX_VALUE;
+        private long windowMin = Long.MAX_VALUE;
+        private int windowCount;
+
+        synchronized int limit() {
+            return (int) limit;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        private synchronized void acquire(String route) {
+            final long deadline = System.nanoTime() + maxWaitNanos;
+            while (inFlight >= (int) limit) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejected.incrementAndGet();
+                    throw new LimitExceededException("Too many requests to " + route + " in flight, the limit is " + (int) limit);
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new HttpClientException(e);
+                }
+            }
+            inFlight++;
+        }
+
+        /**
+         * Frees the slot and adjusts the limit
+         *
+         * @param latencyNanos the time the request took
+         * @param dropped      true if the request has failed or the host has signalled overload
+         */
+        synchronized void release(long latencyNanos, boolean dropped) {
+            final boolean saturated = inFlight * 2 >= limit;
+            inFlight--;
+            if (dropped) {
+                decrease();
+            } else {
+                updateBaseline(latencyNanos);
+                if (latencyNanos > baseline * latencyTolerance) {
+                    decrease();
+                } else if (saturated) {
+                    limit = Math.min(maxLimit, limit + 1);
+                }
+            }
+            notifyAll();
+        }
+
+        // must be called holding the lock
+        private void decrease() {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        }
+
+        // must be called holding the lock
+        private void updateBaseline(long latencyNanos) {
+            baseline = Math.min(baseline, latencyNanos);
+            windowMin = Math.min(windowMin, latencyNanos);
+            if (++windowCount == BASELINE_WINDOW) {
+                // lets the baseline grow back when the host has become slower for good
+                baseline = windowMin;
+                windowMin = Long.MAX_VALUE;
+                windowCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Configures ConcurrencyLimiter instances
+     */
+    public static class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private double latencyTolerance = 2;
+        private Duration maxWait = Duration.ZERO;
+
+        private Builder() {
+        }
+
+        /**
+         * @param initialLimit the limit of a host before its responses are observed, 20 by default
+         * @return this builder
+         */
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit < 1) {
+                throw new IllegalArgumentException("initialLimit must be positive");
+            }
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * @param minLimit the limit is never cut below this value, 1 by default
+         * @return this builder
+         */
+        public Builder minLimit(int minLimit) {
+            if (minLimit < 1) {
+                throw new IllegalArgumentException("minLimit must be positive");
+            }
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * @param maxLimit the limit never grows above this value, 200 by default
+         * @return this builder
+         */
+        public Builder maxLimit(int maxLimit) {
+            if (maxLimit < 1) {
+                throw new IllegalArgumentException("maxLimit must be positive");
+            }
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * @param backoffRatio the multiplier applied to the limit on overload, 0.9 by default
+         * @return this builder
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            if (backoffRatio <= 0 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("backoffRatio must be in (0, 1)");
+            }
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * @param latencyTolerance how many times a response may be slower than the host's baseline before it is
+         *                         treated as a sign of overload, 2 by default
+         * @return this builder
+         */
+        public Builder latencyTolerance(double latencyTolerance) {
+            if (latencyTolerance < 1) {
+                throw new IllegalArgumentException("latencyTolerance must be at least 1");
+            }
+            this.latencyTolerance = latencyTolerance;
+            return this;
+        }
+
+        /**
+         * @param maxWait the max time a request waits for a slot before it is rejected, zero (the default) rejects
+         *                requests above the limit immediately
+         * @return this builder
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = Objects.requireNonNull(maxWait);
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            if (minLimit > maxLimit) {
+                throw new IllegalStateException("minLimit must not exceed maxLimit");
+            }
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
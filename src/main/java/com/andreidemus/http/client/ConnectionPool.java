@@ -0,0 +1,207 @@
+package com.andreidemus.http.client;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps persistent connections per host, so subsequent requests to the same host skip the TCP handshake
+ */
+class ConnectionPool {
+    private final int maxPerHost;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final long leaseTimeoutNanos;
+    private final Connector connector;
+    private final Map<String, HostPool> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+    private volatile boolean closed;
+
+    ConnectionPool(int maxPerHost,
+                   long idleTimeoutNanos,
+                   long maxLifetimeNanos,
+                   long leaseTimeoutNanos,
+                   Connector connector) {
+        this.maxPerHost = maxPerHost;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.maxLifetimeNanos = maxLifetimeNanos;
+        this.leaseTimeoutNanos = leaseTimeoutNanos;
+        this.connector = connector;
+    }
+
+    /**
+     * Returns an idle connection to the host or opens a new one. Blocks while the host has no free slots.
+     */
+    HttpConnection lease(String host, int port) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Connection pool is closed");
+        }
+        sweepIfNeeded();
+        final String route = host + ":" + port;
+        final HostPool pool = hosts.computeIfAbsent(route, it -> new HostPool());
+
+        final HttpConnection idle = pool.acquire();
+        if (idle != null) {
+            return idle;
+        }
+        try {
+            final HttpConnection conn = connector.connect(route, host, port);
+            created.incrementAndGet();
+            return conn;
+        } catch (IOException | RuntimeException e) {
+            pool.releaseSlot();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the connection to the pool. Connections which can't be reused are closed.
+     */
+    void release(HttpConnection conn) {
+        final HostPool pool = hosts.get(conn.route());
+        if (closed || pool == null || !conn.isReusable()) {
+            discard(conn);
+            if (pool != null) {
+                pool.releaseSlot();
+            }
+            return;
+        }
+        pool.putIdle(conn);
+    }
+
+    /**
+     * Closes all idle connections to the host, e.g. after the server has silently dropped one of them
+     */
+    void purgeIdle(String route) {
+        final HostPool pool = hosts.get(route);
+        if (pool != null) {
+            pool.drainIdle().forEach(this::discard);
+        }
+    }
+
+    PoolStats stats() {
+        int leased = 0;
+        int idle = 0;
+        for (HostPool pool : hosts.values()) {
+            synchronized (pool) {
+                leased += pool.leased;
+                idle += pool.idle.size();
+            }
+        }
+        return new PoolStats(leased, idle, created.get(), evicted.get());
+    }
+
+    void close() {
+        closed = true;
+        hosts.values().forEach(pool -> pool.drainIdle().forEach(this::discard));
+    }
+
+    private void sweepIfNeeded() {
+        final long now = System.nanoTime();
+        final long last = lastSweep.get();
+        if (now - last < idleTimeoutNanos / 2 || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        hosts.values().forEach(pool -> pool.drainExpired(now).forEach(this::discard));
+    }
+
+    private void discard(HttpConnection conn) {
+        conn.close();
+        evicted.incrementAndGet();
+    }
+
+    private class HostPool {
+        private final Deque<HttpConnection> idle = new ArrayDeque<>();
+        private int leased;
+
+        /**
+         * Takes a slot for a new lease.
+         *
+         * @return the most recently used idle connection or null if a new connection should be opened
+         */
+        synchronized HttpConnection acquire() {
+            final long deadline = System.nanoTime() + leaseTimeoutNanos;
+            while (true) {
+                final HttpConnection conn = pollIdle();
+                if (conn != null) {
+                    leased++;
+                    return conn;
+                }
+                if (leased + idle.size() < maxPerHost) {
+                    leased++;
+                    return null;
+                }
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new HttpClientException("Timeout waiting for a connection, all " + maxPerHost + " are leased");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new HttpClientException(e);
+                }
+            }
+        }
+
+        synchronized void putIdle(HttpConnection conn) {
+            leased--;
+            idle.push(conn);
+            notify();
+        }
+
+        synchronized void releaseSlot() {
+            leased--;
+            notify();
+        }
+
+        synchronized List<HttpConnection> drainIdle() {
+            final List<HttpConnection> drained = new ArrayList<>(idle);
+            idle.clear();
+            notifyAll();
+            return drained;
+        }
+
+        synchronized List<HttpConnection> drainExpired(long now) {
+            final List<HttpConnection> expired = new ArrayList<>();
+            idle.removeIf(conn -> {
+                if (conn.isExpired(now, idleTimeoutNanos, maxLifetimeNanos)) {
+                    expired.add(conn);
+                    return true;
+                }
+                return false;
+            });
+            if (!expired.isEmpty()) {
+                notifyAll();
+            }
+            return expired;
+        }
+
+        // must be called holding the lock
+        private HttpConnection pollIdle() {
+            final long now = System.nanoTime();
+            for (HttpConnection conn = idle.poll(); conn != null; conn = idle.poll()) {
+                if (!conn.isExpired(now, idleTimeoutNanos, maxLifetimeNanos) && !conn.isStale()) {
+                    return conn;
+                }
+                discard(conn);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Opens new connections for the pool
+     */
+    interface Connector {
+        HttpConnection connect(String route, String host, int port) throws IOException;
+    }
+}
@@ -0,0 +1,16 @@
+package com.andreidemus.http.client;
+
+/**
+ * The transport used by RequestsClient to perform plain http requests
+ */
+public enum Engine {
+    /**
+     * Pooled persistent connections built on SocketChannel, with own request writer and response parser
+     */
+    NIO,
+
+    /**
+     * java.net.HttpURLConnection, the default. Always used for https.
+     */
+    URL_CONNECTION
+}
@@ -0,0 +1,22 @@
+package com.andreidemus.http.client;
+
+public class HttpClientException extends RuntimeException {
+    public HttpClientException() {
+    }
+
+    public HttpClientException(String message) {
+        super(message);
+    }
+
+    public HttpClientException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public HttpClientException(Throwable cause) {
+        super(cause);
+    }
+
+    public HttpClientException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
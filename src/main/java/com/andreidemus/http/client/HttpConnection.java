@@ -0,0 +1,475 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.BodySource;
+import com.andreidemus.http.common.Headers;
+import com.andreidemus.http.common.RequestSerializer;
+import com.andreidemus.http.common.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.List;
+
+/**
+ * Persistent HTTP/1.1 connection to a single host. The channel is non-blocking, waits are done with
+ * a per-connection selector, so connect and read timeouts are honored.
+ */
+class HttpConnection implements Closeable {
+    private final String route;
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final SocketSettings settings;
+    private final BufferPool bufferPool;
+    // always in "read mode": the bytes between position and limit are received but not parsed yet
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final RequestSerializer.Sink sink = new SocketSink();
+    private final long createdAt;
+    private long lastUsedAt;
+    private int uses;
+    private boolean reused;
+    private boolean responseStarted;
+    private boolean reusable;
+    private long dnsNanos;
+    private long connectNanos;
+
+    private HttpConnection(String route,
+                           SocketChannel channel,
+                           Selector selector,
+                           SocketSettings settings,
+                           BufferPool bufferPool) throws IOException {
+        this.route = route;
+        this.channel = channel;
+        this.selector = selector;
+        this.key = channel.register(selector, 0);
+        this.settings = settings;
+        this.bufferPool = bufferPool;
+        this.readBuffer = ByteBuffer.allocateDirect(settings.bufferSize);
+        this.readBuffer.flip();
+        this.writeBuffer = ByteBuffer.allocateDirect(settings.bufferSize);
+        this.createdAt = System.nanoTime();
+        this.lastUsedAt = createdAt;
+    }
+
+    static HttpConnection open(String route,
+                               String host,
+                               int port,
+                               SocketSettings settings,
+                               BufferPool bufferPool) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        Selector selector = null;
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, settings.tcpNoDelay);
+            if (settings.sendBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, settings.sendBufferSize);
+            }
+            if (settings.receiveBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, settings.receiveBufferSize);
+            }
+            selector = Selector.open();
+            final HttpConnection conn = new HttpConnection(route, channel, selector, settings, bufferPool);
+            conn.connect(host, port);
+            return conn;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (selector != null) {
+                selector.close();
+            }
+            throw e;
+        }
+    }
+
+    String route() {
+        return route;
+    }
+
+    /**
+     * @return true if the connection had served other requests before the last exchange,
+     * so the server may have closed it in the meantime
+     */
+    boolean isReused() {
+        return reused;
+    }
+
+    /**
+     * @return true if at least one byte of the response has been received during the last exchange
+     */
+    boolean isResponseStarted() {
+        return responseStarted;
+    }
+
+    /**
+     * @return true if the last response was read completely and the server agreed to keep the connection open
+     */
+    boolean isReusable() {
+        return reusable;
+    }
+
+    boolean isExpired(long now, long idleTimeoutNanos, long maxLifetimeNanos) {
+        return now - lastUsedAt >= idleTimeoutNanos || now - createdAt >= maxLifetimeNanos;
+    }
+
+    /**
+     * Checks without blocking whether the server has closed the idle connection or sent something unexpected
+     */
+    boolean isStale() {
+        if (readBuffer.hasRemaining()) {
+            return true;
+        }
+        try {
+            readBuffer.clear();
+            final int read = channel.read(readBuffer);
+            readBuffer.flip();
+            return read != 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Sends the request and reads the response head. The body is either read completely or, if
+     * the callback is given, returned as a channel reading directly from the connection.
+     *
+     * @param onBodyClosed called when a streamed body is closed, null to read the body into memory
+     * @param timings      receives the phase durations, null if the request is not instrumented
+     */
+    Response execute(String method,
+                     String target,
+                     String host,
+                     Headers headers,
+                     BodySource body,
+                     Runnable onBodyClosed,
+                     RequestTimings timings) throws IOException {
+        started(timings);
+        reused = uses++ > 0;
+        responseStarted = false;
+        reusable = false;
+
+        final long writeStartedAt = System.nanoTime();
+        writeRequest(method, target, host, headers, body);
+        if (timings != null) {
+            timings.written(writeStartedAt);
+        }
+        final ResponseParser parser = readHead(method, timings);
+        if (onBodyClosed != null && !parser.isDone()) {
+            return new Response(parser.status(), parser.reason(), new BodyChannel(parser, onBodyClosed, timings), parser.headers());
+        }
+
+        final byte[] responseBody = readBody(parser);
+        if (timings != null) {
+            timings.bodyReceived();
+        }
+        reusable = parser.isKeepAlive();
+        lastUsedAt = System.nanoTime();
+        if (onBodyClosed != null) {
+            onBodyClosed.run();
+        }
+        return new Response(parser.status(), parser.reason(), responseBody, parser.headers());
+    }
+
+    /**
+     * Pipelines the requests: up to {@code depth} of them are sent without waiting for responses, which are then
+     * read in the same order. Only the first request is sent alone on a new connection, as there is no evidence
+     * yet that the server keeps connections open. Stops as soon as a response says the connection is closed,
+     * the requests sent after it are not processed by the server.
+     *
+     * @param requests the requests to the host of this connection, they must be safe to repeat
+     * @param depth    the max number of requests awaiting a response
+     * @param received receives the responses as they are read, fully buffered
+     */
+    void pipeline(List<PreparedRequest> requests, int depth, List<Response> received) throws IOException {
+        reused = uses > 0;
+        responseStarted = false;
+        reusable = false;
+
+        int window = reused ? depth : 1;
+        int sent = 0;
+        int done = 0;
+        while (done < requests.size()) {
+            while (sent < requests.size() && sent - done < window) {
+                final PreparedRequest request = requests.get(sent++);
+                started(request.timings);
+                final long writeStartedAt = System.nanoTime();
+                writeRequest(request.method, request.target(), request.host(), request.headers, request.body);
+                if (request.timings != null) {
+                    request.timings.written(writeStartedAt);
+                }
+                uses++;
+            }
+            final RequestTimings timings = requests.get(done).timings;
+            final ResponseParser parser = readHead(requests.get(done).method, timings);
+            final byte[] body = readBody(parser);
+            if (timings != null) {
+                timings.bodyReceived();
+            }
+            received.add(new Response(parser.status(), parser.reason(), body, parser.headers()));
+            done++;
+            responseStarted = false;
+            if (!parser.isKeepAlive()) {
+                return;
+            }
+            window = depth;
+        }
+        reusable = true;
+        lastUsedAt = System.nanoTime();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing to do, the connection is discarded anyway
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // same as above
+        }
+    }
+
+    private void connect(String host, int port) throws IOException {
+        final long startedAt = System.nanoTime();
+        final InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(host);
+        }
+        final long resolvedAt = System.nanoTime();
+        dnsNanos = resolvedAt - startedAt;
+        try {
+            if (!channel.connect(address)) {
+                await(SelectionKey.OP_CONNECT, settings.connectTimeoutMillis, "Connect timed out");
+                channel.finishConnect();
+            }
+        } catch (UnresolvedAddressException e) {
+            throw new UnknownHostException(host);
+        }
+        connectNanos = System.nanoTime() - resolvedAt;
+    }
+
+    /**
+     * Records the connection of an instrumented request, DNS and connect durations are only reported once
+     */
+    private void started(RequestTimings timings) {
+        if (timings == null) {
+            return;
+        }
+        timings.connection(route, uses > 0);
+        if (uses == 0) {
+            timings.connected(dnsNanos, connectNanos);
+        }
+    }
+
+    private void writeRequest(String method,
+                              String target,
+                              String host,
+                              Headers headers,
+                              BodySource body) throws IOException {
+        RequestSerializer.write(method, target, host, headers, body, writeBuffer, sink);
+    }
+
+    private void writeFully(ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffers) == 0) {
+                    await(SelectionKey.OP_WRITE, settings.readTimeoutMillis, "Write timed out");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the file with FileChannel.transferTo, so the content is copied by the kernel without passing
+     * through the JVM heap
+     */
+    private void transferFile(FileChannel file, long position, long length) throws IOException {
+        final long end = position + length;
+        while (position < end) {
+            final long transferred = file.transferTo(position, end - position, channel);
+            if (transferred == 0) {
+                if (position >= file.size()) {
+                    throw new IOException("File is shorter than declared body length " + length);
+                }
+                await(SelectionKey.OP_WRITE, settings.readTimeoutMillis, "Write timed out");
+            }
+            position += transferred;
+        }
+    }
+
+    private ResponseParser readHead(String method, RequestTimings timings) throws IOException {
+        final ResponseParser parser = new ResponseParser(method);
+        boolean firstByte = timings == null;
+        try {
+            while (true) {
+                if (!firstByte && readBuffer.hasRemaining()) {
+                    timings.firstByte();
+                    firstByte = true;
+                }
+                if (parser.parseHead(readBuffer)) {
+                    break;
+                }
+                if (fill() < 0) {
+                    parser.finishHead();
+                    break;
+                }
+            }
+        } finally {
+            responseStarted = parser.isStarted();
+        }
+        if (timings != null) {
+            timings.headReceived(parser.status());
+        }
+        return parser;
+    }
+
+    private byte[] readBody(ResponseParser parser) throws IOException {
+        if (parser.isDone()) {
+            return new byte[]{};
+        }
+        final long length = parser.contentLength();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Response body is too large: " + length + " bytes");
+        }
+        if (length >= 0) {
+            final ByteBuffer body = ByteBuffer.allocate((int) length);
+            while (!parser.isDone()) {
+                parser.decodeBody(readBuffer, body);
+                if (!parser.isDone() && fill() < 0) {
+                    parser.finishBody();
+                }
+            }
+            return body.array();
+        }
+
+        final BodyBuffer body = new BodyBuffer(bufferPool);
+        try {
+            while (!parser.isDone()) {
+                body.written(parser.decodeBody(readBuffer, body.writable()));
+                if (!parser.isDone() && !readBuffer.hasRemaining() && fill() < 0) {
+                    parser.finishBody();
+                }
+            }
+            return body.toByteArray();
+        } finally {
+            body.release();
+        }
+    }
+
+    /**
+     * Reads more bytes from the channel, waiting up to the read timeout
+     *
+     * @return the number of bytes read or -1 if the server has closed the connection
+     */
+    private int fill() throws IOException {
+        readBuffer.compact();
+        try {
+            int read = channel.read(readBuffer);
+            while (read == 0) {
+                await(SelectionKey.OP_READ, settings.readTimeoutMillis, "Read timed out");
+                read = channel.read(readBuffer);
+            }
+            return read;
+        } finally {
+            readBuffer.flip();
+        }
+    }
+
+    private void await(int op, int timeoutMillis, String timeoutMessage) throws IOException {
+        key.interestOps(op);
+        try {
+            if (selector.select(timeoutMillis) == 0) {
+                throw new SocketTimeoutException(timeoutMessage);
+            }
+        } finally {
+            selector.selectedKeys().clear();
+            key.interestOps(0);
+        }
+    }
+
+    /**
+     * Response body read straight from the connection as the caller consumes it
+     */
+    private class BodyChannel implements ReadableByteChannel {
+        private final ResponseParser parser;
+        private final Runnable onClosed;
+        private final RequestTimings timings;
+        private boolean open = true;
+
+        BodyChannel(ResponseParser parser, Runnable onClosed, RequestTimings timings) {
+            this.parser = parser;
+            this.onClosed = onClosed;
+            this.timings = timings;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            while (!parser.isDone()) {
+                if (!dst.hasRemaining()) {
+                    return 0;
+                }
+                if (!readBuffer.hasRemaining() && fill() < 0) {
+                    parser.finishBody();
+                    break;
+                }
+                final int read = parser.decodeBody(readBuffer, dst);
+                if (read > 0) {
+                    return read;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * Returns the connection to the pool if the body has been read completely, otherwise it is discarded
+         */
+        @Override
+        public void close() {
+            if (!open) {
+                return;
+            }
+            open = false;
+            reusable = parser.isDone() && parser.isKeepAlive();
+            lastUsedAt = System.nanoTime();
+            if (timings != null) {
+                timings.bodyReceived();
+            }
+            onClosed.run();
+        }
+    }
+
+    /**
+     * The socket as a sink of the serializer, a write which can't make progress waits until the socket is writable
+     */
+    private final class SocketSink implements RequestSerializer.Sink {
+        @Override
+        public void write(ByteBuffer... buffers) throws IOException {
+            writeFully(buffers);
+        }
+
+        @Override
+        public void transfer(FileChannel file, long position, long count) throws IOException {
+            transferFile(file, position, count);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.BodySource;
+import com.andreidemus.http.common.Headers;
+import com.andreidemus.http.common.Response;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Sends a prepared request over the network
+ */
+interface HttpEngine {
+    /**
+     * @param method  the request method
+     * @param url     the full request url including the query string
+     * @param headers the headers to be sent, defaults are already applied
+     * @param body    the request body or null if there is no body, Content-Length or Transfer-Encoding
+     *                are already among the headers
+     * @param stream  true to return the response as soon as the head is received, with the body to be read
+     *                from {@link Response#bodyChannel()}
+     * @param timings receives the phase durations or null, a streamed request is completed by the engine
+     *                when its body is closed
+     * @return the received response
+     */
+    Response execute(String method,
+                     URL url,
+                     Headers headers,
+                     BodySource body,
+                     boolean stream,
+                     RequestTimings timings) throws IOException;
+
+    /**
+     * Releases resources held by the engine
+     */
+    void close();
+}
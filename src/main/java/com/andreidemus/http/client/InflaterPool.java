@@ -0,0 +1,50 @@
+package com.andreidemus.http.client;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of Inflaters. An Inflater holds native memory which is only freed by end() or finalization,
+ * so reusing them is much cheaper than creating one per compressed response.
+ */
+class InflaterPool {
+    private final int maxPooled;
+    // gzip and raw deflate streams need "nowrap" inflaters, zlib streams need regular ones
+    private final Queue<Inflater> nowrap = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> zlib = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    InflaterPool(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @param nowrap true for a stream without the zlib header and checksum
+     * @return a reset inflater, a new one is created if the pool is empty
+     */
+    Inflater acquire(boolean nowrap) {
+        final Inflater inflater = (nowrap ? this.nowrap : zlib).poll();
+        if (inflater == null) {
+            return new Inflater(nowrap);
+        }
+        pooled.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Returns the inflater to the pool, it must not be used by the caller afterwards
+     *
+     * @param nowrap the same value the inflater was acquired with
+     */
+    void release(Inflater inflater, boolean nowrap) {
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        (nowrap ? this.nowrap : zlib).offer(inflater);
+    }
+}
@@ -0,0 +1,254 @@
+package com.andreidemus.http.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes a "gzip" or "deflate" content coded body while it is read from the source channel.
+ * The Inflater is taken from the pool on the first read and returned when the body ends or the channel is closed.
+ */
+class InflatingChannel implements ReadableByteChannel {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final ReadableByteChannel source;
+    private final InflaterPool pool;
+    private final boolean gzip;
+    private final byte[] input;
+    private final CRC32 crc = new CRC32();
+    private int position;
+    private int limit;
+    private Inflater inflater;
+    private boolean nowrap;
+    private byte[] output;
+    private boolean finished;
+    private boolean open = true;
+
+    /**
+     * @param gzip true for the "gzip" coding, false for "deflate" which is either zlib or raw deflate in practice
+     */
+    InflatingChannel(ReadableByteChannel source, InflaterPool pool, boolean gzip, int bufferSize) {
+        this.source = source;
+        this.pool = pool;
+        this.gzip = gzip;
+        this.input = new byte[bufferSize];
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        if (finished) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (inflater == null && !start()) {
+            finish();
+            return -1;
+        }
+        while (true) {
+            final int inflated = inflate(dst);
+            if (inflated > 0) {
+                return inflated;
+            }
+            if (inflater.finished()) {
+                position = limit - inflater.getRemaining();
+                if (gzip) {
+                    readTrailer();
+                }
+                finish();
+                return -1;
+            }
+            if (inflater.needsDictionary()) {
+                throw new ZipException("Preset dictionaries are not supported");
+            }
+            if (inflater.needsInput()) {
+                position = limit;
+                if (!fill()) {
+                    throw new EOFException("Unexpected end of compressed body");
+                }
+                inflater.setInput(input, position, limit - position);
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        releaseInflater();
+        source.close();
+    }
+
+    /**
+     * Reads the gzip header or detects the zlib one
+     *
+     * @return false if the body is empty
+     */
+    private boolean start() throws IOException {
+        if (!ensure(1)) {
+            return false;
+        }
+        if (gzip) {
+            readGzipHeader();
+            nowrap = true;
+        } else {
+            // RFC 7230 means zlib by "deflate", but some servers send raw deflate data
+            nowrap = !ensure(2) || ((input[position] & 0x0f) != 8)
+                    || (((input[position] & 0xff) << 8 | (input[position + 1] & 0xff)) % 31 != 0);
+        }
+        inflater = pool.acquire(nowrap);
+        inflater.setInput(input, position, limit - position);
+        return true;
+    }
+
+    private void readGzipHeader() throws IOException {
+        if (readShort() != GZIP_MAGIC) {
+            throw new ZipException("Not in gzip format");
+        }
+        if (readByte() != 8) {
+            throw new ZipException("Unsupported gzip compression method");
+        }
+        final int flags = readByte();
+        skip(6); // modification time, extra flags and OS
+        if ((flags & FEXTRA) != 0) {
+            skip(readShort());
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) {
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) {
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        final long expectedCrc = readInt();
+        final long expectedSize = readInt();
+        if (expectedCrc != crc.getValue()) {
+            throw new ZipException("Corrupt gzip body, CRC mismatch");
+        }
+        if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt gzip body, size mismatch");
+        }
+    }
+
+    private int inflate(ByteBuffer dst) throws IOException {
+        try {
+            final int inflated;
+            if (dst.hasArray()) {
+                final int offset = dst.arrayOffset() + dst.position();
+                inflated = inflater.inflate(dst.array(), offset, dst.remaining());
+                if (gzip) {
+                    crc.update(dst.array(), offset, inflated);
+                }
+                dst.position(dst.position() + inflated);
+            } else {
+                if (output == null) {
+                    output = new byte[input.length];
+                }
+                inflated = inflater.inflate(output, 0, Math.min(output.length, dst.remaining()));
+                if (gzip) {
+                    crc.update(output, 0, inflated);
+                }
+                dst.put(output, 0, inflated);
+            }
+            return inflated;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    private void finish() {
+        finished = true;
+        releaseInflater();
+    }
+
+    private void releaseInflater() {
+        if (inflater != null) {
+            pool.release(inflater, nowrap);
+            inflater = null;
+        }
+    }
+
+    private long readInt() throws IOException {
+        return (long) readShort() | (long) readShort() << 16;
+    }
+
+    private int readShort() throws IOException {
+        return readByte() | readByte() << 8;
+    }
+
+    private int readByte() throws IOException {
+        if (!ensure(1)) {
+            throw new EOFException("Unexpected end of gzip body");
+        }
+        return input[position++] & 0xff;
+    }
+
+    private void skip(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readByte();
+        }
+    }
+
+    /**
+     * @return false if the source has ended before n bytes became available
+     */
+    private boolean ensure(int n) throws IOException {
+        while (limit - position < n) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads more bytes after the unconsumed ones
+     *
+     * @return false if the source has ended
+     */
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(input, position, input, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(input, limit, input.length - limit);
+        int read = source.read(buffer);
+        while (read == 0) {
+            read = source.read(buffer);
+        }
+        if (read < 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+}
@@ -0,0 +1,11 @@
+package com.andreidemus.http.client;
+
+/**
+ * Thrown when a request is rejected by the {@link ConcurrencyLimiter} because too many requests to its host
+ * are in flight. The request has not been sent.
+ */
+public class LimitExceededException extends HttpClientException {
+    public LimitExceededException(String message) {
+        super(message);
+    }
+}
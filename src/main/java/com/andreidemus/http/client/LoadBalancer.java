@@ -0,0 +1,311 @@
+package com.andreidemus.http.client;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the requests to a logical service over several endpoints, e.g. replicas of the service. The service is
+ * registered in the client under a name and requests use the name as the host: {@code http://users/items} is sent
+ * to {@code <endpoint>/items}.
+ * <p>
+ * An endpoint is ejected for a while when its error rate (I/O errors and 5xx statuses) or its average latency
+ * exceeds the limits. Old requests are gradually forgotten, so recent requests matter most. When all endpoints
+ * are ejected the requests are spread over all of them.
+ */
+public class LoadBalancer {
+    private static final double SMOOTHING = 0.1;
+    // the counts are halved when an endpoint reaches this number of requests
+    private static final int ERROR_WINDOW = 100;
+
+    private final Endpoint[] endpoints;
+    private final Strategy strategy;
+    private final double maxErrorRate;
+    private final long maxLatencyNanos;
+    private final int minRequests;
+    private final long ejectionNanos;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public enum Strategy {
+        /**
+         * Endpoints take turns
+         */
+        ROUND_ROBIN,
+        /**
+         * The endpoint with the fewest requests in flight
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * The endpoint with fewer requests in flight of two random ones, nearly as good as least outstanding
+         * but it doesn't herd all clients onto the same endpoint
+         */
+        POWER_OF_TWO_CHOICES
+    }
+
+    private LoadBalancer(Builder builder) {
+        this.endpoints = new Endpoint[builder.baseUrls.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = new Endpoint(builder.baseUrls.get(i));
+        }
+        this.strategy = builder.strategy;
+        this.maxErrorRate = builder.maxErrorRate;
+        this.maxLatencyNanos = builder.maxLatency.toNanos();
+        this.minRequests = builder.minRequests;
+        this.ejectionNanos = builder.ejectionTime.toNanos();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the base urls of the endpoints which are not ejected at the moment
+     */
+    public List<String> healthyEndpoints() {
+        final long now = System.nanoTime();
+        final List<String> healthy = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                healthy.add(endpoint.baseUrl);
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * @return the endpoint for the next request
+     */
+    Endpoint choose() {
+        final long now = System.nanoTime();
+        switch (strategy) {
+            case LEAST_OUTSTANDING:
+                return leastOutstanding(now);
+            case POWER_OF_TWO_CHOICES:
+                return powerOfTwoChoices(now);
+            default:
+                return roundRobin(now);
+        }
+    }
+
+    private Endpoint roundRobin(long now) {
+        for (int i = 0; i < endpoints.length; i++) {
+            final Endpoint endpoint = endpoints[Math.floorMod(next.getAndIncrement(), endpoints.length)];
+            if (endpoint.isAvailable(now)) {
+                return endpoint;
+            }
+        }
+        return endpoints[Math.floorMod(next.getAndIncrement(), endpoints.length)];
+    }
+
+    private Endpoint leastOutstanding(long now) {
+        // the scan starts at a rotating offset, so ties are spread too
+        final int offset = next.getAndIncrement();
+        Endpoint best = null;
+        Endpoint bestEjected = null;
+        for (int i = 0; i < endpoints.length; i++) {
+            final Endpoint endpoint = endpoints[Math.floorMod(offset + i, endpoints.length)];
+            if (endpoint.isAvailable(now)) {
+                if (best == null || endpoint.outstanding.get() < best.outstanding.get()) {
+                    best = endpoint;
+                }
+            } else if (bestEjected == null || endpoint.outstanding.get() < bestEjected.outstanding.get()) {
+                bestEjected = endpoint;
+            }
+        }
+        return best != null ? best : bestEjected;
+    }
+
+    private Endpoint powerOfTwoChoices(long now) {
+        if (endpoints.length == 1) {
+            return endpoints[0];
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int a = random.nextInt(endpoints.length);
+        final int b = (a + 1 + random.nextInt(endpoints.length - 1)) % endpoints.length;
+        final Endpoint first = endpoints[a];
+        final Endpoint second = endpoints[b];
+        final boolean firstAvailable = first.isAvailable(now);
+        final boolean secondAvailable = second.isAvailable(now);
+        if (firstAvailable && secondAvailable) {
+            return first.outstanding.get() <= second.outstanding.get() ? first : second;
+        }
+        if (firstAvailable) {
+            return first;
+        }
+        if (secondAvailable) {
+            return second;
+        }
+        return leastOutstanding(now);
+    }
+
+    /**
+     * A single endpoint of the service with its health statistics
+     */
+    final class Endpoint {
+        final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean ejected;
+        private volatile long ejectedUntil;
+        private int requests;
+        private int errors;
+        private double latencyNanos;
+
+        private Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * @param file the path with the query string of the request
+         */
+        URL url(String file) throws MalformedURLException {
+            return new URL(baseUrl + file);
+        }
+
+        void started() {
+            outstanding.incrementAndGet();
+        }
+
+        /**
+         * @param latencyNanos the time the request took
+         * @param failed       true if the request has failed or the endpoint has answered with a 5xx status
+         */
+        void finished(long latencyNanos, boolean failed) {
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                if (ejected) {
+                    // requests sent before the ejection don't count
+                    return;
+                }
+                this.latencyNanos = requests == 0 ? latencyNanos : this.latencyNanos + SMOOTHING * (latencyNanos - this.latencyNanos);
+                requests++;
+                if (failed) {
+                    errors++;
+                }
+                if (requests >= minRequests
+                        && ((double) errors / requests > maxErrorRate || (maxLatencyNanos > 0 && this.latencyNanos > maxLatencyNanos))) {
+                    ejectedUntil = System.nanoTime() + ejectionNanos;
+                    ejected = true;
+                } else if (requests == ERROR_WINDOW) {
+                    requests /= 2;
+                    errors /= 2;
+                }
+            }
+        }
+
+        private boolean isAvailable(long now) {
+            if (!ejected) {
+                return true;
+            }
+            if (ejectedUntil - now > 0) {
+                return false;
+            }
+            synchronized (this) {
+                // back with a clean record
+                ejected = false;
+                requests = 0;
+                errors = 0;
+                latencyNanos = 0;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Configures LoadBalancer instances
+     */
+    public static class Builder {
+        private final List<String> baseUrls = new ArrayList<>();
+        private Strategy strategy = Strategy.ROUND_ROBIN;
+        private double maxErrorRate = 0.5;
+        private Duration maxLatency = Duration.ZERO;
+        private int minRequests = 10;
+        private Duration ejectionTime = Duration.ofSeconds(30);
+
+        private Builder() {
+        }
+
+        /**
+         * @param baseUrl the url requests are resolved against, e.g. "http://10.0.0.1:8080/api"
+         * @return this builder
+         */
+        public Builder endpoint(String baseUrl) {
+            final String url = Objects.requireNonNull(baseUrl);
+            this.baseUrls.add(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+            return this;
+        }
+
+        /**
+         * @param baseUrls the urls requests are resolved against
+         * @return this builder
+         */
+        public Builder endpoints(List<String> baseUrls) {
+            baseUrls.forEach(this::endpoint);
+            return this;
+        }
+
+        /**
+         * @param strategy the way an endpoint is chosen, round robin by default
+         * @return this builder
+         */
+        public Builder strategy(Strategy strategy) {
+            this.strategy = Objects.requireNonNull(strategy);
+            return this;
+        }
+
+        /**
+         * @param maxErrorRate the share of failed requests after which an endpoint is ejected, 0.5 by default
+         * @return this builder
+         */
+        public Builder maxErrorRate(double maxErrorRate) {
+            if (maxErrorRate < 0 || maxErrorRate > 1) {
+                throw new IllegalArgumentException("maxErrorRate must be in [0, 1]");
+            }
+            this.maxErrorRate = maxErrorRate;
+            return this;
+        }
+
+        /**
+         * @param maxLatency the average latency after which an endpoint is ejected, zero (the default) disables
+         *                   the check
+         * @return this builder
+         */
+        public Builder maxLatency(Duration maxLatency) {
+            this.maxLatency = Objects.requireNonNull(maxLatency);
+            return this;
+        }
+
+        /**
+         * @param minRequests the number of requests an endpoint has to serve before it can be ejected, 10 by default.
+         *                    At most 100, the counts are halved at that number of requests.
+         * @return this builder
+         */
+        public Builder minRequests(int minRequests) {
+            if (minRequests < 1 || minRequests > ERROR_WINDOW) {
+                throw new IllegalArgumentException("minRequests must be between 1 and " + ERROR_WINDOW);
+            }
+            this.minRequests = minRequests;
+            return this;
+        }
+
+        /**
+         * @param ejectionTime the time an unhealthy endpoint gets no requests, 30 seconds by default
+         * @return this builder
+         */
+        public Builder ejectionTime(Duration ejectionTime) {
+            this.ejectionTime = Objects.requireNonNull(ejectionTime);
+            return this;
+        }
+
+        public LoadBalancer build() {
+            if (baseUrls.isEmpty()) {
+                throw new IllegalStateException("At least one endpoint is required");
+            }
+            return new LoadBalancer(this);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.BodySource;
+import com.andreidemus.http.common.Headers;
+import com.andreidemus.http.common.Response;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Performs plain http requests over pooled SocketChannel connections
+ */
+class NioEngine implements HttpEngine {
+    private final ConnectionPool pool;
+
+    NioEngine(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public Response execute(String method,
+                            URL url,
+                            Headers headers,
+                            BodySource body,
+                            boolean stream,
+                            RequestTimings timings) throws IOException {
+        final int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        final String host = url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
+        final String target = url.getFile().isEmpty() ? "/" : url.getFile();
+
+        HttpConnection conn = pool.lease(url.getHost(), port);
+        while (true) {
+            try {
+                if (stream) {
+                    final HttpConnection leased = conn;
+                    return conn.execute(method, target, host, headers, body, () -> {
+                        pool.release(leased);
+                        if (timings != null) {
+                            timings.complete();
+                        }
+                    }, timings);
+                }
+                final Response response = conn.execute(method, target, host, headers, body, null, timings);
+                pool.release(conn);
+                return response;
+            } catch (IOException e) {
+                pool.release(conn);
+                // the server may close an idle connection at any moment, in that case nothing was processed
+                // and the request is repeated on a fresh connection, the same way HttpURLConnection does it
+                if (!conn.isReused() || conn.isResponseStarted() || (body != null && !body.isRepeatable())) {
+                    throw e;
+                }
+                pool.purgeIdle(conn.route());
+                conn = pool.lease(url.getHost(), port);
+            }
+        }
+    }
+
+    /**
+     * Sends requests to a single host, pipelined over one connection at a time. The requests left without
+     * a response when the server closes the connection are repeated on a new one.
+     *
+     * @param requests the requests to the same route, they must be safe to repeat
+     * @param depth    the max number of requests awaiting a response on the connection
+     * @return the fully buffered responses in the order of the requests
+     */
+    List<Response> pipeline(List<PreparedRequest> requests, int depth) throws IOException {
+        final PreparedRequest first = requests.get(0);
+        final List<Response> responses = new ArrayList<>(requests.size());
+        while (responses.size() < requests.size()) {
+            final HttpConnection conn = pool.lease(first.url.getHost(), first.port());
+            final int before = responses.size();
+            try {
+                conn.pipeline(requests.subList(before, requests.size()), depth, responses);
+                pool.release(conn);
+            } catch (IOException e) {
+                pool.release(conn);
+                // a connection that served nothing is only forgiven if it has been idle in the pool, same as in execute
+                if (responses.size() == before && (!conn.isReused() || conn.isResponseStarted())) {
+                    throw e;
+                }
+                if (responses.size() == before) {
+                    pool.purgeIdle(conn.route());
+                }
+            }
+        }
+        return responses;
+    }
+
+    PoolStats stats() {
+        return pool.stats();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.andreidemus.http.client;
+
+/**
+ * Snapshot of the connection pool state
+ */
+public class PoolStats {
+    private final int leased;
+    private final int idle;
+    private final long created;
+    private final long evicted;
+
+    public PoolStats(int leased, int idle, long created, long evicted) {
+        this.leased = leased;
+        this.idle = idle;
+        this.created = created;
+        this.evicted = evicted;
+    }
+
+    /**
+     * @return the number of connections currently used by requests
+     */
+    public int leased() {
+        return leased;
+    }
+
+    /**
+     * @return the number of open connections waiting to be reused
+     */
+    public int idle() {
+        return idle;
+    }
+
+    /**
+     * @return the total number of connections opened by the pool
+     */
+    public long created() {
+        return created;
+    }
+
+    /**
+     * @return the total number of connections closed by the pool because they were idle for too long,
+     * reached their max lifetime or could not be reused
+     */
+    public long evicted() {
+        return evicted;
+    }
+
+    @Override
+    public String toString() {
+        return "leased: " + leased + ", idle: " + idle + ", created: " + created + ", evicted: " + evicted;
+    }
+}
@@ -0,0 +1,97 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.BodySource;
+import com.andreidemus.http.common.Headers;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Request ready to be sent: the url is resolved, the body is prepared and default headers are applied. A request to
+ * a load balanced service keeps the logical url, e.g. {@code http://users/items}, until an endpoint is chosen for
+ * an attempt with {@link #to(LoadBalancer.Endpoint)}.
+ */
+final class PreparedRequest {
+    final String method;
+    final URL url;
+    final Headers headers;
+    final BodySource body;
+    // true if the client has asked for a compressed response and has to decode it
+    final boolean decompress;
+    // null if the client has no listener
+    final RequestTimings timings;
+    // null if the request is not sent to a load balanced service or its endpoint is chosen
+    final LoadBalancer service;
+    // null if the request is not sent to a load balanced service or its endpoint is not chosen yet
+    final LoadBalancer.Endpoint endpoint;
+
+    PreparedRequest(String method,
+                    URL url,
+                    Headers headers,
+                    BodySource body,
+                    boolean decompress,
+                    RequestTimings timings,
+                    LoadBalancer service) {
+        this(method, url, headers, body, decompress, timings, service, null);
+    }
+
+    private PreparedRequest(String method,
+                            URL url,
+                            Headers headers,
+                            BodySource body,
+                            boolean decompress,
+                            RequestTimings timings,
+                            LoadBalancer service,
+                            LoadBalancer.Endpoint endpoint) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.body = body;
+        this.decompress = decompress;
+        this.timings = timings;
+        this.service = service;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @return the same request with own timings, to be sent once more
+     */
+    PreparedRequest nextAttempt() {
+        return timings == null ? this : new PreparedRequest(method, url, headers, body, decompress, timings.nextAttempt(),
+                service, endpoint);
+    }
+
+    /**
+     * @return the request sent to the endpoint of its service
+     */
+    PreparedRequest to(LoadBalancer.Endpoint endpoint) throws MalformedURLException {
+        final URL endpointUrl = endpoint.url(url.getFile());
+        return new PreparedRequest(method, endpointUrl, headers, body, decompress,
+                timings == null ? null : timings.sentTo(endpointUrl), null, endpoint);
+    }
+
+    int port() {
+        return url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+    }
+
+    /**
+     * @return the value of the Host header
+     */
+    String host() {
+        return url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
+    }
+
+    /**
+     * @return the request target, i.e. the path with the query string
+     */
+    String target() {
+        return url.getFile().isEmpty() ? "/" : url.getFile();
+    }
+
+    /**
+     * @return the key of the connection pool the request is sent through
+     */
+    String route() {
+        return url.getHost() + ":" + port();
+    }
+}
@@ -0,0 +1,18 @@
+package com.andreidemus.http.client;
+
+/**
+ * Receives the phase timings of every request sent over the network. Requests answered from the cache are not
+ * reported. Callbacks run on the thread completing the request, so they should be fast and must not block.
+ */
+public interface RequestListener {
+    /**
+     * Called when the response has been received completely, for a streamed response when its body is closed
+     */
+    void requestCompleted(RequestTimings timings);
+
+    /**
+     * Called when the request has failed, the phases which haven't been reached have zero duration
+     */
+    default void requestFailed(RequestTimings timings, Exception error) {
+    }
+}
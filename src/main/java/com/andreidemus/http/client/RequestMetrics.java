@@ -0,0 +1,81 @@
+package com.andreidemus.http.client;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Listener keeping latency histograms of total request time per host and status class. Failed requests are
+ * recorded with the status class {@link #FAILED}. Histograms can be read at any moment while requests are recorded.
+ */
+public class RequestMetrics implements RequestListener {
+    public static final int FAILED = 0;
+
+    private static final int STATUS_CLASSES = 6;
+
+    private final ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>> hosts = new ConcurrentHashMap<>();
+
+    @Override
+    public void requestCompleted(RequestTimings timings) {
+        final int statusClass = timings.status() / 100;
+        record(timings, statusClass > FAILED && statusClass < STATUS_CLASSES ? statusClass : FAILED);
+    }
+
+    @Override
+    public void requestFailed(RequestTimings timings, Exception error) {
+        record(timings, FAILED);
+    }
+
+    /**
+     * @return the hosts requests were sent to, as "host:port"
+     */
+    public Set<String> hosts() {
+        return new TreeSet<>(hosts.keySet());
+    }
+
+    /**
+     * @param host        the "host:port" the requests were sent to
+     * @param statusClass the first digit of the status, 2 for 2xx, or {@link #FAILED}
+     * @return the histogram or null if no such requests were recorded
+     */
+    public LatencyHistogram histogram(String host, int statusClass) {
+        final AtomicReferenceArray<LatencyHistogram> histograms = hosts.get(host);
+        return histograms == null ? null : histograms.get(statusClass);
+    }
+
+    /**
+     * @return one line per host and status class with the request count and latency percentiles
+     */
+    public String report() {
+        final StringBuilder sb = new StringBuilder();
+        for (String host : hosts()) {
+            for (int statusClass = 0; statusClass < STATUS_CLASSES; statusClass++) {
+                final LatencyHistogram histogram = histogram(host, statusClass);
+                if (histogram != null) {
+                    sb.append(host)
+                      .append(' ')
+                      .append(statusClass == FAILED ? "failed" : statusClass + "xx")
+                      .append(" - ")
+                      .append(histogram)
+                      .append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private void record(RequestTimings timings, int statusClass) {
+        AtomicReferenceArray<LatencyHistogram> histograms = hosts.get(timings.host());
+        if (histograms == null) {
+            histograms = hosts.computeIfAbsent(timings.host(), it -> new AtomicReferenceArray<>(STATUS_CLASSES));
+        }
+        LatencyHistogram histogram = histograms.get(statusClass);
+        if (histogram == null) {
+            histograms.compareAndSet(statusClass, null, new LatencyHistogram());
+            histogram = histograms.get(statusClass);
+        }
+        histogram.record(timings.totalNanos());
+    }
+}
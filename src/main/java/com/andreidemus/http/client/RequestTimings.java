@@ -0,0 +1,178 @@
+package com.andreidemus.http.client;
+
+import java.net.URL;
+
+/**
+ * Durations of the phases of a single request in nanoseconds. A phase which didn't happen has zero duration,
+ * e.g. DNS resolution and connect on a reused connection.
+ */
+public class RequestTimings {
+    private final String method;
+    private final URL url;
+    private final RequestListener listener;
+    private final long startedAt = System.nanoTime();
+    private String host;
+    private boolean connectionReused;
+    private int status;
+    private long dnsNanos;
+    private long connectNanos;
+    private long writeNanos;
+    private long firstByteNanos;
+    private long bodyNanos;
+    private long totalNanos;
+    private long writtenAt;
+    private long headReceivedAt;
+    private boolean finished;
+
+    RequestTimings(String method, URL url, RequestListener listener) {
+        this.method = method;
+        this.url = url;
+        this.listener = listener;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public URL url() {
+        return url;
+    }
+
+    /**
+     * @return the "host:port" the request was sent to
+     */
+    public String host() {
+        if (host == null) {
+            // the connection wasn't established, e.g. the host is unknown
+            host = url.getHost() + ":" + (url.getPort() < 0 ? url.getDefaultPort() : url.getPort());
+        }
+        return host;
+    }
+
+    /**
+     * @return true if the request was sent over a connection which had served other requests before
+     */
+    public boolean connectionReused() {
+        return connectionReused;
+    }
+
+    /**
+     * @return the response status or zero if the request has failed before the response head was received
+     */
+    public int status() {
+        return status;
+    }
+
+    public long dnsNanos() {
+        return dnsNanos;
+    }
+
+    public long connectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * @return the time to write the request head and body
+     */
+    public long writeNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @return the time from the request being written to the first byte of the response
+     */
+    public long firstByteNanos() {
+        return firstByteNanos;
+    }
+
+    /**
+     * @return the time from the response head being received to the end of the body
+     */
+    public long bodyNanos() {
+        return bodyNanos;
+    }
+
+    /**
+     * @return the time from the request being sent by the client, including the wait for a free connection
+     */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the timings of a repeated attempt of the same request
+     */
+    RequestTimings nextAttempt() {
+        return new RequestTimings(method, url, listener);
+    }
+
+    /**
+     * @return the timings of the request sent to the url instead, e.g. to the endpoint of a service
+     */
+    RequestTimings sentTo(URL url) {
+        return new RequestTimings(method, url, listener);
+    }
+
+    void connection(String host, boolean reused) {
+        this.host = host;
+        this.connectionReused = reused;
+    }
+
+    void connected(long dnsNanos, long connectNanos) {
+        this.dnsNanos = dnsNanos;
+        this.connectNanos = connectNanos;
+    }
+
+    void written(long startedAt) {
+        writtenAt = System.nanoTime();
+        writeNanos = writtenAt - startedAt;
+    }
+
+    void firstByte() {
+        firstByteNanos = System.nanoTime() - writtenAt;
+    }
+
+    void headReceived(int status) {
+        this.status = status;
+        headReceivedAt = System.nanoTime();
+    }
+
+    void bodyReceived() {
+        bodyNanos = System.nanoTime() - headReceivedAt;
+    }
+
+    /**
+     * Notifies the listener, only the first call of complete or fail has an effect
+     */
+    void complete() {
+        if (finish()) {
+            listener.requestCompleted(this);
+        }
+    }
+
+    void fail(Exception error) {
+        if (finish()) {
+            listener.requestFailed(this, error);
+        }
+    }
+
+    private boolean finish() {
+        if (finished) {
+            return false;
+        }
+        finished = true;
+        totalNanos = System.nanoTime() - startedAt;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url + " -> " + status + (connectionReused ? " (reused)" : "") +
+                ", dns: " + dnsNanos / 1000 + "us" +
+                ", connect: " + connectNanos / 1000 + "us" +
+                ", write: " + writeNanos / 1000 + "us" +
+                ", first byte: " + firstByteNanos / 1000 + "us" +
+                ", body: " + bodyNanos / 1000 + "us" +
+                ", total: " + totalNanos / 1000 + "us";
+    }
+}
@@ -3,6 +3,8 @@ package com.andreidemus.http.client;
 import com.andreidemus.http.common.Request;
 import com.andreidemus.http.common.Response;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Performs HTTP requests
  */
@@ -108,4 +110,104 @@ public class Requests {
     public static Response head(String url) {
         return requests.head(new Request(url));
     }
+
+    /**
+     * Performs GET request asynchronously
+     *
+     * @param request the Request instance
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> getAsync(Request request) {
+        return requests.getAsync(request);
+    }
+
+    /**
+     * Performs POST request asynchronously
+     *
+     * @param request the Request instance
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> postAsync(Request request) {
+        return requests.postAsync(request);
+    }
+
+    /**
+     * Performs PUT request asynchronously
+     *
+     * @param request the Request instance
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> putAsync(Request request) {
+        return requests.putAsync(request);
+    }
+
+    /**
+     * Performs DELETE request asynchronously
+     *
+     * @param request the Request instance
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> deleteAsync(Request request) {
+        return requests.deleteAsync(request);
+    }
+
+    /**
+     * Performs HEAD request asynchronously
+     *
+     * @param request the Request instance
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> headAsync(Request request) {
+        return requests.headAsync(request);
+    }
+
+    /**
+     * Performs GET request asynchronously
+     *
+     * @param url the url to be requested
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> getAsync(String url) {
+        return requests.getAsync(new Request(url));
+    }
+
+    /**
+     * Performs POST request asynchronously
+     *
+     * @param url the url to be requested
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> postAsync(String url) {
+        return requests.postAsync(new Request(url));
+    }
+
+    /**
+     * Performs PUT request asynchronously
+     *
+     * @param url the url to be requested
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> putAsync(String url) {
+        return requests.putAsync(new Request(url));
+    }
+
+    /**
+     * Performs DELETE request asynchronously
+     *
+     * @param url the url to be requested
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> deleteAsync(String url) {
+        return requests.deleteAsync(new Request(url));
+    }
+
+    /**
+     * Performs HEAD request asynchronously
+     *
+     * @param url the url to be requested
+     * @return the future completed with the Response instance
+     */
+    public static CompletableFuture<Response> headAsync(String url) {
+        return requests.headAsync(new Request(url));
+    }
 }
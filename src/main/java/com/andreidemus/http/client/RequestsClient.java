@@ -1,20 +1,106 @@
 package com.andreidemus.http.client;
 
+import com.andreidemus.http.common.BodySource;
+import com.andreidemus.http.common.Headers;
 import com.andreidemus.http.common.Request;
 import com.andreidemus.http.common.Response;
 
-import java.io.*;
-import java.net.HttpURLConnection;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
-import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
-
-public class RequestsClient {
-    public static final String CONTENT_TYPE = "Content-Type";
-    public static final String CONTENT_LENGTH = "Content-Length";
-    public static final String USER_AGENT = "User-Agent";
+public class RequestsClient implements Closeable {
+    public static final String CONTENT_TYPE = Headers.CONTENT_TYPE;
+    public static final String CONTENT_LENGTH = Headers.CONTENT_LENGTH;
+    public static final String USER_AGENT = Headers.USER_AGENT;
+    public static final String TRANSFER_ENCODING = Headers.TRANSFER_ENCODING;
+    public static final String ACCEPT_ENCODING = Headers.ACCEPT_ENCODING;
+    public static final String CONTENT_ENCODING = Headers.CONTENT_ENCODING;
 
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int TOO_MANY_REQUESTS = 429;
     private static final String DEFAULT_USER_AGENT = "Java-Requests/0.0.1";
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final int MAX_POOLED_INFLATERS = 32;
+    private static final Set<String> PIPELINED_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE"));
+
+    private final Engine engine;
+    private final NioEngine nioEngine;
+    private final UrlConnectionEngine urlConnectionEngine;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final int maxConnectionsPerHost;
+    private final int pipelineDepth;
+    private final boolean compression;
+    private final int requestCompressionThreshold;
+    private final int bufferSize;
+    private final InflaterPool inflaterPool = new InflaterPool(MAX_POOLED_INFLATERS);
+    private final ResponseCache cache;
+    private final RequestListener listener;
+    private final Retries retries;
+    private final ConcurrencyLimiter limiter;
+    private final SingleFlight singleFlight;
+    private final Map<String, LoadBalancer> services;
+
+    public RequestsClient() {
+        this(builder());
+    }
+
+    private RequestsClient(Builder builder) {
+        final SocketSettings settings = new SocketSettings(
+                toMillis(builder.connectTimeout),
+                toMillis(builder.readTimeout),
+                builder.bufferSize,
+                builder.tcpNoDelay,
+                builder.socketSendBufferSize,
+                builder.socketReceiveBufferSize
+        );
+        final BufferPool bufferPool = new BufferPool(builder.bufferSize, MAX_POOLED_BUFFERS);
+        this.engine = builder.engine;
+        this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+        this.pipelineDepth = builder.pipelineDepth;
+        this.compression = builder.compression;
+        this.requestCompressionThreshold = builder.requestCompressionThreshold;
+        this.bufferSize = builder.bufferSize;
+        this.cache = builder.cache;
+        this.listener = builder.listener;
+        this.limiter = builder.limiter;
+        this.singleFlight = builder.coalescing ? new SingleFlight() : null;
+        this.services = new HashMap<>(builder.services);
+        this.nioEngine = new NioEngine(new ConnectionPool(
+                builder.maxConnectionsPerHost,
+                builder.idleTimeout.toNanos(),
+                builder.maxLifetime.toNanos(),
+                builder.leaseTimeout.toNanos(),
+                (route, host, port) -> HttpConnection.open(route, host, port, settings, bufferPool)
+        ));
+        this.urlConnectionEngine = new UrlConnectionEngine(settings, bufferPool);
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownExecutor = null;
+        } else {
+            this.ownExecutor = Executors.newCachedThreadPool(new AsyncThreadFactory());
+            this.executor = ownExecutor;
+        }
+        this.retries = builder.retryPolicy == null ? null : new Retries(builder.retryPolicy, executor);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
 
     public Response get(Request request) {
         return send(request.method("GET"));
@@ -38,93 +124,672 @@ public class RequestsClient {
 
     //TODO CONNECT, OPTIONS, TRACE, PATCH
 
+    public CompletableFuture<Response> getAsync(Request request) {
+        return sendAsync(request.method("GET"));
+    }
+
+    public CompletableFuture<Response> postAsync(Request request) {
+        return sendAsync(request.method("POST"));
+    }
+
+    public CompletableFuture<Response> putAsync(Request request) {
+        return sendAsync(request.method("PUT"));
+    }
+
+    public CompletableFuture<Response> deleteAsync(Request request) {
+        return sendAsync(request.method("DELETE"));
+    }
+
+    public CompletableFuture<Response> headAsync(Request request) {
+        return sendAsync(request.method("HEAD"));
+    }
+
     public Response send(Request request) {
+        return send(request, false);
+    }
+
+    /**
+     * Sends the request and returns as soon as the response head is received. The body is read from
+     * the network while it is consumed through {@link Response#bodyStream()} or {@link Response#bodyChannel()},
+     * so it is never held in memory completely. The response must be closed to release the connection.
+     *
+     * @param request the Request instance
+     * @return the streamed Response instance
+     */
+    public Response stream(Request request) {
+        return send(request, true);
+    }
+
+    /**
+     * Sends the request on the client's executor
+     *
+     * @param request the Request instance
+     * @return the future completed with the Response or with HttpClientException if the request has failed
+     */
+    public CompletableFuture<Response> sendAsync(Request request) {
+        return CompletableFuture.supplyAsync(() -> send(request), executor);
+    }
+
+    /**
+     * Sends a batch of requests and waits for all of them. Requests to the same host which are safe to repeat
+     * (GET, HEAD, OPTIONS, PUT and DELETE without a streamed body) are pipelined over a few keep-alive connections,
+     * so a burst of small requests costs a handful of round trips instead of one per request.
+     * Other requests are sent one by one.
+     *
+     * @param requests the Request instances with methods already set
+     * @return the fully buffered responses in the order of the requests
+     * @throws HttpClientException if any of the requests has failed
+     */
+    public List<Response> sendAll(List<Request> requests) {
+        final PreparedRequest[] prepared = new PreparedRequest[requests.size()];
+        final ResponseCache.Lookup[] lookups = new ResponseCache.Lookup[requests.size()];
+        final Response[] responses = new Response[requests.size()];
+        final Map<String, List<Integer>> pipelined = new LinkedHashMap<>();
+        final List<Integer> single = new ArrayList<>();
+        try {
+            for (int i = 0; i < prepared.length; i++) {
+                prepared[i] = prepare(requests.get(i));
+                if (cache != null) {
+                    lookups[i] = cache.lookup(prepared[i]);
+                    if (lookups[i].cached != null) {
+                        responses[i] = lookups[i].cached;
+                        continue;
+                    }
+                    prepared[i] = lookups[i].request;
+                }
+                if (isPipelined(prepared[i])) {
+                    // pipelined requests are not retried, each of them is sent to the endpoint chosen now
+                    prepared[i] = resolve(prepared[i]);
+                    pipelined.computeIfAbsent(prepared[i].route(), it -> new ArrayList<>()).add(i);
+                } else {
+                    single.add(i);
+                }
+            }
+        } catch (IOException e) {
+            throw new HttpClientException(e);
+        }
+
+        final List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (List<Integer> indices : pipelined.values()) {
+            final int connections = Math.min(maxConnectionsPerHost, (indices.size() + pipelineDepth - 1) / pipelineDepth);
+            final int batchSize = (indices.size() + connections - 1) / connections;
+            for (int from = 0; from < indices.size(); from += batchSize) {
+                final List<Integer> batch = indices.subList(from, Math.min(indices.size(), from + batchSize));
+                batches.add(CompletableFuture.runAsync(() -> pipeline(batch, prepared, responses), executor));
+            }
+        }
+        for (int i : single) {
+            responses[i] = attempt(prepared[i], false);
+        }
+        try {
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof HttpClientException) {
+                throw (HttpClientException) e.getCause();
+            }
+            throw new HttpClientException(e.getCause());
+        }
+        if (cache != null) {
+            for (int i = 0; i < responses.length; i++) {
+                if (lookups[i].cached == null) {
+                    responses[i] = cache.complete(lookups[i], responses[i], it -> attempt(it, false));
+                }
+            }
+        }
+        return Arrays.asList(responses);
+    }
+
+    /**
+     * @return the current state of the keep-alive connection pool
+     */
+    public PoolStats poolStats() {
+        return nioEngine.stats();
+    }
+
+    /**
+     * Closes all idle pooled connections. Connections leased at the moment are closed when they are released.
+     * The default async executor is shut down, an executor passed to the builder is left untouched.
+     */
+    @Override
+    public void close() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+        nioEngine.close();
+        urlConnectionEngine.close();
+    }
+
+    private Response send(Request request, boolean stream) {
+        final PreparedRequest prepared;
         try {
-            final HttpURLConnection conn = constructRequest(request);
-            final Response response = parseResponse(conn);
-            conn.disconnect();
+            prepared = prepare(request);
+        } catch (IOException e) {
+            throw new HttpClientException(e);
+        }
+        final String key = singleFlight == null || stream ? null : SingleFlight.key(prepared);
+        if (key == null) {
+            return execute(prepared, stream);
+        }
+        return singleFlight.execute(key, () -> execute(prepared, false));
+    }
+
+    private Response execute(PreparedRequest request, boolean stream) {
+        if (cache == null || stream) {
+            return attempt(request, stream);
+        }
+        final ResponseCache.Lookup lookup = cache.lookup(request);
+        if (lookup.cached != null) {
+            return lookup.cached;
+        }
+        return cache.complete(lookup, attempt(lookup.request, false), it -> attempt(it, false));
+    }
+
+    private Response attempt(PreparedRequest request, boolean stream) {
+        if (retries == null) {
+            return limited(resolved(request), stream);
+        }
+        // every attempt chooses an endpoint anew, a retry doesn't go back to the endpoint which has just failed
+        return retries.send(request, stream, it -> limited(resolved(it), stream));
+    }
+
+    private static PreparedRequest resolved(PreparedRequest request) {
+        try {
+            return resolve(request);
+        } catch (MalformedURLException e) {
+            throw new HttpClientException(e);
+        }
+    }
+
+    /**
+     * @return the request sent to an endpoint of its service, the request itself if it is not load balanced
+     */
+    private static PreparedRequest resolve(PreparedRequest request) throws MalformedURLException {
+        return request.service == null ? request : request.to(request.service.choose());
+    }
+
+    private Response limited(PreparedRequest request, boolean stream) {
+        if (limiter == null) {
+            return balanced(request, stream);
+        }
+        final ConcurrencyLimiter.HostLimit limit = limiter.acquire(request.route());
+        final long startedAt = System.nanoTime();
+        boolean dropped = true;
+        try {
+            final Response response = balanced(request, stream);
+            dropped = response.status() == SERVICE_UNAVAILABLE || response.status() == TOO_MANY_REQUESTS;
+            return response;
+        } finally {
+            limit.release(System.nanoTime() - startedAt, dropped);
+        }
+    }
+
+    private Response balanced(PreparedRequest request, boolean stream) {
+        final LoadBalancer.Endpoint endpoint = request.endpoint;
+        if (endpoint == null) {
+            return exchange(request, stream);
+        }
+        endpoint.started();
+        final long startedAt = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Response response = exchange(request, stream);
+            failed = response.status() >= 500;
+            return response;
+        } finally {
+            endpoint.finished(System.nanoTime() - startedAt, failed);
+        }
+    }
+
+    private Response exchange(PreparedRequest request, boolean stream) {
+        final RequestTimings timings = request.timings;
+        try {
+            final Response response = engineFor(request.url).execute(request.method, request.url, request.headers,
+                    request.body, stream, timings);
+            if (timings != null && !response.isStreamed()) {
+                timings.complete();
+            }
+            return request.decompress ? decompress(response) : response;
+        } catch (IOException e) {
+            if (timings != null) {
+                timings.fail(e);
+            }
+            throw new HttpClientException(e);
+        } catch (RuntimeException e) {
+            if (timings != null) {
+                timings.fail(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces a gzip or deflate coded body with the decoded one, a streamed body is decoded while it is read
+     */
+    private Response decompress(Response response) {
+        final String coding = response.firstHeader(CONTENT_ENCODING)
+                                      .map(it -> it.trim().toLowerCase(Locale.ROOT))
+                                      .orElse("");
+        final boolean gzip = "gzip".equals(coding) || "x-gzip".equals(coding);
+        if (!gzip && !"deflate".equals(coding)) {
             return response;
+        }
+        final Headers headers = response.headerFields()
+                                        .toBuilder()
+                                        .remove(CONTENT_ENCODING)
+                                        .remove(CONTENT_LENGTH)
+                                        .build();
+        final InflatingChannel body = new InflatingChannel(response.bodyChannel(), inflaterPool, gzip, bufferSize);
+        final Response decoded = new Response(response.status(), response.reason(), body, headers);
+        if (!response.isStreamed()) {
+            try {
+                decoded.body();
+            } catch (UncheckedIOException e) {
+                throw new HttpClientException(e.getCause());
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Sends the requests to the same route over one connection. The batch holds one permit of the limiter, as
+     * it takes one connection the same way as a single request, and every response is reported to its endpoint.
+     */
+    private void pipeline(List<Integer> indices, PreparedRequest[] prepared, Response[] responses) {
+        final List<PreparedRequest> batch = new ArrayList<>(indices.size());
+        indices.forEach(i -> batch.add(prepared[i]));
+        final ConcurrencyLimiter.HostLimit limit = limiter == null ? null : limiter.acquire(batch.get(0).route());
+        batch.stream()
+             .filter(it -> it.endpoint != null)
+             .forEach(it -> it.endpoint.started());
+        final long startedAt = System.nanoTime();
+        List<Response> received = null;
+        try {
+            received = nioEngine.pipeline(batch, pipelineDepth);
+            for (int i = 0; i < indices.size(); i++) {
+                final PreparedRequest request = batch.get(i);
+                if (request.timings != null) {
+                    request.timings.complete();
+                }
+                responses[indices.get(i)] = request.decompress ? decompress(received.get(i)) : received.get(i);
+            }
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            batch.stream()
+                 .filter(it -> it.timings != null)
+                 .forEach(it -> it.timings.fail(e));
+            throw new HttpClientException(e);
+        } finally {
+            final long nanos = System.nanoTime() - startedAt;
+            boolean dropped = false;
+            for (int i = 0; i < batch.size(); i++) {
+                // a failed batch counts as unavailable for every request in it
+                final int status = received == null ? SERVICE_UNAVAILABLE : received.get(i).status();
+                if (batch.get(i).endpoint != null) {
+                    batch.get(i).endpoint.finished(nanos, status >= 500);
+                }
+                dropped |= status == SERVICE_UNAVAILABLE || status == TOO_MANY_REQUESTS;
+            }
+            if (limit != null) {
+                limit.release(nanos, dropped);
+            }
         }
     }
 
-    private HttpURLConnection constructRequest(Request request) throws IOException {
+    private boolean isPipelined(PreparedRequest request) {
+        return engineFor(request.url) == nioEngine
+                && PIPELINED_METHODS.contains(request.method)
+                && (request.body == null || request.body.bytes() != null);
+    }
+
+    private PreparedRequest prepare(Request request) throws IOException {
+        // a service is resolved to its endpoint per attempt, the cache and coalescing use the logical url
+        final URL url = toUrl(request);
+        final LoadBalancer service = url.getPort() < 0 ? services.get(url.getHost()) : null;
+        final BodySource body = requestBody(request);
+        final boolean compress = requestCompressionThreshold >= 0
+                && body != null
+                && body.bytes() != null
+                && body.length() >= requestCompressionThreshold
+                && !request.headerFields().contains(CONTENT_ENCODING);
+        final BodySource sent = compress ? gzip(body.bytes()) : body;
+        final Headers.Builder headers = requestHeaders(request, sent);
+        if (compress) {
+            headers.set(CONTENT_ENCODING, "gzip");
+        }
+        // a client setting Accept-Encoding itself gets the body as it was sent
+        final boolean decompress = compression && !request.headerFields().contains(ACCEPT_ENCODING);
+        if (decompress) {
+            headers.set(ACCEPT_ENCODING, "gzip, deflate");
+        }
+        final RequestTimings timings = listener == null ? null : new RequestTimings(request.method(), url, listener);
+        return new PreparedRequest(request.method(), url, headers.build(), sent, decompress, timings, service);
+    }
+
+    private static BodySource gzip(byte[] body) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return BodySource.of(out.toByteArray());
+    }
+
+    private HttpEngine engineFor(URL url) {
+        if (engine == Engine.NIO && "http".equalsIgnoreCase(url.getProtocol())) {
+            return nioEngine;
+        }
+        return urlConnectionEngine;
+    }
+
+    private URL toUrl(Request request) throws IOException {
         String urlStr = request.url() + request.path();
         if (request.hasPathParams()) {
             urlStr += "?" + request.pathParamsAsString();
         }
-        final URL url = new URL(urlStr);
-        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        return new URL(urlStr);
+    }
 
-        conn.setRequestMethod(request.method());
+    private BodySource requestBody(Request request) {
+        if (request.hasBodySource()) {
+            return request.bodySource();
+        } else if (request.hasBody()) {
+            return BodySource.of(request.body());
+        } else if (request.hasFormParams()) {
+            return BodySource.of(request.formParamsAsString().getBytes(request.charset()));
+        }
+        return null;
+    }
 
-        request.headers().forEach((key, vals) -> {
-            vals.forEach(val -> conn.addRequestProperty(key, val));
-        });
-        if (!request.headers().containsKey(USER_AGENT)) {
-            conn.addRequestProperty(USER_AGENT, DEFAULT_USER_AGENT);
+    private Headers.Builder requestHeaders(Request request, BodySource body) {
+        final Headers.Builder headers = request.headerFields().toBuilder();
+        if (!headers.contains(USER_AGENT)) {
+            headers.add(USER_AGENT, DEFAULT_USER_AGENT);
         }
 
-        if (request.hasBody()) {
-            if (!request.headers().containsKey(CONTENT_TYPE)) {
-                conn.addRequestProperty(CONTENT_TYPE, "text/plain; " + request.charset().name());
+        if (request.hasBodySource()) {
+            if (!headers.contains(CONTENT_TYPE)) {
+                headers.add(CONTENT_TYPE, "application/octet-stream");
+            }
+        } else if (request.hasBody()) {
+            if (!headers.contains(CONTENT_TYPE)) {
+                headers.add(CONTENT_TYPE, "text/plain; " + request.charset().name());
             }
-            final byte[] bytes = request.body();
-            conn.addRequestProperty(CONTENT_LENGTH, String.valueOf(bytes.length));
-            writeRequestBody(conn, bytes);
         } else if (request.hasFormParams()) {
-            if (!request.headers().containsKey(CONTENT_TYPE)) {
-                conn.addRequestProperty(CONTENT_TYPE, "application/x-www-form-urlencoded");
+            if (!headers.contains(CONTENT_TYPE)) {
+                headers.add(CONTENT_TYPE, "application/x-www-form-urlencoded");
+            }
+        }
+        if (body != null) {
+            // a message with both framing headers is ambiguous, the one of the user not matching the body is dropped
+            if (body.length() >= 0) {
+                headers.remove(TRANSFER_ENCODING).set(CONTENT_LENGTH, String.valueOf(body.length()));
+            } else {
+                headers.remove(CONTENT_LENGTH).set(TRANSFER_ENCODING, "chunked");
             }
-            final byte[] bytes = request.formParamsAsString().getBytes(request.charset());
-            conn.addRequestProperty(CONTENT_LENGTH, String.valueOf(bytes.length));
-            writeRequestBody(conn, bytes);
         }
 
-        return conn;
+        return headers;
     }
 
-    private void writeRequestBody(HttpURLConnection conn, byte[] bytes) throws IOException {
-        conn.setDoOutput(true);
-        try (OutputStream out = conn.getOutputStream()) {
-            out.write(bytes);
-            out.flush();
-        }
+    private static int toMillis(Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, duration.toMillis());
     }
 
-    private Response parseResponse(HttpURLConnection conn) throws IOException {
-        final int status = conn.getResponseCode();
-        final String reason = conn.getResponseMessage();
-        final byte[] body = readBody(conn);
+    private static class AsyncThreadFactory implements ThreadFactory {
+        private static final AtomicInteger clientCount = new AtomicInteger();
 
-        //conn.getHeaderFields() returns incorrect headers ("Header : value" lines are not parsed correctly)
-        //TODO replace HttpURLConnection
-        return new Response(status, reason, body, conn.getHeaderFields());
+        private final String prefix = "requests-async-" + clientCount.incrementAndGet() + "-";
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
-    private byte[] readBody(HttpURLConnection conn) {
-        try (InputStream in = getInputStream(conn)) {
-            if (in == null) {
-                return new byte[]{};
+    /**
+     * Configures RequestsClient instances
+     */
+    public static class Builder {
+        private Engine engine = Engine.URL_CONNECTION;
+        private Duration connectTimeout = Duration.ZERO;
+        private Duration readTimeout = Duration.ZERO;
+        private int bufferSize = 16 * 1024;
+        private boolean tcpNoDelay = true;
+        private int socketSendBufferSize;
+        private int socketReceiveBufferSize;
+        private int maxConnectionsPerHost = 20;
+        private Duration idleTimeout = Duration.ofSeconds(30);
+        private Duration maxLifetime = Duration.ofMinutes(10);
+        private Duration leaseTimeout = Duration.ofSeconds(30);
+        private int pipelineDepth = 16;
+        private boolean compression;
+        private int requestCompressionThreshold = -1;
+        private ResponseCache cache;
+        private RequestListener listener;
+        private RetryPolicy retryPolicy;
+        private ConcurrencyLimiter limiter;
+        private boolean coalescing;
+        private final Map<String, LoadBalancer> services = new HashMap<>();
+        private Executor executor;
+
+        private Builder() {
+        }
+
+        /**
+         * @param engine the transport for plain http requests, {@link Engine#URL_CONNECTION} by default. Connection
+         *               pool settings and stats, pipelining in sendAll and zero-copy file bodies need {@link Engine#NIO}.
+         *               Https is always sent with HttpURLConnection.
+         * @return this builder
+         */
+        public Builder engine(Engine engine) {
+            this.engine = Objects.requireNonNull(engine);
+            return this;
+        }
+
+        /**
+         * @param connectTimeout the max time to establish a connection, zero means no timeout
+         * @return this builder
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = Objects.requireNonNull(connectTimeout);
+            return this;
+        }
+
+        /**
+         * @param readTimeout the max time to wait for the next portion of the response, zero means no timeout
+         * @return this builder
+         */
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = Objects.requireNonNull(readTimeout);
+            return this;
+        }
+
+        /**
+         * @param bufferSize the size of per-connection read and write buffers in bytes
+         * @return this builder
+         */
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize < 512) {
+                throw new IllegalArgumentException("bufferSize must be at least 512 bytes");
             }
-            byte[] bytes = new byte[in.available()];
-            in.read(bytes);
-            return bytes;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            this.bufferSize = bufferSize;
+            return this;
         }
-    }
 
-    private InputStream getInputStream(HttpURLConnection conn) {
-        try {
-            if (conn.getResponseCode() < HTTP_BAD_REQUEST) {
-                return conn.getInputStream();
-            } else {
-                return conn.getErrorStream();
+        /**
+         * @param tcpNoDelay the TCP_NODELAY socket option, enabled by default
+         * @return this builder
+         */
+        public Builder tcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * @param socketSendBufferSize the SO_SNDBUF socket option, zero leaves the system default
+         * @return this builder
+         */
+        public Builder socketSendBufferSize(int socketSendBufferSize) {
+            this.socketSendBufferSize = socketSendBufferSize;
+            return this;
+        }
+
+        /**
+         * @param socketReceiveBufferSize the SO_RCVBUF socket option, zero leaves the system default
+         * @return this builder
+         */
+        public Builder socketReceiveBufferSize(int socketReceiveBufferSize) {
+            this.socketReceiveBufferSize = socketReceiveBufferSize;
+            return this;
+        }
+
+        /**
+         * @param maxConnectionsPerHost the max number of simultaneously open connections to a single host
+         * @return this builder
+         */
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            if (maxConnectionsPerHost < 1) {
+                throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        /**
+         * @param idleTimeout the time after which an unused connection is closed
+         * @return this builder
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = Objects.requireNonNull(idleTimeout);
+            return this;
+        }
+
+        /**
+         * @param maxLifetime the time after which a connection is not reused anymore, no matter how active it is
+         * @return this builder
+         */
+        public Builder maxLifetime(Duration maxLifetime) {
+            this.maxLifetime = Objects.requireNonNull(maxLifetime);
+            return this;
+        }
+
+        /**
+         * @param leaseTimeout the max time to wait for a free connection when all connections to the host are busy
+         * @return this builder
+         */
+        public Builder leaseTimeout(Duration leaseTimeout) {
+            this.leaseTimeout = Objects.requireNonNull(leaseTimeout);
+            return this;
+        }
+
+        /**
+         * @param pipelineDepth the max number of requests sent by {@link #sendAll(List)} on a connection
+         *                      before their responses are received
+         * @return this builder
+         */
+        public Builder pipelineDepth(int pipelineDepth) {
+            if (pipelineDepth < 1) {
+                throw new IllegalArgumentException("pipelineDepth must be positive");
+            }
+            this.pipelineDepth = pipelineDepth;
+            return this;
+        }
+
+        /**
+         * @param compression true to send "Accept-Encoding: gzip, deflate" and transparently decode compressed
+         *                    responses, disabled by default
+         * @return this builder
+         */
+        public Builder compression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * @param requestCompressionThreshold the min size of an in-memory request body in bytes to be sent gzip
+         *                                    compressed, negative disables request compression (the default)
+         * @return this builder
+         */
+        public Builder requestCompressionThreshold(int requestCompressionThreshold) {
+            this.requestCompressionThreshold = requestCompressionThreshold;
+            return this;
+        }
+
+        /**
+         * @param cache the cache of GET responses, there is no caching by default
+         * @return this builder
+         */
+        public Builder cache(ResponseCache cache) {
+            this.cache = Objects.requireNonNull(cache);
+            return this;
+        }
+
+        /**
+         * @param listener receives phase timings of every request, e.g. {@link RequestMetrics}
+         * @return this builder
+         */
+        public Builder listener(RequestListener listener) {
+            this.listener = Objects.requireNonNull(listener);
+            return this;
+        }
+
+        /**
+         * @param retryPolicy repeats failed idempotent requests and optionally hedges slow ones, requests are sent
+         *                    once by default
+         * @return this builder
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = Objects.requireNonNull(retryPolicy);
+            return this;
+        }
+
+        /**
+         * @param limiter limits the number of requests in flight to every host, by default only
+         *                maxConnectionsPerHost limits them
+         * @return this builder
+         */
+        public Builder limiter(ConcurrencyLimiter limiter) {
+            this.limiter = Objects.requireNonNull(limiter);
+            return this;
+        }
+
+        /**
+         * @param coalescing true to send identical GET and HEAD requests made at the same time only once and share
+         *                   the response among the callers, disabled by default. Requests are identical when
+         *                   their urls and headers are equal. Streamed requests are never shared.
+         * @return this builder
+         */
+        public Builder coalescing(boolean coalescing) {
+            this.coalescing = coalescing;
+            return this;
+        }
+
+        /**
+         * Registers a load balanced service. Requests to {@code http://<name>} without a port are sent
+         * to the endpoints of the balancer.
+         *
+         * @param name     the host name used in request urls
+         * @param balancer the endpoints of the service
+         * @return this builder
+         */
+        public Builder service(String name, LoadBalancer balancer) {
+            this.services.put(Objects.requireNonNull(name), Objects.requireNonNull(balancer));
+            return this;
+        }
+
+        /**
+         * @param executor runs async requests, pipelined batches and hedged requests, by default each client
+         *                 has its own cached pool of daemon threads
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor);
+            return this;
+        }
+
+        public RequestsClient build() {
+            return new RequestsClient(this);
         }
     }
 }
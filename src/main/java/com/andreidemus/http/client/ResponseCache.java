@@ -0,0 +1,536 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Headers;
+import com.andreidemus.http.common.Response;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Private HTTP cache of GET responses following RFC 7234. Fresh responses are returned without contacting
+ * the server, stale ones are revalidated with If-None-Match and If-Modified-Since, so an unchanged body is not
+ * transferred again. Entries are evicted in LRU order once the memory or disk budget is exceeded. When a directory
+ * is set, bodies above the spill threshold are kept in files instead of the heap.
+ * <p>
+ * Streamed requests bypass the cache. A cache may be shared by several clients.
+ */
+public class ResponseCache {
+    private static final String CACHE_CONTROL = Headers.CACHE_CONTROL;
+    private static final String EXPIRES = Headers.EXPIRES;
+    private static final String DATE = Headers.DATE;
+    private static final String AGE = Headers.AGE;
+    private static final String ETAG = Headers.ETAG;
+    private static final String LAST_MODIFIED = Headers.LAST_MODIFIED;
+    private static final String VARY = Headers.VARY;
+    private static final String IF_NONE_MATCH = Headers.IF_NONE_MATCH;
+    private static final String IF_MODIFIED_SINCE = Headers.IF_MODIFIED_SINCE;
+    private static final String RANGE = Headers.RANGE;
+    private static final int NOT_MODIFIED = 304;
+    // the largest delta-seconds, RFC 9111 section 1.2.2
+    private static final long MAX_DELTA_SECONDS = 1L << 31;
+    // the statuses cacheable by default, RFC 7231 section 6.1
+    private static final Set<Integer> CACHEABLE_STATUSES = new HashSet<>(Arrays.asList(200, 203, 204, 300, 301, 404, 405, 410, 414, 501));
+    private static final Set<String> SAFE_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE"));
+    // headers of a 304 response which describe the transfer rather than the cached representation
+    private static final Set<String> NOT_UPDATED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private static final long ENTRY_OVERHEAD = 128;
+
+    static {
+        NOT_UPDATED_HEADERS.addAll(Arrays.asList(RequestsClient.CONTENT_LENGTH, RequestsClient.CONTENT_ENCODING,
+                RequestsClient.TRANSFER_ENCODING, Headers.CONNECTION));
+    }
+
+    private final long maxMemoryBytes;
+    private final Path directory;
+    private final long spillThreshold;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+    private long hits;
+    private long revalidations;
+    private long misses;
+
+    private ResponseCache(Builder builder) {
+        this.maxMemoryBytes = builder.maxMemoryBytes;
+        this.directory = builder.directory;
+        this.spillThreshold = builder.spillThreshold;
+        this.maxDiskBytes = builder.maxDiskBytes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, revalidations, misses, entries.size(), memoryBytes, diskBytes);
+    }
+
+    /**
+     * Removes all entries, spilled bodies are deleted
+     */
+    public synchronized void clear() {
+        entries.values().forEach(it -> discard(it, null));
+        entries.clear();
+    }
+
+    /**
+     * Looks up the response to the request
+     *
+     * @return either a fresh cached response or the request to be sent, conditional if a stale entry can be revalidated
+     */
+    Lookup lookup(PreparedRequest request) {
+        if (!"GET".equals(request.method)) {
+            return new Lookup(request, null, null, null, false);
+        }
+        final Directives directives = Directives.parse(request.headers.get(CACHE_CONTROL));
+        // requests with own conditions or ranges expect the server's answer as is
+        if (directives.noStore
+                || request.headers.contains(IF_NONE_MATCH)
+                || request.headers.contains(IF_MODIFIED_SINCE)
+                || request.headers.contains(RANGE)) {
+            return new Lookup(request, null, null, null, false);
+        }
+
+        final String key = request.url.toString();
+        final Entry entry = get(key);
+        if (entry == null || !entry.matches(request.headers)) {
+            return new Lookup(request, null, key, null, true);
+        }
+        if (!directives.noCache && entry.freshUntil > System.currentTimeMillis()) {
+            final Response cached = entry.toResponse();
+            if (cached != null) {
+                synchronized (this) {
+                    hits++;
+                }
+                return new Lookup(null, cached, key, entry, true);
+            }
+            // another thread may have stored a newer entry in the meantime
+            remove(key, entry);
+            return new Lookup(request, null, key, null, true);
+        }
+        if (entry.etag == null && entry.lastModified == null) {
+            return new Lookup(request, null, key, null, true);
+        }
+
+        final Headers.Builder headers = request.headers.toBuilder();
+        if (entry.etag != null) {
+            headers.set(IF_NONE_MATCH, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            headers.set(IF_MODIFIED_SINCE, entry.lastModified);
+        }
+        final PreparedRequest conditional = new PreparedRequest(request.method, request.url, headers.build(), request.body,
+                request.decompress, request.timings, request.service);
+        return new Lookup(conditional, request, null, key, entry, true);
+    }
+
+    /**
+     * Stores the response received for the looked up request
+     *
+     * @param resend sends the request again, without the conditions if the entry revalidated by 304 Not Modified
+     *               has lost its body in the meantime
+     * @return the response to be returned to the caller, the cached one if the server has answered 304 Not Modified
+     */
+    Response complete(Lookup lookup, Response response, Function<PreparedRequest, Response> resend) {
+        if (!lookup.cacheable) {
+            // a successful unsafe request may change the resource, RFC 7234 section 4.4
+            if (!SAFE_METHODS.contains(lookup.request.method) && response.status() < 400) {
+                remove(lookup.request.url.toString());
+            }
+            return response;
+        }
+        if (lookup.entry != null && response.status() == NOT_MODIFIED) {
+            final Entry refreshed = lookup.entry.refresh(response.headerFields(), System.currentTimeMillis());
+            final Response cached = refreshed.toResponse();
+            if (cached != null) {
+                put(lookup.key, refreshed);
+                synchronized (this) {
+                    revalidations++;
+                }
+                return cached;
+            }
+            // a 304 has no body of its own, the full response is fetched instead
+            remove(lookup.key, lookup.entry);
+            final Lookup unconditional = new Lookup(lookup.unconditional, null, lookup.key, null, true);
+            return complete(unconditional, resend.apply(unconditional.request), resend);
+        }
+        synchronized (this) {
+            misses++;
+        }
+        store(lookup.key, lookup.request.headers, response);
+        return response;
+    }
+
+    private void store(String key, Headers requestHeaders, Response response) {
+        final Headers headers = response.headerFields();
+        final Directives directives = Directives.parse(headers.get(CACHE_CONTROL));
+        final List<String> vary = varyNames(headers);
+        final String etag = headers.first(ETAG);
+        final String lastModified = headers.first(LAST_MODIFIED);
+        final long now = System.currentTimeMillis();
+        final long freshUntil = directives.noCache ? 0 : freshUntil(headers, directives, now);
+        if (!CACHEABLE_STATUSES.contains(response.status())
+                || directives.noStore
+                || vary.contains("*")
+                || (freshUntil <= now && etag == null && lastModified == null)) {
+            remove(key);
+            return;
+        }
+
+        final Map<String, String> varyValues = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        vary.forEach(name -> varyValues.put(name, String.join(",", requestHeaders.get(name))));
+        // the caller gets the response itself, the cache keeps its own copy of the body
+        final byte[] body = response.body() == null ? new byte[]{} : response.body().clone();
+        Path file = null;
+        if (directory != null && body.length >= spillThreshold) {
+            try {
+                file = Files.createTempFile(directory, "response", ".body");
+                Files.write(file, body);
+            } catch (IOException e) {
+                deleteQuietly(file);
+                remove(key);
+                return;
+            }
+        }
+        final Entry entry = new Entry(response.status(), response.reason(), headers, varyValues,
+                file == null ? body : null, file, body.length, freshUntil, etag, lastModified);
+        if (entry.memoryWeight() > maxMemoryBytes || entry.diskWeight() > maxDiskBytes) {
+            deleteQuietly(file);
+            remove(key);
+            return;
+        }
+        put(key, entry);
+    }
+
+    private synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        final Entry old = entries.put(key, entry);
+        memoryBytes += entry.memoryWeight();
+        diskBytes += entry.diskWeight();
+        if (old != null) {
+            discard(old, entry.file);
+        }
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while ((memoryBytes > maxMemoryBytes || diskBytes > maxDiskBytes) && eldest.hasNext()) {
+            final Entry evicted = eldest.next();
+            eldest.remove();
+            discard(evicted, null);
+        }
+    }
+
+    private synchronized void remove(String key) {
+        final Entry old = entries.remove(key);
+        if (old != null) {
+            discard(old, null);
+        }
+    }
+
+    /**
+     * Removes the entry unless it has been replaced
+     */
+    private synchronized void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            discard(entry, null);
+        }
+    }
+
+    /**
+     * @param keep the body file still used by the entry which has replaced this one
+     */
+    private void discard(Entry entry, Path keep) {
+        memoryBytes -= entry.memoryWeight();
+        diskBytes -= entry.diskWeight();
+        if (entry.file != null && !entry.file.equals(keep)) {
+            deleteQuietly(entry.file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // the file is in the cache directory and will be overwritten or deleted by the user
+        }
+    }
+
+    /**
+     * Computes the expiration time as described in RFC 7234 section 4.2
+     */
+    private static long freshUntil(Headers headers, Directives directives, long now) {
+        final long date = parseDate(headers.first(DATE), now);
+        final long lifetime;
+        if (directives.maxAge >= 0) {
+            lifetime = directives.maxAge * 1000;
+        } else if (headers.first(EXPIRES) != null) {
+            // an invalid date means the response is already expired
+            lifetime = parseDate(headers.first(EXPIRES), Long.MIN_VALUE / 2) - date;
+        } else if (headers.first(LAST_MODIFIED) != null) {
+            // heuristic freshness, a tenth of the time since the last modification
+            lifetime = (date - parseDate(headers.first(LAST_MODIFIED), date)) / 10;
+        } else {
+            lifetime = 0;
+        }
+        return now + lifetime - parseSeconds(headers.first(AGE)) * 1000;
+    }
+
+    private static long parseDate(String date, long defaultValue) {
+        if (date == null) {
+            return defaultValue;
+        }
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses delta-seconds, a value too large to be represented is taken as 2^31 as RFC 9111 section 1.2.2 says
+     */
+    private static long parseSeconds(String seconds) {
+        if (seconds == null || seconds.trim().isEmpty()) {
+            return 0;
+        }
+        final String digits = seconds.trim();
+        long value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            final char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = Math.min(value * 10 + (c - '0'), MAX_DELTA_SECONDS);
+        }
+        return value;
+    }
+
+    private static List<String> varyNames(Headers headers) {
+        final List<String> names = new ArrayList<>();
+        for (String value : headers.get(VARY)) {
+            for (String name : value.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Result of a cache lookup: either the cached response or the request to send
+     */
+    static final class Lookup {
+        final PreparedRequest request;
+        final Response cached;
+        // the request without the conditions added for revalidation
+        private final PreparedRequest unconditional;
+        private final String key;
+        private final Entry entry;
+        private final boolean cacheable;
+
+        private Lookup(PreparedRequest request, Response cached, String key, Entry entry, boolean cacheable) {
+            this(request, request, cached, key, entry, cacheable);
+        }
+
+        private Lookup(PreparedRequest request,
+                       PreparedRequest unconditional,
+                       Response cached,
+                       String key,
+                       Entry entry,
+                       boolean cacheable) {
+            this.request = request;
+            this.unconditional = unconditional;
+            this.cached = cached;
+            this.key = key;
+            this.entry = entry;
+            this.cacheable = cacheable;
+        }
+    }
+
+    private static final class Entry {
+        private final int status;
+        private final String reason;
+        private final Headers headers;
+        // values of the request headers listed in Vary
+        private final Map<String, String> vary;
+        private final byte[] body;
+        private final Path file;
+        private final long bodyLength;
+        private final long freshUntil;
+        private final String etag;
+        private final String lastModified;
+
+        private Entry(int status,
+                      String reason,
+                      Headers headers,
+                      Map<String, String> vary,
+                      byte[] body,
+                      Path file,
+                      long bodyLength,
+                      long freshUntil,
+                      String etag,
+                      String lastModified) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.vary = vary;
+            this.body = body;
+            this.file = file;
+            this.bodyLength = bodyLength;
+            this.freshUntil = freshUntil;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(Headers requestHeaders) {
+            return vary.entrySet()
+                       .stream()
+                       .allMatch(it -> it.getValue().equals(String.join(",", requestHeaders.get(it.getKey()))));
+        }
+
+        /**
+         * @return the entry with headers updated from the 304 response
+         */
+        Entry refresh(Headers notModifiedHeaders, long now) {
+            final Headers.Builder builder = headers.toBuilder();
+            notModifiedHeaders.asMap().forEach((name, values) -> {
+                if (!NOT_UPDATED_HEADERS.contains(name)) {
+                    builder.remove(name);
+                    values.forEach(value -> builder.add(name, value));
+                }
+            });
+            final Headers merged = builder.build();
+            final Directives directives = Directives.parse(merged.get(CACHE_CONTROL));
+            final long freshUntil = directives.noCache ? 0 : ResponseCache.freshUntil(merged, directives, now);
+            return new Entry(status, reason, merged, vary, body, file, bodyLength, freshUntil,
+                    merged.first(ETAG), merged.first(LAST_MODIFIED));
+        }
+
+        /**
+         * @return the cached response with its own copy of the body, or null if the spilled body can't be read
+         * anymore
+         */
+        Response toResponse() {
+            if (file == null) {
+                return new Response(status, reason, body.clone(), headers);
+            }
+            try {
+                return new Response(status, reason, Files.readAllBytes(file), headers);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        long memoryWeight() {
+            long weight = ENTRY_OVERHEAD + (body == null ? 0 : body.length);
+            for (int i = 0; i < headers.size(); i++) {
+                weight += 2 * (headers.name(i).length() + headers.value(i).length());
+            }
+            return weight;
+        }
+
+        long diskWeight() {
+            return file == null ? 0 : bodyLength;
+        }
+    }
+
+    /**
+     * The Cache-Control directives the cache acts upon
+     */
+    private static final class Directives {
+        private boolean noStore;
+        private boolean noCache;
+        private long maxAge = -1;
+
+        static Directives parse(List<String> values) {
+            final Directives directives = new Directives();
+            for (String value : values) {
+                for (String directive : value.split(",")) {
+                    final String[] parts = directive.trim().split("=", 2);
+                    final String name = parts[0].trim().toLowerCase(Locale.ROOT);
+                    if ("no-store".equals(name)) {
+                        directives.noStore = true;
+                    } else if ("no-cache".equals(name)) {
+                        directives.noCache = true;
+                    } else if ("max-age".equals(name) && parts.length == 2) {
+                        directives.maxAge = parseSeconds(parts[1].replace("\"", ""));
+                    }
+                }
+            }
+            return directives;
+        }
+    }
+
+    /**
+     * Configures ResponseCache instances
+     */
+    public static class Builder {
+        private long maxMemoryBytes = 16 * 1024 * 1024;
+        private Path directory;
+        private long spillThreshold = 64 * 1024;
+        private long maxDiskBytes = 256 * 1024 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxMemoryBytes the approximate max heap size of cached responses in bytes, 16M by default
+         * @return this builder
+         */
+        public Builder maxMemoryBytes(long maxMemoryBytes) {
+            this.maxMemoryBytes = maxMemoryBytes;
+            return this;
+        }
+
+        /**
+         * @param directory the directory to spill large bodies to, by default all bodies are kept in memory
+         * @return this builder
+         */
+        public Builder directory(Path directory) {
+            this.directory = Objects.requireNonNull(directory);
+            return this;
+        }
+
+        /**
+         * @param spillThreshold the min body size in bytes to be kept on disk when a directory is set, 64K by default
+         * @return this builder
+         */
+        public Builder spillThreshold(long spillThreshold) {
+            this.spillThreshold = spillThreshold;
+            return this;
+        }
+
+        /**
+         * @param maxDiskBytes the max size of spilled bodies in bytes, 256M by default
+         * @return this builder
+         */
+        public Builder maxDiskBytes(long maxDiskBytes) {
+            this.maxDiskBytes = maxDiskBytes;
+            return this;
+        }
+
+        public ResponseCache build() {
+            if (directory != null) {
+                try {
+                    Files.createDirectories(directory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return new ResponseCache(this);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Headers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Incremental HTTP/1.1 response parser. Bytes may be fed in arbitrary portions as they arrive from the network.
+ */
+class ResponseParser {
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    private enum State {STATUS_LINE, HEADERS, BODY, DONE}
+
+    private enum Framing {NONE, FIXED, CHUNKED, UNTIL_CLOSE}
+
+    private enum ChunkState {SIZE, DATA, DATA_END, TRAILERS}
+
+    private final String method;
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private int headSize;
+
+    private State state = State.STATUS_LINE;
+    private String version;
+    private int status;
+    private String reason;
+    private Headers.Builder fields;
+    private Headers headers;
+
+    private Framing framing;
+    private ChunkState chunkState = ChunkState.SIZE;
+    private long remaining;
+
+    /**
+     * @param method the method of the request, responses to HEAD never have a body
+     */
+    ResponseParser(String method) {
+        this.method = method;
+    }
+
+    /**
+     * Consumes the status line and headers from the buffer. Interim 1xx responses are skipped.
+     *
+     * @return true if the head is complete, false if more bytes are needed
+     */
+    boolean parseHead(ByteBuffer src) throws IOException {
+        while (state == State.STATUS_LINE || state == State.HEADERS) {
+            final String l = readLine(src);
+            if (l == null) {
+                return false;
+            }
+            if (state == State.STATUS_LINE) {
+                if (!l.isEmpty()) {
+                    parseStatusLine(l);
+                    fields = Headers.builder();
+                    state = State.HEADERS;
+                }
+            } else if (l.isEmpty()) {
+                headers = fields.build();
+                if (status >= 100 && status < 200 && status != 101) {
+                    state = State.STATUS_LINE;
+                } else {
+                    startBody();
+                }
+            } else {
+                addHeader(l);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handles the end of stream before the head is complete.
+     * A response without the empty line after headers is accepted, its body is empty.
+     */
+    void finishHead() throws IOException {
+        if (state != State.HEADERS) {
+            throw new EOFException("Connection closed by server before response");
+        }
+        if (lineLength > 0) {
+            addHeader(new String(line, 0, lineLength, StandardCharsets.ISO_8859_1));
+            lineLength = 0;
+        }
+        headers = fields.build();
+        framing = Framing.UNTIL_CLOSE;
+        state = State.DONE;
+    }
+
+    /**
+     * @return true if at least one byte of a response was consumed
+     */
+    boolean isStarted() {
+        return headSize > 0;
+    }
+
+    boolean isDone() {
+        return state == State.DONE;
+    }
+
+    String version() {
+        return version;
+    }
+
+    int status() {
+        return status;
+    }
+
+    String reason() {
+        return reason;
+    }
+
+    Headers headers() {
+        return headers;
+    }
+
+    /**
+     * @return the body length declared by the server or -1 if it is unknown
+     */
+    long contentLength() {
+        if (framing == Framing.NONE) {
+            return 0;
+        }
+        return framing == Framing.FIXED ? remaining : -1;
+    }
+
+    /**
+     * @return true if the connection can be used for the next request once the body is read
+     */
+    boolean isKeepAlive() {
+        if (framing == Framing.UNTIL_CLOSE) {
+            return false;
+        }
+        final List<String> connection = headers.get(Headers.CONNECTION);
+        if ("HTTP/1.0".equals(version)) {
+            return hasToken(connection, "keep-alive");
+        }
+        return !hasToken(connection, "close");
+    }
+
+    /**
+     * Moves decoded body bytes from the network buffer to the destination buffer
+     *
+     * @return the number of body bytes written to the destination
+     */
+    int decodeBody(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int written = 0;
+        while (state == State.BODY && dst.hasRemaining()) {
+            switch (framing) {
+                case FIXED:
+                    written += transfer(src, dst, remaining);
+                    if (remaining == 0) {
+                        state = State.DONE;
+                    }
+                    if (!src.hasRemaining()) {
+                        return written;
+                    }
+                    break;
+                case UNTIL_CLOSE:
+                    written += transfer(src, dst, Long.MAX_VALUE);
+                    return written;
+                case CHUNKED:
+                    if (chunkState == ChunkState.DATA) {
+                        written += transfer(src, dst, remaining);
+                        if (remaining == 0) {
+                            chunkState = ChunkState.DATA_END;
+                        }
+                        if (!src.hasRemaining()) {
+                            return written;
+                        }
+                    } else if (!parseChunkLine(src)) {
+                        return written;
+                    }
+                    break;
+                default:
+                    state = State.DONE;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Handles the end of stream while reading the body
+     */
+    void finishBody() throws IOException {
+        if (state == State.BODY && framing == Framing.UNTIL_CLOSE) {
+            state = State.DONE;
+        } else if (state != State.DONE) {
+            throw new EOFException("Connection closed by server before the end of response body");
+        }
+    }
+
+    private void parseStatusLine(String statusLine) throws IOException {
+        final int firstSpace = statusLine.indexOf(' ');
+        if (firstSpace < 0 || !statusLine.startsWith("HTTP/")) {
+            throw new IOException("Status line is invalid. Status line: " + statusLine);
+        }
+        final int secondSpace = statusLine.indexOf(' ', firstSpace + 1);
+        version = statusLine.substring(0, firstSpace);
+        final String code = secondSpace < 0
+                ? statusLine.substring(firstSpace + 1)
+                : statusLine.substring(firstSpace + 1, secondSpace);
+        reason = secondSpace < 0 ? "" : statusLine.substring(secondSpace + 1);
+        try {
+            status = Integer.parseInt(code.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Status line is invalid. Status line: " + statusLine);
+        }
+    }
+
+    private void addHeader(String header) {
+        final int colon = header.indexOf(':');
+        if (colon <= 0) {
+            return;
+        }
+        final String name = header.substring(0, colon).trim();
+        final String value = header.substring(colon + 1).trim();
+        fields.add(name, value);
+    }
+
+    private void startBody() throws IOException {
+        state = State.BODY;
+        if ("HEAD".equals(method) || status == 204 || status == 304) {
+            framing = Framing.NONE;
+            state = State.DONE;
+        } else if (hasToken(headers.get(Headers.TRANSFER_ENCODING), "chunked")) {
+            framing = Framing.CHUNKED;
+        } else if (headers.contains(Headers.CONTENT_LENGTH)) {
+            framing = Framing.FIXED;
+            try {
+                remaining = Long.parseLong(headers.first(Headers.CONTENT_LENGTH).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + headers.get(Headers.CONTENT_LENGTH));
+            }
+            if (remaining == 0) {
+                state = State.DONE;
+            }
+        } else {
+            framing = Framing.UNTIL_CLOSE;
+        }
+    }
+
+    private boolean parseChunkLine(ByteBuffer src) throws IOException {
+        final String l = readLine(src);
+        if (l == null) {
+            return false;
+        }
+        switch (chunkState) {
+            case SIZE:
+                final int extension = l.indexOf(';');
+                try {
+                    remaining = Long.parseLong((extension < 0 ? l : l.substring(0, extension)).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size: " + l);
+                }
+                chunkState = remaining == 0 ? ChunkState.TRAILERS : ChunkState.DATA;
+                break;
+            case DATA_END:
+                chunkState = ChunkState.SIZE;
+                break;
+            case TRAILERS:
+                if (l.isEmpty()) {
+                    state = State.DONE;
+                }
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * @return the next line without CRLF or LF terminator, or null if the buffer has no complete line
+     */
+    private String readLine(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            final byte b = src.get();
+            if (++headSize > MAX_HEAD_SIZE && state != State.BODY) {
+                throw new IOException("Response head exceeds " + MAX_HEAD_SIZE + " bytes");
+            }
+            if (b == '\n') {
+                int length = lineLength;
+                if (length > 0 && line[length - 1] == '\r') {
+                    length--;
+                }
+                lineLength = 0;
+                return new String(line, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+        return null;
+    }
+
+    private int transfer(ByteBuffer src, ByteBuffer dst, long max) {
+        final int n = (int) Math.min(max, Math.min(src.remaining(), dst.remaining()));
+        if (n == 0) {
+            return 0;
+        }
+        final ByteBuffer slice = src.duplicate();
+        slice.limit(slice.position() + n);
+        dst.put(slice);
+        src.position(src.position() + n);
+        if (max != Long.MAX_VALUE) {
+            remaining -= n;
+        }
+        return n;
+    }
+
+    private static boolean hasToken(List<String> values, String token) {
+        for (String value : values) {
+            for (String it : value.split(",")) {
+                if (it.trim().equalsIgnoreCase(token)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
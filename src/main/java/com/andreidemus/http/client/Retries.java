@@ -0,0 +1,224 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Response;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Applies a {@link RetryPolicy} to the requests of a client, keeps the retry budget and the hedge delays per host
+ */
+final class Retries {
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE"));
+
+    private final RetryPolicy policy;
+    private final Executor executor;
+    private final ConcurrentMap<String, HedgeDelay> hedgeDelays = new ConcurrentHashMap<>();
+    private double budget;
+
+    Retries(RetryPolicy policy, Executor executor) {
+        this.policy = policy;
+        this.executor = executor;
+        this.budget = policy.budgetReserve;
+    }
+
+    /**
+     * Sends the request with the given attempt function until it succeeds, attempts are exhausted or the budget
+     * runs out
+     */
+    Response send(PreparedRequest request, boolean stream, Attempt attempt) {
+        deposit();
+        if (!IDEMPOTENT_METHODS.contains(request.method) || (request.body != null && !request.body.isRepeatable())) {
+            return attempt.send(request);
+        }
+        final boolean hedged = !stream && policy.hedgePercentile > 0;
+        PreparedRequest current = request;
+        for (int n = 1; ; n++) {
+            final Response response;
+            try {
+                response = hedged ? hedged(current, attempt) : timed(current, attempt);
+            } catch (HttpClientException e) {
+                // a rejected request is not retried, that would defeat the limiter
+                if (e instanceof LimitExceededException || n >= policy.maxAttempts || !withdraw() || !backoff(n)) {
+                    throw e;
+                }
+                current = current.nextAttempt();
+                continue;
+            }
+            if (!policy.retryStatuses.contains(response.status())
+                    || n >= policy.maxAttempts
+                    || !withdraw()) {
+                return response;
+            }
+            response.close();
+            if (!backoff(n)) {
+                // the response is closed already, the interrupt flag is left set for the caller
+                throw new HttpClientException("Interrupted while waiting to retry", new InterruptedException());
+            }
+            current = current.nextAttempt();
+        }
+    }
+
+    private Response hedged(PreparedRequest request, Attempt attempt) {
+        final HedgeDelay hedgeDelay = hedgeDelays.computeIfAbsent(request.route(), it -> new HedgeDelay());
+        final long delay = hedgeDelay.nanos;
+        if (delay < 0) {
+            // not enough samples yet
+            return timed(request, attempt);
+        }
+        final CompletableFuture<Response> first = CompletableFuture.supplyAsync(() -> timed(request, attempt), executor);
+        try {
+            return first.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // hedged below
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpClientException("Interrupted while waiting for the response", e);
+        }
+        if (!withdraw()) {
+            return join(first);
+        }
+        final PreparedRequest hedge = request.nextAttempt();
+        final CompletableFuture<Response> second = CompletableFuture.supplyAsync(() -> timed(hedge, attempt), executor);
+        return join(firstSuccessful(first, second));
+    }
+
+    private Response timed(PreparedRequest request, Attempt attempt) {
+        final long startedAt = System.nanoTime();
+        final Response response = attempt.send(request);
+        if (policy.hedgePercentile > 0 && !response.isStreamed()) {
+            hedgeDelays.computeIfAbsent(request.route(), it -> new HedgeDelay())
+                       .record(System.nanoTime() - startedAt, policy.hedgePercentile, policy.minHedgeDelayNanos);
+        }
+        return response;
+    }
+
+    /**
+     * Sleeps for a random time up to the exponentially growing bound
+     *
+     * @return false if the thread has been interrupted
+     */
+    private boolean backoff(int attempt) {
+        final long bound = Math.min(policy.maxBackoffNanos, policy.initialBackoffNanos << Math.min(attempt - 1, 30));
+        if (bound <= 0) {
+            return true;
+        }
+        final long until = System.nanoTime() + ThreadLocalRandom.current().nextLong(bound);
+        for (long delay = until - System.nanoTime(); delay > 0; delay = until - System.nanoTime()) {
+            LockSupport.parkNanos(delay);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void deposit() {
+        budget = Math.min(policy.budgetReserve, budget + policy.budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        return true;
+    }
+
+    /**
+     * @return the first response which the policy doesn't retry, otherwise the outcome of the attempt finished last,
+     * a response being preferred to an error
+     */
+    private CompletableFuture<Response> firstSuccessful(CompletableFuture<Response> first,
+                                                        CompletableFuture<Response> second) {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicReference<Response> retried = new AtomicReference<>();
+        final BiConsumer<Response, Throwable> handler = (response, error) -> {
+            if (error == null && !policy.retryStatuses.contains(response.status())) {
+                // the slower response is buffered, dropping it doesn't hold a connection
+                result.complete(response);
+                return;
+            }
+            if (error == null) {
+                // the other attempt may still succeed
+                retried.set(response);
+            }
+            if (failures.incrementAndGet() == 2) {
+                if (retried.get() != null) {
+                    result.complete(retried.get());
+                } else {
+                    result.completeExceptionally(error);
+                }
+            }
+        };
+        first.whenComplete(handler);
+        second.whenComplete(handler);
+        return result;
+    }
+
+    private static Response join(CompletableFuture<Response> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof RuntimeException) {
+            return (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return new HttpClientException(error);
+    }
+
+    interface Attempt {
+        Response send(PreparedRequest request);
+    }
+
+    /**
+     * The latency percentile to a host, recalculated every few responses. The histogram is restarted now and then,
+     * so the delay follows changes of the host's latency.
+     */
+    private static final class HedgeDelay {
+        private static final int MIN_SAMPLES = 20;
+        private static final int UPDATE_INTERVAL = 16;
+        private static final int WINDOW = 10_000;
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private volatile long nanos = -1;
+
+        void record(long latency, double percentile, long minDelay) {
+            histogram.record(latency);
+            final long count = histogram.count();
+            if (count >= MIN_SAMPLES && count % UPDATE_INTERVAL == 0) {
+                nanos = Math.max(minDelay, histogram.percentileNanos(percentile));
+                if (count >= WINDOW) {
+                    histogram.reset();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.andreidemus.http.client;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Repeats idempotent requests (GET, HEAD, OPTIONS, PUT and DELETE) which have failed with an I/O error or one of
+ * the retried statuses. Attempts are separated by exponential backoff with full jitter, so clients failed together
+ * don't come back together.
+ * <p>
+ * Retries are limited by a budget: every request adds {@code budgetRatio} of a token up to {@code budgetReserve}
+ * tokens and every retry or hedge takes a whole token. A struggling upstream gets at most that share of extra load
+ * instead of the load multiplied by the number of attempts.
+ * <p>
+ * Hedging is disabled by default. When enabled, a request which hasn't been answered within the given percentile
+ * of recent latencies to its host is sent once more and the first response wins. Requests with a body which
+ * can't be sent twice are never repeated, streamed responses are retried but not hedged.
+ */
+public class RetryPolicy {
+    final int maxAttempts;
+    final long initialBackoffNanos;
+    final long maxBackoffNanos;
+    final Set<Integer> retryStatuses;
+    final double budgetRatio;
+    final int budgetReserve;
+    final double hedgePercentile;
+    final long minHedgeDelayNanos;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffNanos = builder.initialBackoff.toNanos();
+        this.maxBackoffNanos = builder.maxBackoff.toNanos();
+        this.retryStatuses = builder.retryStatuses;
+        this.budgetRatio = builder.budgetRatio;
+        this.budgetReserve = builder.budgetReserve;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.minHedgeDelayNanos = builder.minHedgeDelay.toNanos();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Configures RetryPolicy instances
+     */
+    public static class Builder {
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(50);
+        private Duration maxBackoff = Duration.ofSeconds(1);
+        private Set<Integer> retryStatuses = new HashSet<>(Arrays.asList(502, 503, 504));
+        private double budgetRatio = 0.1;
+        private int budgetReserve = 10;
+        private double hedgePercentile = -1;
+        private Duration minHedgeDelay = Duration.ofMillis(5);
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxAttempts the max number of times a request is sent including the first one, 3 by default
+         * @return this builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be positive");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initialBackoff the upper bound of the random delay before the first retry, doubled for every
+         *                       next one
+         * @return this builder
+         */
+        public Builder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = Objects.requireNonNull(initialBackoff);
+            return this;
+        }
+
+        /**
+         * @param maxBackoff the max delay before a retry
+         * @return this builder
+         */
+        public Builder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = Objects.requireNonNull(maxBackoff);
+            return this;
+        }
+
+        /**
+         * @param statuses the response statuses to retry on, 502, 503 and 504 by default
+         * @return this builder
+         */
+        public Builder retryStatuses(Integer... statuses) {
+            this.retryStatuses = new HashSet<>(Arrays.asList(statuses));
+            return this;
+        }
+
+        /**
+         * @param budgetRatio the share of requests which may be retried or hedged in the long run, 0.1 by default
+         * @return this builder
+         */
+        public Builder budgetRatio(double budgetRatio) {
+            if (budgetRatio < 0) {
+                throw new IllegalArgumentException("budgetRatio must not be negative");
+            }
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        /**
+         * @param budgetReserve the number of retries available at once, e.g. right after the client is created
+         * @return this builder
+         */
+        public Builder budgetReserve(int budgetReserve) {
+            if (budgetReserve < 0) {
+                throw new IllegalArgumentException("budgetReserve must not be negative");
+            }
+            this.budgetReserve = budgetReserve;
+            return this;
+        }
+
+        /**
+         * @param percentile the percentile of recent latencies to the host after which a request is hedged,
+         *                   e.g. 95
+         * @return this builder
+         */
+        public Builder hedgeAfterPercentile(double percentile) {
+            if (percentile <= 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be in (0, 100]");
+            }
+            this.hedgePercentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param minHedgeDelay the min time to wait before a request is hedged, protects fast hosts from
+         *                      doubled load caused by scheduling noise
+         * @return this builder
+         */
+        public Builder minHedgeDelay(Duration minHedgeDelay) {
+            this.minHedgeDelay = Objects.requireNonNull(minHedgeDelay);
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
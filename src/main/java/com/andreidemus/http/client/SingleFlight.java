@@ -0,0 +1,66 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Response;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares a single exchange among identical GET and HEAD requests sent at the same time. The first request is
+ * sent, the others wait for its response and get their own copies of it or the same exception.
+ */
+final class SingleFlight {
+    private final ConcurrentMap<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @return the key identifying requests with the same response or null if the request must not be shared
+     */
+    static String key(PreparedRequest request) {
+        if ((!"GET".equals(request.method) && !"HEAD".equals(request.method)) || request.body != null) {
+            return null;
+        }
+        // header names are case-insensitive and their order doesn't change the meaning, the map view is sorted
+        final StringBuilder sb = new StringBuilder(request.method).append(' ').append(request.url);
+        request.headers.asMap().forEach((name, values) -> {
+            final String lowerCase = name.toLowerCase(Locale.ROOT);
+            values.forEach(value -> sb.append('\n').append(lowerCase).append(':').append(value));
+        });
+        return sb.toString();
+    }
+
+    Response execute(String key, Supplier<Response> exchange) {
+        final CompletableFuture<Response> call = new CompletableFuture<>();
+        final CompletableFuture<Response> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            try {
+                return copy(existing.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new HttpClientException(e.getCause());
+            }
+        }
+        try {
+            final Response response = exchange.get();
+            // the waiters copy a snapshot, so a caller changing the body of its response doesn't affect the others
+            call.complete(copy(response));
+            return response;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private static Response copy(Response response) {
+        final byte[] body = response.body();
+        return new Response(response.status(), response.reason(), body == null ? null : body.clone(),
+                response.headerFields());
+    }
+}
@@ -0,0 +1,39 @@
+package com.andreidemus.http.client;
+
+/**
+ * Socket options and timeouts applied to every connection opened by the client
+ */
+class SocketSettings {
+    final int connectTimeoutMillis;
+    final int readTimeoutMillis;
+    final int bufferSize;
+    final boolean tcpNoDelay;
+    final int sendBufferSize;
+    final int receiveBufferSize;
+
+    /**
+     * @param connectTimeoutMillis the connect timeout, 0 means no timeout
+     * @param readTimeoutMillis    the max time to wait for the next portion of data, 0 means no timeout
+     * @param bufferSize           the size of the connection's read and write buffers
+     * @param tcpNoDelay           the TCP_NODELAY socket option
+     * @param sendBufferSize       the SO_SNDBUF socket option, 0 leaves the system default
+     * @param receiveBufferSize    the SO_RCVBUF socket option, 0 leaves the system default
+     */
+    SocketSettings(int connectTimeoutMillis,
+                   int readTimeoutMillis,
+                   int bufferSize,
+                   boolean tcpNoDelay,
+                   int sendBufferSize,
+                   int receiveBufferSize) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.bufferSize = bufferSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    static SocketSettings defaults() {
+        return new SocketSettings(0, 0, 16 * 1024, true, 0, 0);
+    }
+}
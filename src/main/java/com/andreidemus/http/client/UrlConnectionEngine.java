@@ -0,0 +1,206 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.BodySource;
+import com.andreidemus.http.common.Headers;
+import com.andreidemus.http.common.Response;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+
+/**
+ * Performs requests with java.net.HttpURLConnection
+ */
+class UrlConnectionEngine implements HttpEngine {
+    private final SocketSettings settings;
+    private final BufferPool bufferPool;
+
+    UrlConnectionEngine(SocketSettings settings, BufferPool bufferPool) {
+        this.settings = settings;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public Response execute(String method,
+                            URL url,
+                            Headers headers,
+                            BodySource body,
+                            boolean stream,
+                            RequestTimings timings) throws IOException {
+        final HttpURLConnection conn = constructRequest(method, url, headers, body, timings);
+        if (stream) {
+            return streamResponse(conn, timings);
+        }
+        final Response response = parseResponse(conn, timings);
+        conn.disconnect();
+        return response;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private HttpURLConnection constructRequest(String method,
+                                               URL url,
+                                               Headers headers,
+                                               BodySource body,
+                                               RequestTimings timings) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(settings.connectTimeoutMillis);
+        conn.setReadTimeout(settings.readTimeoutMillis);
+
+        for (int i = 0; i < headers.size(); i++) {
+            final String name = headers.name(i);
+            // framing of streamed bodies is controlled by HttpURLConnection itself, names are interned by Headers
+            if (body == null || body.bytes() != null
+                    || !(Headers.CONTENT_LENGTH == name || Headers.TRANSFER_ENCODING == name)) {
+                conn.addRequestProperty(name, headers.value(i));
+            }
+        }
+        if (body != null) {
+            conn.setDoOutput(true);
+            if (body.bytes() == null && body.length() >= 0) {
+                conn.setFixedLengthStreamingMode(body.length());
+            } else if (body.bytes() == null) {
+                conn.setChunkedStreamingMode(0);
+            }
+        }
+        // HttpURLConnection resolves the host and connects in one go, both are reported as connect
+        final long connectStartedAt = System.nanoTime();
+        conn.connect();
+        final long writeStartedAt = System.nanoTime();
+        if (timings != null) {
+            timings.connection(url.getHost() + ":" + (url.getPort() < 0 ? url.getDefaultPort() : url.getPort()), false);
+            timings.connected(0, writeStartedAt - connectStartedAt);
+        }
+        if (body != null) {
+            writeRequestBody(conn, body);
+        }
+        if (timings != null) {
+            timings.written(writeStartedAt);
+        }
+
+        return conn;
+    }
+
+    private void writeRequestBody(HttpURLConnection conn, BodySource body) throws IOException {
+        if (body.bytes() != null) {
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body.bytes());
+                out.flush();
+            }
+            return;
+        }
+        if (body.writer() != null) {
+            // sent in chunks, the streaming mode is set for bodies of unknown length; not closed if the writer
+            // fails, so a partial body is never terminated as if it was complete
+            final OutputStream out = conn.getOutputStream();
+            body.writer().writeTo(out);
+            out.close();
+            return;
+        }
+
+        try (ReadableByteChannel in = body.open();
+             WritableByteChannel out = Channels.newChannel(conn.getOutputStream())) {
+            final ByteBuffer buffer = ByteBuffer.allocate(settings.bufferSize);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    private Response parseResponse(HttpURLConnection conn, RequestTimings timings) throws IOException {
+        final int status = readHead(conn, timings);
+        final String reason = conn.getResponseMessage();
+        final byte[] body = readBody(conn);
+        if (timings != null) {
+            timings.bodyReceived();
+        }
+
+        //conn.getHeaderFields() returns incorrect headers ("Header : value" lines are not parsed correctly),
+        //use Engine.NIO for plain http
+        return new Response(status, reason, body, conn.getHeaderFields());
+    }
+
+    private Response streamResponse(HttpURLConnection conn, RequestTimings timings) throws IOException {
+        final int status = readHead(conn, timings);
+        final String reason = conn.getResponseMessage();
+        final InputStream in = getInputStream(conn);
+        if (in == null) {
+            conn.disconnect();
+            if (timings != null) {
+                timings.bodyReceived();
+                timings.complete();
+            }
+            return new Response(status, reason, new byte[]{}, conn.getHeaderFields());
+        }
+        final ReadableByteChannel body = Channels.newChannel(new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                conn.disconnect();
+                if (timings != null) {
+                    timings.bodyReceived();
+                    timings.complete();
+                }
+            }
+        });
+        return new Response(status, reason, body, conn.getHeaderFields());
+    }
+
+    /**
+     * @return the status, HttpURLConnection reads the whole head at once, so the first byte is the end of the head
+     */
+    private int readHead(HttpURLConnection conn, RequestTimings timings) throws IOException {
+        final int status = conn.getResponseCode();
+        if (timings != null) {
+            timings.firstByte();
+            timings.headReceived(status);
+        }
+        return status;
+    }
+
+    private byte[] readBody(HttpURLConnection conn) {
+        try (InputStream in = getInputStream(conn)) {
+            if (in == null) {
+                return new byte[]{};
+            }
+            final BodyBuffer body = new BodyBuffer(bufferPool);
+            try {
+                body.readFrom(in);
+                return body.toByteArray();
+            } finally {
+                body.release();
+            }
+        } catch (IOException e) {
+            throw new HttpClientException(e);
+        }
+    }
+
+    private InputStream getInputStream(HttpURLConnection conn) {
+        try {
+            if (conn.getResponseCode() < HTTP_BAD_REQUEST) {
+                return conn.getInputStream();
+            } else {
+                return conn.getErrorStream();
+            }
+        } catch (IOException e) {
+            throw new HttpClientException(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.andreidemus.http.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Converts objects to and from request and response bodies of some media types, e.g. JSON. A codec writes straight
+ * to the connection and reads straight from it, so the body is never copied into an intermediate buffer.
+ *
+ * @see BodyCodecs
+ */
+public interface BodyCodec {
+    /**
+     * @param mediaType the media type of the body in lower case and without parameters, e.g. "application/json"
+     * @return true if the codec reads and writes bodies of the media type
+     */
+    boolean supports(String mediaType);
+
+    /**
+     * @param value   the object to send
+     * @param out     the body of the request, it is closed by the caller
+     * @param charset the charset of the request
+     */
+    void write(Object value, OutputStream out, Charset charset) throws IOException;
+
+    /**
+     * @param in      the body of the response, it is closed by the caller
+     * @param type    the expected type of the body
+     * @param charset the charset from the Content-Type of the response
+     * @return the body converted to the type
+     */
+    <T> T read(InputStream in, Class<T> type, Charset charset) throws IOException;
+}
@@ -0,0 +1,91 @@
+package com.andreidemus.http.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Codecs to choose from by the Content-Type of a body, the first codec supporting the media type is used
+ */
+public final class BodyCodecs {
+    /**
+     * Writes any {@link CharSequence} and reads a {@link String}, for "text/*" bodies
+     */
+    public static final BodyCodec TEXT = new TextCodec();
+
+    private final List<BodyCodec> codecs;
+
+    private BodyCodecs(List<BodyCodec> codecs) {
+        this.codecs = codecs;
+    }
+
+    /**
+     * @param codecs the codecs in the order they are tried
+     */
+    public static BodyCodecs of(BodyCodec... codecs) {
+        for (BodyCodec codec : codecs) {
+            Objects.requireNonNull(codec);
+        }
+        return new BodyCodecs(Arrays.asList(codecs.clone()));
+    }
+
+    /**
+     * @param contentType the value of a Content-Type header, parameters are ignored
+     * @return the first codec supporting the media type
+     * @throws IllegalArgumentException if no codec supports it
+     */
+    public BodyCodec forContentType(String contentType) {
+        final String mediaType = mediaType(contentType);
+        for (BodyCodec codec : codecs) {
+            if (codec.supports(mediaType)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("No codec for content type " + contentType);
+    }
+
+    private static String mediaType(String contentType) {
+        final int params = contentType.indexOf(';');
+        return (params < 0 ? contentType : contentType.substring(0, params)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class TextCodec implements BodyCodec {
+        @Override
+        public boolean supports(String mediaType) {
+            return mediaType.startsWith("text/");
+        }
+
+        @Override
+        public void write(Object value, OutputStream out, Charset charset) throws IOException {
+            if (!(value instanceof CharSequence)) {
+                throw new IllegalArgumentException("Text body expected, got " + value.getClass().getName());
+            }
+            final Writer writer = new OutputStreamWriter(out, charset);
+            writer.append((CharSequence) value);
+            writer.flush();
+        }
+
+        @Override
+        public <T> T read(InputStream in, Class<T> type, Charset charset) throws IOException {
+            if (!type.isAssignableFrom(String.class)) {
+                throw new IllegalArgumentException("Text body can't be read as " + type.getName());
+            }
+            final Reader reader = new InputStreamReader(in, charset);
+            final StringBuilder text = new StringBuilder();
+            final char[] buffer = new char[4096];
+            for (int n = reader.read(buffer); n >= 0; n = reader.read(buffer)) {
+                text.append(buffer, 0, n);
+            }
+            return type.cast(text.toString());
+        }
+    }
+}
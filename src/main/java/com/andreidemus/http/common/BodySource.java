@@ -0,0 +1,156 @@
+package com.andreidemus.http.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Request body which is sent without being materialized in memory first: a file, a stream, a channel or a writer
+ * producing the content while the request is sent. Bodies of unknown length are sent with
+ * "Transfer-Encoding: chunked".
+ */
+public final class BodySource {
+    private final byte[] bytes;
+    private final Path path;
+    private final ReadableByteChannel channel;
+    private final Writer writer;
+    private final long length;
+
+    /**
+     * Produces the body by writing it to the outgoing stream, e.g. an object serialized by a {@link BodyCodec}
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private BodySource(byte[] bytes, Path path, ReadableByteChannel channel, Writer writer, long length) {
+        this.bytes = bytes;
+        this.path = path;
+        this.channel = channel;
+        this.writer = writer;
+        this.length = length;
+    }
+
+    public static BodySource of(byte[] bytes) {
+        return new BodySource(bytes, null, null, null, bytes.length);
+    }
+
+    /**
+     * The file is sent with FileChannel.transferTo, so its content doesn't pass through the JVM heap
+     */
+    public static BodySource of(Path path) {
+        try {
+            return new BodySource(null, path, null, null, Files.size(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The stream is read once, while the request is sent, and closed afterwards
+     */
+    public static BodySource of(InputStream in) {
+        return of(Channels.newChannel(in));
+    }
+
+    public static BodySource of(InputStream in, long length) {
+        return of(Channels.newChannel(in), length);
+    }
+
+    /**
+     * The channel is read once, while the request is sent, and closed afterwards
+     */
+    public static BodySource of(ReadableByteChannel channel) {
+        return of(channel, -1);
+    }
+
+    public static BodySource of(ReadableByteChannel channel, long length) {
+        return new BodySource(null, null, channel, null, length);
+    }
+
+    /**
+     * The writer is called every time the request is sent and writes straight to the connection, the body is sent
+     * in chunks
+     */
+    public static BodySource of(Writer writer) {
+        return new BodySource(null, null, null, writer, -1);
+    }
+
+    /**
+     * @return the body length in bytes or -1 if it is unknown
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return the content of an in-memory body or null
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the file of a file body or null
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return the writer of a written body or null
+     */
+    public Writer writer() {
+        return writer;
+    }
+
+    /**
+     * @return true if the body can be sent more than once, e.g. when the request has to be repeated
+     */
+    public boolean isRepeatable() {
+        return channel == null;
+    }
+
+    /**
+     * @return the channel to read the body from, a file is opened on every call
+     */
+    public ReadableByteChannel open() throws IOException {
+        if (bytes != null) {
+            return Channels.newChannel(new ByteArrayInputStream(bytes));
+        }
+        if (path != null) {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+        if (writer != null) {
+            // for a transport which can only pull the body, it is written into memory first
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.writeTo(out);
+            return Channels.newChannel(new ByteArrayInputStream(out.toByteArray()));
+        }
+        return channel;
+    }
+
+    @Override
+    public String toString() {
+        if (path != null) {
+            return "<file " + path + ">";
+        }
+        if (channel != null) {
+            return "<stream>";
+        }
+        if (writer != null) {
+            return "<writer>";
+        }
+        return "<" + bytes.length + " bytes>";
+    }
+}
@@ -0,0 +1,345 @@
+package com.andreidemus.http.common;
+
+import java.util.*;
+
+/**
+ * Immutable header fields of a request or a response, kept in a flat array of names and values in the order
+ * they were added. Names are case-insensitive.
+ * <p>
+ * Well-known names are interned: a name equal to one of the constants below, in any case, is stored as the
+ * constant itself, so looking it up is a reference comparison instead of case folding. Other names are compared
+ * with {@link String#equalsIgnoreCase(String)}.
+ */
+public final class Headers {
+    public static final String ACCEPT = "Accept";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String AGE = "Age";
+    public static final String AUTHORIZATION = "Authorization";
+    public static final String CACHE_CONTROL = "Cache-Control";
+    public static final String CONNECTION = "Connection";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String CONTENT_LENGTH = "Content-Length";
+    public static final String CONTENT_TYPE = "Content-Type";
+    public static final String DATE = "Date";
+    public static final String ETAG = "ETag";
+    public static final String EXPIRES = "Expires";
+    public static final String HOST = "Host";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String LOCATION = "Location";
+    public static final String RANGE = "Range";
+    public static final String SERVER = "Server";
+    public static final String SET_COOKIE = "Set-Cookie";
+    public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    public static final String USER_AGENT = "User-Agent";
+    public static final String VARY = "Vary";
+
+    // open addressing table of the well-known names by their case-insensitive hash
+    private static final String[] WELL_KNOWN = new String[64];
+    private static final Headers EMPTY = new Headers(new String[0], 0);
+
+    static {
+        for (String name : Arrays.asList(ACCEPT, ACCEPT_ENCODING, AGE, AUTHORIZATION, CACHE_CONTROL, CONNECTION,
+                CONTENT_ENCODING, CONTENT_LENGTH, CONTENT_TYPE, DATE, ETAG, EXPIRES, HOST, IF_MODIFIED_SINCE,
+                IF_NONE_MATCH, LAST_MODIFIED, LOCATION, RANGE, SERVER, SET_COOKIE, TRANSFER_ENCODING, USER_AGENT,
+                VARY)) {
+            int i = hash(name) & (WELL_KNOWN.length - 1);
+            while (WELL_KNOWN[i] != null) {
+                i = (i + 1) & (WELL_KNOWN.length - 1);
+            }
+            WELL_KNOWN[i] = name;
+        }
+    }
+
+    // the name of the field i is at 2 * i, its value at 2 * i + 1
+    private final String[] namesAndValues;
+    private final int size;
+    // created on first use
+    private volatile Map<String, List<String>> map;
+
+    private Headers(String[] namesAndValues, int size) {
+        this.namesAndValues = namesAndValues;
+        this.size = size;
+    }
+
+    public static Headers empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param headers the values by name, entries with a null name or a null list of values are skipped, empty
+     *                strings are kept as empty values
+     * @return the fields of the map in its iteration order
+     */
+    public static Headers of(Map<String, ? extends Collection<String>> headers) {
+        final Builder builder = new Builder();
+        headers.forEach((name, values) -> {
+            if (name != null && values != null) {
+                values.forEach(value -> builder.add(name, value));
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * @return the well-known constant equal to the name ignoring case, or the name itself
+     */
+    public static String canonicalName(String name) {
+        int i = hash(name) & (WELL_KNOWN.length - 1);
+        for (String known = WELL_KNOWN[i]; known != null; known = WELL_KNOWN[i]) {
+            if (known == name || known.equalsIgnoreCase(name)) {
+                return known;
+            }
+            i = (i + 1) & (WELL_KNOWN.length - 1);
+        }
+        return name;
+    }
+
+    /**
+     * @return the number of fields, a name with several values counts several times
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String name(int index) {
+        return namesAndValues[2 * checkIndex(index)];
+    }
+
+    public String value(int index) {
+        return namesAndValues[2 * checkIndex(index) + 1];
+    }
+
+    public boolean contains(String name) {
+        return indexOf(namesAndValues, size, canonicalName(name), 0) >= 0;
+    }
+
+    /**
+     * @return the first value of the header or null if there is no such header
+     */
+    public String first(String name) {
+        final int i = indexOf(namesAndValues, size, canonicalName(name), 0);
+        return i < 0 ? null : namesAndValues[2 * i + 1];
+    }
+
+    /**
+     * @return the values of the header in the order they were added, empty if there is no such header
+     */
+    public List<String> get(String name) {
+        final String canonical = canonicalName(name);
+        int i = indexOf(namesAndValues, size, canonical, 0);
+        if (i < 0) {
+            return Collections.emptyList();
+        }
+        final int next = indexOf(namesAndValues, size, canonical, i + 1);
+        if (next < 0) {
+            return Collections.singletonList(namesAndValues[2 * i + 1]);
+        }
+        final List<String> values = new ArrayList<>(2);
+        values.add(namesAndValues[2 * i + 1]);
+        for (i = next; i >= 0; i = indexOf(namesAndValues, size, canonical, i + 1)) {
+            values.add(namesAndValues[2 * i + 1]);
+        }
+        return values;
+    }
+
+    /**
+     * @return an unmodifiable case-insensitive map view of the fields, created on first use
+     */
+    public Map<String, List<String>> asMap() {
+        Map<String, List<String>> map = this.map;
+        if (map == null) {
+            final Map<String, List<String>> fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < size; i++) {
+                fields.computeIfAbsent(namesAndValues[2 * i], it -> new ArrayList<>(1)).add(namesAndValues[2 * i + 1]);
+            }
+            fields.replaceAll((name, values) -> Collections.unmodifiableList(values));
+            map = Collections.unmodifiableMap(fields);
+            this.map = map;
+        }
+        return map;
+    }
+
+    /**
+     * @return a builder initialized with these fields, the fields themselves are not changed
+     */
+    public Builder toBuilder() {
+        final Builder builder = new Builder(Math.max(size, 8));
+        System.arraycopy(namesAndValues, 0, builder.namesAndValues, 0, 2 * size);
+        builder.size = size;
+        return builder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Headers)) {
+            return false;
+        }
+        final Headers other = (Headers) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < 2 * size; i += 2) {
+            if (!namesAndValues[i].equalsIgnoreCase(other.namesAndValues[i])
+                    || !namesAndValues[i + 1].equals(other.namesAndValues[i + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < 2 * size; i += 2) {
+            result = 31 * (31 * result + hash(namesAndValues[i])) + namesAndValues[i + 1].hashCode();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Utils.prettyPrintMap(asMap());
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+
+    /**
+     * @param name the canonical name
+     * @return the index of the first field with the name at or after the start, -1 if there is none
+     */
+    private static int indexOf(String[] namesAndValues, int size, String name, int start) {
+        final boolean wellKnown = isWellKnown(name);
+        for (int i = start; i < size; i++) {
+            final String candidate = namesAndValues[2 * i];
+            // stored well-known names are the constants themselves
+            if (candidate == name || (!wellKnown && candidate.equalsIgnoreCase(name))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWellKnown(String canonical) {
+        int i = hash(canonical) & (WELL_KNOWN.length - 1);
+        for (String known = WELL_KNOWN[i]; known != null; known = WELL_KNOWN[i]) {
+            if (known == canonical) {
+                return true;
+            }
+            i = (i + 1) & (WELL_KNOWN.length - 1);
+        }
+        return false;
+    }
+
+    /**
+     * @return the hash of the name with ASCII letters in lower case
+     */
+    private static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            h = 31 * h + (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Collects header fields, may be reused after {@link #build()}
+     */
+    public static final class Builder {
+        private String[] namesAndValues;
+        private int size;
+
+        private Builder() {
+            this(8);
+        }
+
+        private Builder(int capacity) {
+            this.namesAndValues = new String[2 * capacity];
+        }
+
+        /**
+         * @param name  the header name, a well-known name is replaced with its constant
+         * @param value the header value
+         * @return this builder
+         */
+        public Builder add(String name, String value) {
+            Objects.requireNonNull(name);
+            Objects.requireNonNull(value);
+            if (2 * size == namesAndValues.length) {
+                namesAndValues = Arrays.copyOf(namesAndValues, 2 * namesAndValues.length);
+            }
+            namesAndValues[2 * size] = canonicalName(name);
+            namesAndValues[2 * size + 1] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * Replaces all values of the header with the value
+         *
+         * @return this builder
+         */
+        public Builder set(String name, String value) {
+            return remove(name).add(name, value);
+        }
+
+        /**
+         * Removes all values of the header
+         *
+         * @return this builder
+         */
+        public Builder remove(String name) {
+            final String canonical = canonicalName(name);
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (indexOf(namesAndValues, i + 1, canonical, i) < 0) {
+                    namesAndValues[2 * kept] = namesAndValues[2 * i];
+                    namesAndValues[2 * kept + 1] = namesAndValues[2 * i + 1];
+                    kept++;
+                }
+            }
+            Arrays.fill(namesAndValues, 2 * kept, 2 * size, null);
+            size = kept;
+            return this;
+        }
+
+        public boolean contains(String name) {
+            return indexOf(namesAndValues, size, canonicalName(name), 0) >= 0;
+        }
+
+        /**
+         * @return true if the header has the value among its values
+         */
+        public boolean contains(String name, String value) {
+            final String canonical = canonicalName(name);
+            for (int i = indexOf(namesAndValues, size, canonical, 0); i >= 0; i = indexOf(namesAndValues, size, canonical, i + 1)) {
+                if (namesAndValues[2 * i + 1].equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public Headers build() {
+            return size == 0 ? EMPTY : new Headers(Arrays.copyOf(namesAndValues, 2 * size), size);
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.andreidemus.http.common;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -19,8 +25,16 @@ public class Request {
     private final byte[] body;
     private final Map<String, Set<Object>> pathParams;
     private final Map<String, Set<Object>> formParams;
-    private final Map<String, Set<String>> headers;
+    private final Headers headers;
     private final Charset charset;
+    private final BodySource bodySource;
+    // encoded lazily and cached, the params never change after the request is created
+    private String pathParamsString;
+    private String formParamsString;
+    // the map view of the headers, created on first use
+    private volatile Map<String, Set<String>> headersMap;
+    // the serialized header lines, created on first use, the request may be written by several threads
+    private volatile byte[] headerBlock;
 
     private Request(String method,
                     String url,
@@ -28,8 +42,9 @@ public class Request {
                     byte[] body,
                     Map<String, Set<Object>> pathParams,
                     Map<String, Set<Object>> formParams,
-                    Map<String, Set<String>> headers,
-                    Charset charset) {
+                    Headers headers,
+                    Charset charset,
+                    BodySource bodySource) {
         this.method = method;
         this.url = url;
         this.path = path;
@@ -38,6 +53,7 @@ public class Request {
         this.formParams = formParams;
         this.headers = headers;
         this.charset = charset;
+        this.bodySource = bodySource;
     }
 
     public Request(String url) {
@@ -48,8 +64,9 @@ public class Request {
                 new byte[]{},
                 new LinkedHashMap<>(),
                 new LinkedHashMap<>(),
-                newHeaders(),
-                StandardCharsets.UTF_8
+                Headers.empty(),
+                StandardCharsets.UTF_8,
+                null
         );
     }
 
@@ -58,18 +75,23 @@ public class Request {
                    String path,
                    Map<String, Set<String>> headers,
                    byte[] body) {
+        this(method, url, path, Headers.of(headers), body);
+    }
+
+    public Request(String method,
+                   String url,
+                   String path,
+                   Headers headers,
+                   byte[] body) {
         this.method = method;
         this.url = url;
         this.path = path;
         this.body = body;
         this.pathParams = new LinkedHashMap<>();
         this.formParams = new LinkedHashMap<>();
-        this.headers = newHeaders();
-        headers.entrySet()
-               .stream()
-               .filter(it -> it.getValue() != null && !it.getValue().isEmpty())
-               .forEach(it -> this.headers.put(it.getKey(), it.getValue()));
+        this.headers = headers;
         this.charset = StandardCharsets.UTF_8; // TODO get from headers
+        this.bodySource = null;
     }
 
     public String url() {
@@ -81,11 +103,11 @@ public class Request {
     }
 
     public Request method(String method) {
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public Request path(String path) {
-        return new Request(method, url, this.path + PATH_DELIMITER + urlEncode(path), body, pathParams, formParams, headers, charset);
+        return new Request(method, url, this.path + PATH_DELIMITER + urlEncode(path), body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public String path() {
@@ -98,14 +120,12 @@ public class Request {
         }
         final Map<String, Set<Object>> formParams = new LinkedHashMap<>();
         formParams.putAll(this.formParams);
-        Set<Object> vals = formParams.get(name);
-        if (vals == null) {
-            vals = new LinkedHashSet<>();
-        }
+        // the set is shared with this request, so it is copied before the change
+        final Set<Object> vals = copyOf(formParams.get(name));
         vals.add(value);
         formParams.put(name, vals);
 
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public Request formParam(String name, Set<Object> values) {
@@ -116,7 +136,7 @@ public class Request {
         formParams.putAll(this.formParams);
         formParams.put(name, values);
 
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public Request formParams(Map<String, Set<Object>> formParams) {
@@ -124,7 +144,7 @@ public class Request {
                                .stream()
                                .filter(it -> it.getValue() != null && !it.getValue().isEmpty())
                                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public boolean hasFormParams() {
@@ -135,8 +155,14 @@ public class Request {
         return formParams;
     }
 
+    /**
+     * @return the url encoded form params, encoded once per request
+     */
     public String formParamsAsString() {
-        return prepareParams(formParams);
+        if (formParamsString == null) {
+            formParamsString = prepareParams(formParams);
+        }
+        return formParamsString;
     }
 
     public Request pathParam(String name, Object value) {
@@ -145,14 +171,11 @@ public class Request {
         }
         final Map<String, Set<Object>> pathParams = new LinkedHashMap<>();
         pathParams.putAll(this.pathParams);
-        Set<Object> vals = pathParams.get(name);
-        if (vals == null) {
-            vals = new LinkedHashSet<>();
-        }
+        final Set<Object> vals = copyOf(pathParams.get(name));
         vals.add(value);
         pathParams.put(name, vals);
 
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public Request pathParam(String name, Set<Object> values) {
@@ -163,7 +186,7 @@ public class Request {
         pathParams.putAll(this.pathParams);
         pathParams.put(name, values);
 
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public Request pathParams(Map<String, Set<Object>> pathParams) {
@@ -171,7 +194,7 @@ public class Request {
                                .stream()
                                .filter(it -> it.getValue() != null && !it.getValue().isEmpty())
                                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public boolean hasPathParams() {
@@ -182,69 +205,153 @@ public class Request {
         return pathParams;
     }
 
+    /**
+     * @return the url encoded query string without the leading "?", encoded once per request
+     */
     public String pathParamsAsString() {
-        return prepareParams(pathParams);
+        if (pathParamsString == null) {
+            pathParamsString = prepareParams(pathParams);
+        }
+        return pathParamsString;
     }
 
     public Request headers(Map<String, Set<String>> headers) {
-        final Map<String, Set<String>> newHeaders = newHeaders();
-        headers.entrySet()
-               .stream()
-               .filter(it -> it.getValue() != null && !it.getValue().isEmpty())
-               .forEach(it -> newHeaders.put(it.getKey(), it.getValue()));
+        return headers(Headers.of(headers));
+    }
 
-        return new Request(method, url, path, body, pathParams, formParams, newHeaders, charset);
+    public Request headers(Headers headers) {
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
     }
 
     public Request header(String name, String value) {
         if (value == null) {
             return this;
         }
-        final Map<String, Set<String>> headers = newHeaders();
-        headers.putAll(this.headers);
-        Set<String> vals = headers.get(name);
-        if (vals == null) {
-            vals = new LinkedHashSet<>();
+        final Headers.Builder headers = this.headers.toBuilder();
+        if (headers.contains(name, value)) {
+            return this;
         }
-        vals.add(value);
-        headers.putIfAbsent(name, vals);
-
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers.add(name, value).build(), charset, bodySource);
     }
 
+    /**
+     * @return an unmodifiable case-insensitive map view of the headers, created on first use
+     */
     public Map<String, Set<String>> headers() {
+        Map<String, Set<String>> map = headersMap;
+        if (map == null) {
+            final Map<String, Set<String>> fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < headers.size(); i++) {
+                fields.computeIfAbsent(headers.name(i), it -> new LinkedHashSet<>()).add(headers.value(i));
+            }
+            fields.replaceAll((name, values) -> Collections.unmodifiableSet(values));
+            map = Collections.unmodifiableMap(fields);
+            headersMap = map;
+        }
+        return map;
+    }
+
+    public Headers headerFields() {
         return headers;
     }
 
     public boolean hasBody() {
-        return body.length > 0;
+        return body.length > 0 || bodySource != null;
     }
 
     public Request body(byte[] body) {
         if (body == null) {
             return this;
         }
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, null);
     }
 
     public Request body(byte[] body, Charset charset) {
         if (body == null) {
             return this;
         }
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, null);
     }
 
     public Request body(String body) {
         if (body == null) {
             return this;
         }
-        return new Request(method, url, path, body.getBytes(charset), pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body.getBytes(charset), pathParams, formParams, headers, charset, null);
     }
 
+    /**
+     * Sends the file as the body without loading it into memory
+     */
+    public Request body(Path body) {
+        if (body == null) {
+            return this;
+        }
+        return body(BodySource.of(body));
+    }
+
+    /**
+     * Sends the content of the stream as the body, chunked since its length is unknown
+     */
+    public Request body(InputStream body) {
+        if (body == null) {
+            return this;
+        }
+        return body(BodySource.of(body));
+    }
+
+    /**
+     * Sends the content of the channel as the body, chunked since its length is unknown
+     */
+    public Request body(ReadableByteChannel body) {
+        if (body == null) {
+            return this;
+        }
+        return body(BodySource.of(body));
+    }
+
+    public Request body(BodySource body) {
+        if (body == null) {
+            return this;
+        }
+        return new Request(method, url, path, new byte[]{}, pathParams, formParams, headers, charset, body);
+    }
+
+    /**
+     * Sends the value converted by the codec for the Content-Type of the request. The codec writes straight to the
+     * connection when the request is sent, the body is chunked.
+     *
+     * @throws IllegalStateException    if the Content-Type header is not set
+     * @throws IllegalArgumentException if no codec supports the Content-Type
+     */
+    public Request body(Object value, BodyCodecs codecs) {
+        final String contentType = headers.first(Headers.CONTENT_TYPE);
+        if (contentType == null) {
+            throw new IllegalStateException("Content-Type header must be set to choose the body codec");
+        }
+        final BodyCodec codec = codecs.forContentType(contentType);
+        final Charset charset = this.charset;
+        return body(BodySource.of(out -> codec.write(value, out, charset)));
+    }
+
+    /**
+     * @return the in-memory body, empty if the body is a {@link BodySource}
+     */
     public byte[] body() {
         return body;
     }
 
+    public boolean hasBodySource() {
+        return bodySource != null;
+    }
+
+    /**
+     * @return the streamed body or null if the body is in memory
+     */
+    public BodySource bodySource() {
+        return bodySource;
+    }
+
     public String bodyAsString() {
         return new String(body, charset);
     }
@@ -254,7 +361,58 @@ public class Request {
     }
 
     public Request charset(Charset charset) {
-        return new Request(method, url, path, body, pathParams, formParams, headers, charset);
+        return new Request(method, url, path, body, pathParams, formParams, headers, charset, bodySource);
+    }
+
+    /**
+     * Writes the request as HTTP/1.1 bytes: the request line, the Host header unless the headers have one, the
+     * headers, Content-Length of the in-memory or form body and the body itself. Content-Length and Transfer-Encoding
+     * headers of the request are replaced with the ones the body needs. Nothing is allocated on the way, the params
+     * are percent-encoded as they are written.
+     *
+     * @throws java.nio.BufferOverflowException if the request doesn't fit, the buffer content is undefined then
+     * @throws IllegalStateException            if the body is a {@link BodySource}, it can only be written to a channel
+     * @throws IllegalArgumentException         if a header name or value contains CR or LF
+     */
+    public void writeTo(ByteBuffer buffer) {
+        RequestSerializer.write(this, buffer);
+    }
+
+    /**
+     * Writes the request as HTTP/1.1 bytes through a pooled per-thread buffer. A streamed body of unknown length
+     * is sent in chunks.
+     *
+     * @return the number of bytes written
+     */
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        return RequestSerializer.write(this, channel);
+    }
+
+    /**
+     * @return the header lines in HTTP/1.1 format, serialized once per request
+     */
+    byte[] headerBlock() {
+        byte[] headerBlock = this.headerBlock;
+        if (headerBlock == null) {
+            headerBlock = RequestSerializer.headerBlock(headers);
+            this.headerBlock = headerBlock;
+        }
+        return headerBlock;
+    }
+
+    /**
+     * @param url the base url, e.g. "http://localhost:8080"
+     * @return a builder of a GET request to the url
+     */
+    public static Builder builder(String url) {
+        return new Builder(url);
+    }
+
+    /**
+     * @return a builder initialized with this request, the request itself is not changed
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
     }
 
     @Override
@@ -267,11 +425,14 @@ public class Request {
             sb.append("?")
               .append(pathParamsAsString());
         }
-        if (!headers().isEmpty()) {
+        if (!headers.isEmpty()) {
             sb.append("\nHeaders:\n")
               .append(prettyPrintMap(headers()));
         }
-        if (hasBody()) {
+        if (hasBodySource()) {
+            sb.append("\nBody:\n")
+              .append(bodySource);
+        } else if (hasBody()) {
             sb.append("\nBody:\n")
               .append(bodyAsString());
         }
@@ -283,13 +444,25 @@ public class Request {
         return sb.toString();
     }
 
-    private String prepareParams(Map<String, Set<Object>> params) {
-        return params.entrySet()
-                     .stream()
-                     .flatMap(entry -> entry.getValue()
-                                            .stream()
-                                            .map(val -> urlEncode(entry.getKey()) + "=" + urlEncode(val.toString())))
-                     .collect(Collectors.joining("&"));
+    private static String prepareParams(Map<String, Set<Object>> params) {
+        if (params.isEmpty()) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder(params.size() * 16);
+        params.forEach((name, values) -> {
+            final String encodedName = urlEncode(name);
+            for (Object value : values) {
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append(encodedName).append('=').append(urlEncode(value.toString()));
+            }
+        });
+        return sb.toString();
+    }
+
+    private static <T> Set<T> copyOf(Set<T> values) {
+        return values == null ? new LinkedHashSet<>() : new LinkedHashSet<>(values);
     }
 
     private static String urlEncode(String str) {
@@ -300,7 +473,145 @@ public class Request {
         }
     }
 
-    private static Map<String, Set<String>> newHeaders() {
-        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    /**
+     * Collects the parts of a request in mutable maps and creates the Request in one go, unlike the fluent methods
+     * of Request which copy all params and headers on every call. The builder may be reused, the maps are copied
+     * on the first change after {@link #build()}.
+     */
+    public static class Builder {
+        private final String url;
+        private String method = "GET";
+        private final StringBuilder path = new StringBuilder();
+        private byte[] body = new byte[]{};
+        private BodySource bodySource;
+        private Charset charset = StandardCharsets.UTF_8;
+        private Map<String, Set<Object>> pathParams = new LinkedHashMap<>();
+        private Map<String, Set<Object>> formParams = new LinkedHashMap<>();
+        private Headers.Builder headers = Headers.builder();
+        // true if the param maps are owned by a built request
+        private boolean built;
+
+        private Builder(String url) {
+            this.url = url;
+        }
+
+        private Builder(Request request) {
+            this.url = request.url;
+            this.method = request.method;
+            this.path.append(request.path);
+            this.body = request.body;
+            this.bodySource = request.bodySource;
+            this.charset = request.charset;
+            this.pathParams = request.pathParams;
+            this.formParams = request.formParams;
+            this.headers = request.headers.toBuilder();
+            this.built = true;
+        }
+
+        public Builder method(String method) {
+            this.method = Objects.requireNonNull(method);
+            return this;
+        }
+
+        /**
+         * @param segment the path segment, url encoded and appended after a "/"
+         * @return this builder
+         */
+        public Builder path(String segment) {
+            path.append(PATH_DELIMITER).append(urlEncode(segment));
+            return this;
+        }
+
+        public Builder pathParam(String name, Object value) {
+            if (value != null) {
+                ownMaps();
+                pathParams.computeIfAbsent(name, it -> new LinkedHashSet<>()).add(value);
+            }
+            return this;
+        }
+
+        public Builder pathParam(String name, Set<Object> values) {
+            if (values != null && !values.isEmpty()) {
+                ownMaps();
+                pathParams.put(name, new LinkedHashSet<>(values));
+            }
+            return this;
+        }
+
+        public Builder formParam(String name, Object value) {
+            if (value != null) {
+                ownMaps();
+                formParams.computeIfAbsent(name, it -> new LinkedHashSet<>()).add(value);
+            }
+            return this;
+        }
+
+        public Builder formParam(String name, Set<Object> values) {
+            if (values != null && !values.isEmpty()) {
+                ownMaps();
+                formParams.put(name, new LinkedHashSet<>(values));
+            }
+            return this;
+        }
+
+        public Builder header(String name, String value) {
+            if (value != null && !headers.contains(name, value)) {
+                headers.add(name, value);
+            }
+            return this;
+        }
+
+        public Builder body(byte[] body) {
+            if (body != null) {
+                this.body = body;
+                this.bodySource = null;
+            }
+            return this;
+        }
+
+        public Builder body(String body) {
+            return body == null ? this : body(body.getBytes(charset));
+        }
+
+        /**
+         * @param body a file, a stream or a channel sent without loading it into memory
+         * @return this builder
+         */
+        public Builder body(BodySource body) {
+            if (body != null) {
+                this.body = new byte[]{};
+                this.bodySource = body;
+            }
+            return this;
+        }
+
+        /**
+         * @param charset the charset of a string body set afterwards and of the form params
+         * @return this builder
+         */
+        public Builder charset(Charset charset) {
+            this.charset = Objects.requireNonNull(charset);
+            return this;
+        }
+
+        public Request build() {
+            built = true;
+            return new Request(method, url, path.toString(), body, pathParams, formParams, headers.build(), charset, bodySource);
+        }
+
+        private void ownMaps() {
+            if (!built) {
+                return;
+            }
+            pathParams = copyParams(pathParams);
+            formParams = copyParams(formParams);
+            built = false;
+        }
+
+        private static Map<String, Set<Object>> copyParams(Map<String, Set<Object>> from) {
+            final Map<String, Set<Object>> to = new LinkedHashMap<>();
+            from.forEach((name, values) -> to.put(name, new LinkedHashSet<>(values)));
+            return to;
+        }
     }
 }
@@ -0,0 +1,638 @@
+package com.andreidemus.http.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Writes requests as HTTP/1.1 bytes straight into a buffer. Params are percent-encoded while they are written,
+ * the same way as {@link java.net.URLEncoder} with UTF-8 does, so no intermediate strings are created.
+ * <p>
+ * It is the only writer of the wire format, used by {@link Request#writeTo} and by the NIO engine of the client.
+ * A user-set Host header replaces the default one, Content-Length and Transfer-Encoding always follow the body,
+ * and header fields with CR or LF are rejected.
+ */
+public final class RequestSerializer {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // room for the size line of a chunk: up to 8 hex digits and CRLF
+    private static final int CHUNK_HEADER_SIZE = 10;
+    // one direct buffer per thread, a channel write from a heap buffer would copy it into a direct one anyway
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    // body lengths besides the actual ones
+    private static final long CHUNKED = -1;
+    private static final long NO_BODY = -2;
+
+    private RequestSerializer() {
+    }
+
+    /**
+     * Destination of the bytes of a request, e.g. a socket which has to wait until it can take more
+     */
+    public interface Sink {
+        /**
+         * Writes all remaining bytes of the buffers in order
+         */
+        void write(ByteBuffer... buffers) throws IOException;
+
+        /**
+         * Sends the bytes of the file, so they may be copied by the kernel without passing through the heap
+         */
+        void transfer(FileChannel file, long position, long count) throws IOException;
+    }
+
+    /**
+     * Writes a request whose target is already resolved, e.g. by a client which has applied its defaults. The head
+     * and a small body are collected in the buffer and written together, a large in-memory body is written without
+     * being copied, a file is transferred to the sink.
+     *
+     * @param target the path with the query string
+     * @param host   the value of the Host header unless the headers have one
+     * @param body   the body, null if there is none
+     * @param buffer the buffer to collect the bytes in, its content is undefined afterwards
+     * @throws IllegalArgumentException if a header name or value contains CR or LF
+     */
+    public static void write(String method,
+                             String target,
+                             String host,
+                             Headers headers,
+                             BodySource body,
+                             ByteBuffer buffer,
+                             Sink sink) throws IOException {
+        for (int i = 0; i < headers.size(); i++) {
+            checkField("name", headers.name(i));
+            checkField("value", headers.value(i));
+        }
+        buffer.clear();
+        final Output out = new Output(buffer, Objects.requireNonNull(sink));
+        try {
+            out.putLatin1(method, 0, method.length());
+            out.put((byte) ' ');
+            out.putLatin1(target, 0, target.length());
+            putHost(headers, host, 0, host.length(), out);
+            for (int i = 0; i < headers.size(); i++) {
+                if (!isGenerated(headers.name(i))) {
+                    putHeader(headers.name(i), headers.value(i), out);
+                }
+            }
+            putFraming(body == null ? NO_BODY : body.length() < 0 ? CHUNKED : body.length(), headers, out);
+            if (body != null) {
+                writeBodySource(body, out);
+            }
+            out.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * @throws BufferOverflowException if the request doesn't fit into the buffer
+     */
+    static void write(Request request, ByteBuffer buffer) {
+        if (request.hasBodySource()) {
+            throw new IllegalStateException("A streamed body can only be written to a channel");
+        }
+        writeMessage(request, new Output(buffer, null));
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    static long write(Request request, WritableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        final Output out = new Output(buffer, new ChannelSink(channel));
+        try {
+            writeMessage(request, out);
+            if (request.hasBodySource()) {
+                writeBodySource(request.bodySource(), out);
+            }
+            out.flush();
+            return out.written;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * @return the header lines of the request each terminated with CRLF, except Host, which is written with the
+     * request line, and Content-Length and Transfer-Encoding, which are derived from the body
+     * @throws IllegalArgumentException if a header name or value contains CR or LF
+     */
+    static byte[] headerBlock(Headers headers) {
+        int length = 0;
+        for (int i = 0; i < headers.size(); i++) {
+            checkField("name", headers.name(i));
+            checkField("value", headers.value(i));
+            if (!isGenerated(headers.name(i))) {
+                length += headers.name(i).length() + 2 + headers.value(i).length() + 2;
+            }
+        }
+        final ByteBuffer block = ByteBuffer.allocate(length);
+        final Output out = new Output(block, null);
+        for (int i = 0; i < headers.size(); i++) {
+            if (!isGenerated(headers.name(i))) {
+                putHeader(headers.name(i), headers.value(i), out);
+            }
+        }
+        return block.array();
+    }
+
+    /**
+     * @return the length of the percent-encoded params
+     */
+    static int encodedLength(Map<String, Set<Object>> params) {
+        int length = 0;
+        for (Map.Entry<String, Set<Object>> param : params.entrySet()) {
+            final int name = encodedLength(param.getKey());
+            for (Object value : param.getValue()) {
+                length += (length > 0 ? 1 : 0) + name + 1 + encodedLength(value.toString());
+            }
+        }
+        return length;
+    }
+
+    private static void writeMessage(Request request, Output out) {
+        final String url = request.url();
+        final int scheme = url.indexOf("://");
+        final int hostStart = scheme < 0 ? 0 : scheme + 3;
+        final int slash = url.indexOf('/', hostStart);
+        final int hostEnd = slash < 0 ? url.length() : slash;
+
+        out.putLatin1(request.method(), 0, request.method().length());
+        out.put((byte) ' ');
+        if (slash >= 0) {
+            out.putLatin1(url, slash, url.length());
+        }
+        out.putLatin1(request.path(), 0, request.path().length());
+        if (slash < 0 && request.path().isEmpty()) {
+            out.put((byte) '/');
+        }
+        if (request.hasPathParams()) {
+            out.put((byte) '?');
+            putParams(request.pathParams(), out);
+        }
+        final byte[] headerBlock = request.headerBlock();
+        final Headers headers = request.headerFields();
+        putHost(headers, url, hostStart, hostEnd, out);
+        out.put(headerBlock, 0, headerBlock.length);
+
+        if (request.hasBodySource()) {
+            final long length = request.bodySource().length();
+            putFraming(length < 0 ? CHUNKED : length, headers, out);
+        } else if (request.hasBody()) {
+            putFraming(request.body().length, headers, out);
+            out.putLarge(request.body());
+        } else if (request.hasFormParams()) {
+            putFraming(encodedLength(request.formParams()), headers, out);
+            putParams(request.formParams(), out);
+        } else {
+            putFraming(NO_BODY, headers, out);
+        }
+    }
+
+    /**
+     * Ends the request line and writes the Host header, the one of the headers if they have it
+     *
+     * @param host the default host is the range of this string
+     */
+    private static void putHost(Headers headers, String host, int from, int to, Output out) {
+        out.putLatin1(" HTTP/1.1\r\nHost: ", 0, 17);
+        final String userHost = headers.first(Headers.HOST);
+        if (userHost == null) {
+            out.putLatin1(host, from, to);
+        } else {
+            out.putLatin1(userHost, 0, userHost.length());
+        }
+        out.put(CRLF, 0, CRLF.length);
+    }
+
+    private static void putHeader(String name, String value, Output out) {
+        out.putLatin1(name, 0, name.length());
+        out.put((byte) ':');
+        out.put((byte) ' ');
+        out.putLatin1(value, 0, value.length());
+        out.put(CRLF, 0, CRLF.length);
+    }
+
+    /**
+     * Writes the framing header the body needs and ends the head. The framing always follows the body, a header
+     * of the user saying otherwise would corrupt the message.
+     *
+     * @param length the length of the body, {@link #CHUNKED} or {@link #NO_BODY}
+     */
+    private static void putFraming(long length, Headers headers, Output out) {
+        if (length >= 0) {
+            putContentLength(length, out);
+        } else if (length == CHUNKED) {
+            out.putLatin1("Transfer-Encoding: chunked\r\n", 0, 28);
+        } else if (headers.contains(Headers.CONTENT_LENGTH) || headers.contains(Headers.TRANSFER_ENCODING)) {
+            // the user has announced a body, e.g. to a server which requires Content-Length on every POST
+            putContentLength(0, out);
+        }
+        out.put(CRLF, 0, CRLF.length);
+    }
+
+    private static boolean isGenerated(String name) {
+        return name == Headers.HOST || name == Headers.CONTENT_LENGTH || name == Headers.TRANSFER_ENCODING;
+    }
+
+    private static void checkField(String kind, String field) {
+        if (field.indexOf('\r') >= 0 || field.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Illegal character(s) in message header " + kind + ": " + field);
+        }
+    }
+
+    private static void putContentLength(long length, Output out) {
+        out.putLatin1("Content-Length: ", 0, 16);
+        out.putDecimal(length);
+        out.put(CRLF, 0, CRLF.length);
+    }
+
+    private static void putParams(Map<String, Set<Object>> params, Output out) {
+        boolean first = true;
+        for (Map.Entry<String, Set<Object>> param : params.entrySet()) {
+            for (Object value : param.getValue()) {
+                if (!first) {
+                    out.put((byte) '&');
+                }
+                first = false;
+                putEncoded(param.getKey(), out);
+                out.put((byte) '=');
+                putEncoded(value.toString(), out);
+            }
+        }
+    }
+
+    /**
+     * Writes the body after the head, as it is if the length is known and in chunks otherwise
+     */
+    private static void writeBodySource(BodySource body, Output out) throws IOException {
+        if (body.bytes() != null) {
+            out.putLarge(body.bytes());
+            return;
+        }
+        if (body.writer() != null) {
+            out.flush();
+            // the last chunk is not written if the writer fails, so a partial body is never taken as complete
+            final ChunkedStream stream = new ChunkedStream(out);
+            try {
+                body.writer().writeTo(stream);
+            } catch (UncheckedIOException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw new IOException("Request body writer failed", e);
+            }
+            stream.flush();
+            writeLastChunk(out);
+            return;
+        }
+        final ByteBuffer buffer = out.buffer;
+        final long length = body.length();
+        try (ReadableByteChannel in = body.open()) {
+            if (length >= 0 && length <= buffer.remaining()) {
+                // a small body is sent in the same packet as the head
+                buffer.limit(buffer.position() + (int) length);
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer) < 0) {
+                        throw new IOException("Request body is shorter than its declared length");
+                    }
+                }
+                buffer.limit(buffer.capacity());
+                return;
+            }
+            out.flush();
+            if (length >= 0 && in instanceof FileChannel) {
+                out.transfer((FileChannel) in, length);
+                return;
+            }
+            final boolean chunked = length < 0;
+            // exactly the declared length is sent, the message would be corrupt otherwise
+            long remaining = length;
+            while (chunked || remaining > 0) {
+                buffer.clear();
+                if (chunked) {
+                    buffer.position(CHUNK_HEADER_SIZE);
+                    buffer.limit(buffer.capacity() - CRLF.length);
+                } else {
+                    buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                }
+                final int n = in.read(buffer);
+                if (n < 0 && !chunked) {
+                    throw new IOException("Request body is shorter than its declared length");
+                }
+                if (n < 0) {
+                    break;
+                }
+                remaining -= n;
+                if (n == 0) {
+                    continue;
+                }
+                if (chunked) {
+                    frameChunk(buffer, n);
+                } else {
+                    buffer.flip();
+                }
+                out.drain();
+            }
+            if (chunked) {
+                writeLastChunk(out);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Frames the chunk of n bytes which starts at {@link #CHUNK_HEADER_SIZE}: the size line is written right before
+     * the data, the CRLF right after it. The buffer is left ready to be drained.
+     */
+    private static void frameChunk(ByteBuffer buffer, int n) {
+        buffer.limit(buffer.capacity());
+        buffer.position(CHUNK_HEADER_SIZE + n);
+        buffer.put(CRLF);
+        buffer.put(CHUNK_HEADER_SIZE - 2, (byte) '\r').put(CHUNK_HEADER_SIZE - 1, (byte) '\n');
+        int start = CHUNK_HEADER_SIZE - 2;
+        for (int size = n; size > 0; size >>>= 4) {
+            buffer.put(--start, (byte) Character.forDigit(size & 0xF, 16));
+        }
+        buffer.flip();
+        buffer.position(start);
+    }
+
+    private static void writeLastChunk(Output out) {
+        final ByteBuffer buffer = out.buffer;
+        buffer.clear();
+        buffer.put((byte) '0').put(CRLF).put(CRLF);
+        buffer.flip();
+        out.drain();
+        buffer.clear();
+    }
+
+    private static void putEncoded(String str, Output out) {
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if (isUnreserved(c)) {
+                out.put((byte) c);
+            } else if (c == ' ') {
+                out.put((byte) '+');
+            } else if (c < 0x80) {
+                putPercent(c, out);
+            } else if (c < 0x800) {
+                putPercent(0xC0 | (c >> 6), out);
+                putPercent(0x80 | (c & 0x3F), out);
+            } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, str.charAt(++i));
+                putPercent(0xF0 | (cp >> 18), out);
+                putPercent(0x80 | ((cp >> 12) & 0x3F), out);
+                putPercent(0x80 | ((cp >> 6) & 0x3F), out);
+                putPercent(0x80 | (cp & 0x3F), out);
+            } else if (Character.isSurrogate(c)) {
+                // an unpaired surrogate can't be encoded, URLEncoder replaces it with '?'
+                putPercent('?', out);
+            } else {
+                putPercent(0xE0 | (c >> 12), out);
+                putPercent(0x80 | ((c >> 6) & 0x3F), out);
+                putPercent(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    private static int encodedLength(String str) {
+        int length = 0;
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if (isUnreserved(c) || c == ' ') {
+                length++;
+            } else if (c < 0x80) {
+                length += 3;
+            } else if (c < 0x800) {
+                length += 6;
+            } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+                length += 12;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 3;
+            } else {
+                length += 9;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '_' || c == '.' || c == '*';
+    }
+
+    private static void putPercent(int b, Output out) {
+        out.put((byte) '%');
+        out.put(HEX[(b >> 4) & 0xF]);
+        out.put(HEX[b & 0xF]);
+    }
+
+    /**
+     * Collects what a body writer writes into chunks in the buffer of the output, framed in place
+     */
+    private static final class ChunkedStream extends OutputStream {
+        private final Output out;
+        private final ByteBuffer buffer;
+
+        private ChunkedStream(Output out) {
+            this.out = out;
+            this.buffer = out.buffer;
+            reset();
+        }
+
+        @Override
+        public void write(int b) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                final int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() {
+            final int n = buffer.position() - CHUNK_HEADER_SIZE;
+            if (n > 0) {
+                frameChunk(buffer, n);
+                out.drain();
+                reset();
+            }
+        }
+
+        private void reset() {
+            buffer.clear();
+            buffer.position(CHUNK_HEADER_SIZE);
+            buffer.limit(buffer.capacity() - CRLF.length);
+        }
+    }
+
+    /**
+     * Blocking channel as a sink, a file is transferred with {@link FileChannel#transferTo}
+     */
+    private static final class ChannelSink implements Sink {
+        private final WritableByteChannel channel;
+
+        private ChannelSink(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(ByteBuffer... buffers) throws IOException {
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+
+        @Override
+        public void transfer(FileChannel file, long position, long count) throws IOException {
+            final long end = position + count;
+            while (position < end) {
+                final long transferred = file.transferTo(position, end - position, channel);
+                if (transferred == 0 && position >= file.size()) {
+                    throw new IOException("File is shorter than declared body length " + count);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * A buffer which is drained to the sink when it is full, or overflows if there is no sink
+     */
+    private static final class Output {
+        private final ByteBuffer buffer;
+        private final Sink sink;
+        private long written;
+
+        private Output(ByteBuffer buffer, Sink sink) {
+            this.buffer = buffer;
+            this.sink = sink;
+        }
+
+        void put(byte b) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put(b);
+        }
+
+        void put(byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                final int n = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        /**
+         * Writes a large array together with the buffered bytes without copying it into the buffer
+         */
+        void putLarge(byte[] bytes) {
+            if (sink == null || bytes.length <= buffer.remaining()) {
+                put(bytes, 0, bytes.length);
+                return;
+            }
+            buffer.flip();
+            written += buffer.remaining() + bytes.length;
+            try {
+                sink.write(buffer, ByteBuffer.wrap(bytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Writes the buffered bytes, then count bytes of the file from its current position
+         */
+        void transfer(FileChannel file, long count) {
+            flush();
+            try {
+                sink.transfer(file, file.position(), count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            written += count;
+        }
+
+        /**
+         * Header values are ISO-8859-1, anything else can't be represented and is written as '?'
+         */
+        void putLatin1(String str, int from, int to) {
+            for (int i = from; i < to; i++) {
+                final char c = str.charAt(i);
+                put(c > 0xFF ? (byte) '?' : (byte) c);
+            }
+        }
+
+        void putDecimal(long value) {
+            long divisor = 1;
+            while (value / divisor >= 10) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                put((byte) ('0' + value / divisor % 10));
+            }
+        }
+
+        /**
+         * Writes the buffered bytes to the sink and clears the buffer
+         */
+        void flush() {
+            if (sink == null) {
+                throw new BufferOverflowException();
+            }
+            buffer.flip();
+            drain();
+            buffer.clear();
+        }
+
+        /**
+         * Writes the bytes between the position and the limit of the buffer to the sink
+         */
+        void drain() {
+            written += buffer.remaining();
+            try {
+                sink.write(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
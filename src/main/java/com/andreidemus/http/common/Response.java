@@ -1,39 +1,76 @@
 package com.andreidemus.http.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static com.andreidemus.http.common.Utils.prettyPrintMap;
 
-public class Response {
-    private static final String CONTENT_TYPE = "Content-Type";
+/**
+ * Received response. The charset and the text of the body are decoded on first use and remembered, so a caller
+ * which only checks the status doesn't pay for them.
+ */
+public class Response implements Closeable {
     private static final Pattern CHARSET_PATTERN = Pattern.compile("charset=([_\\-0-9a-zA-Z]+)(;|$)");
+    // servers send a handful of distinct Content-Type values, the bound protects against the ones that don't
+    private static final int MAX_CACHED_CONTENT_TYPES = 256;
+    private static final ConcurrentMap<String, Optional<Charset>> CHARSETS = new ConcurrentHashMap<>();
 
     private int status;
     private String reason;
     private Charset charset;
     private byte[] body;
-    private Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private ReadableByteChannel bodyChannel;
+    private Headers headers = Headers.empty();
+    // the decoded body, valid as long as the body is the same array
+    private String text;
+    private byte[] textBody;
 
     public Response() {}
 
     public Response(int status, String reason, byte[] body, Map<String, List<String>> headers) {
+        this(status, reason, body, Headers.of(headers));
+    }
+
+    public Response(int status, String reason, byte[] body, Headers headers) {
         this.status = status;
         this.reason = reason;
         this.body = body;
-        putHeaders(headers);
-        this.charset = Optional.ofNullable(headers.get(CONTENT_TYPE))
-                               .flatMap(this::parseCharset)
-                               .orElse(StandardCharsets.UTF_8);
+        this.headers = headers;
+    }
+
+    /**
+     * Creates a streamed response, the body is read from the channel when it is requested
+     */
+    public Response(int status, String reason, ReadableByteChannel body, Map<String, List<String>> headers) {
+        this(status, reason, body, Headers.of(headers));
+    }
+
+    /**
+     * Creates a streamed response, the body is read from the channel when it is requested
+     */
+    public Response(int status, String reason, ReadableByteChannel body, Headers headers) {
+        this(status, reason, (byte[]) null, headers);
+        this.bodyChannel = body;
     }
 
     public Response(int status, String reason, Map<String, List<String>> headers) {
         this.status = status;
         this.reason = reason;
-        this.headers = headers;
+        this.headers = Headers.of(headers);
     }
 
     public int status() {
@@ -48,39 +85,125 @@ public class Response {
         return bodyAsString();
     }
 
+    /**
+     * @return the body decoded with the charset of the response, decoded once
+     */
     public String bodyAsString() {
-        return new String(body, charset);
+        final byte[] body = body();
+        if (text == null || textBody != body) {
+            text = new String(body, charset());
+            textBody = body;
+        }
+        return text;
     }
 
+    /**
+     * @return the charset from the Content-Type header, UTF-8 if it is not set or not supported
+     */
     public Charset charset() {
+        if (charset == null) {
+            charset = parseCharset(headers.get(Headers.CONTENT_TYPE)).orElse(StandardCharsets.UTF_8);
+        }
         return charset;
     }
 
+    /**
+     * For a streamed response reads the rest of the body into memory
+     */
     public boolean hasBody() {
+        final byte[] body = body();
         return body != null && body.length > 0;
     }
 
+    /**
+     * For a streamed response reads the rest of the body into memory
+     */
     public byte[] body() {
+        if (bodyChannel != null) {
+            body = readChannel();
+        }
         return body;
     }
 
+    /**
+     * @return true if the body has not been read from the network yet
+     */
+    public boolean isStreamed() {
+        return bodyChannel != null;
+    }
+
+    /**
+     * @return the body as a stream, for a streamed response it reads directly from the connection
+     */
+    public InputStream bodyStream() {
+        if (bodyChannel != null) {
+            return Channels.newInputStream(bodyChannel);
+        }
+        return new ByteArrayInputStream(body == null ? new byte[]{} : body);
+    }
+
+    /**
+     * @return the body as a channel, for a streamed response it reads directly from the connection
+     */
+    public ReadableByteChannel bodyChannel() {
+        if (bodyChannel != null) {
+            return bodyChannel;
+        }
+        return Channels.newChannel(bodyStream());
+    }
+
+    /**
+     * Converts the body with the codec for the Content-Type of the response. A streamed body is read by the codec
+     * straight from the connection, which is released afterwards.
+     *
+     * @throws IllegalStateException    if the response has no Content-Type header
+     * @throws IllegalArgumentException if no codec supports the Content-Type
+     */
+    public <T> T body(Class<T> type, BodyCodecs codecs) {
+        final String contentType = headers.first(Headers.CONTENT_TYPE);
+        if (contentType == null) {
+            throw new IllegalStateException("Response has no Content-Type header to choose the body codec");
+        }
+        final BodyCodec codec = codecs.forContentType(contentType);
+        try (InputStream in = bodyStream()) {
+            return codec.read(in, type, charset());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Releases the connection of a streamed response. Does nothing for a response read into memory.
+     */
+    @Override
+    public void close() {
+        if (bodyChannel == null) {
+            return;
+        }
+        try {
+            bodyChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return an unmodifiable case-insensitive map view of the headers, created on first use
+     */
     public Map<String, List<String>> headers() {
+        return headers.asMap();
+    }
+
+    public Headers headerFields() {
         return headers;
     }
 
     public List<String> header(String header) {
-        final List<String> hs = headers.get(header);
-        if (hs != null) {
-            return hs;
-        } else {
-            return Collections.emptyList();
-        }
+        return headers.get(header);
     }
 
     public Optional<String> firstHeader(String header) {
-        return Optional.ofNullable(headers.get(header))
-                       .filter(it -> !it.isEmpty())
-                       .map(it -> it.get(0));
+        return Optional.ofNullable(headers.first(header));
     }
 
     @Override
@@ -90,11 +213,14 @@ public class Response {
           .append(status())
           .append("\nReason: ")
           .append(reason());
-        if (!headers().isEmpty()) {
+        if (!headers.isEmpty()) {
             sb.append("\nHeaders:\n")
               .append(prettyPrintMap(headers()));
         }
-        if (hasBody()) {
+        if (isStreamed()) {
+            sb.append("\nBody:\n")
+              .append("<streamed>");
+        } else if (hasBody()) {
             sb.append("\nBody:\n")
               .append(text());
         }
@@ -102,22 +228,38 @@ public class Response {
         return sb.toString();
     }
 
-    private void putHeaders(Map<String, List<String>> headers) {
-        headers.entrySet()
-               .stream()
-               .filter(it -> it.getKey() != null && it.getValue() != null && !it.getValue().isEmpty())
-               .forEach(it -> this.headers.put(it.getKey(), it.getValue()));
+    private byte[] readChannel() {
+        try (ReadableByteChannel channel = bodyChannel) {
+            bodyChannel = null;
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+            while (channel.read(buffer) >= 0) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private Optional<Charset> parseCharset(List<String> headerValues) {
-        return headerValues.stream()
-                           .map(this::parseCharset)
-                           .filter(Optional::isPresent)
-                           .map(Optional::get)
-                           .findFirst();
+    private static Optional<Charset> parseCharset(List<String> headerValues) {
+        for (String contentType : headerValues) {
+            Optional<Charset> charset = CHARSETS.get(contentType);
+            if (charset == null) {
+                charset = parseCharset(contentType);
+                if (CHARSETS.size() < MAX_CACHED_CONTENT_TYPES) {
+                    CHARSETS.putIfAbsent(contentType, charset);
+                }
+            }
+            if (charset.isPresent()) {
+                return charset;
+            }
+        }
+        return Optional.empty();
     }
 
-    private Optional<Charset> parseCharset(String contentType) {
+    private static Optional<Charset> parseCharset(String contentType) {
         try {
             final Matcher m = CHARSET_PATTERN.matcher(contentType);
             if (m.find()) {
@@ -0,0 +1,247 @@
+package com.andreidemus.http.load;
+
+import com.andreidemus.http.client.LatencyHistogram;
+import com.andreidemus.http.client.RequestsClient;
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import com.andreidemus.http.server.Responses;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests built from templates with a number of worker threads and reports throughput and latency.
+ * <p>
+ * In a closed loop every worker sends the next request as soon as the previous one is answered, so the load
+ * follows the server's speed. In an open loop requests are scheduled at a constant rate no matter how fast
+ * the server answers. Latency is measured from the scheduled time, so a stall is not hidden by the requests
+ * which couldn't be sent during it (coordinated omission).
+ */
+public class LoadGenerator {
+    private static final int STATUS_CLASSES = 6;
+
+    private final RequestsClient client;
+    private final boolean ownClient;
+    private final List<Request> requests;
+    private final int concurrency;
+    private final Duration duration;
+    private final double rate;
+
+    private LoadGenerator(Builder builder) {
+        this.concurrency = builder.concurrency;
+        this.ownClient = builder.client == null;
+        this.client = ownClient
+                ? RequestsClient.builder().maxConnectionsPerHost(concurrency).build()
+                : builder.client;
+        this.requests = new ArrayList<>(builder.requests);
+        this.duration = builder.duration;
+        this.rate = builder.rate;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static void main(String[] args) throws IOException {
+        final Duration duration = args.length > 0 ? Duration.ofSeconds(Long.parseLong(args[0])) : Duration.ofSeconds(5);
+        selfTest(duration).forEach(System.out::println);
+    }
+
+    /**
+     * Runs a closed and an open loop against an in-process {@link Responses} instance. Useful to check
+     * the generator itself and to see the client overhead without network hops.
+     *
+     * @param duration the duration of each run
+     * @return the reports of the closed and the open loop runs
+     */
+    public static List<LoadReport> selfTest(Duration duration) throws IOException {
+        final Responses server = new Responses();
+        try {
+            final Request request = new Request("http://127.0.0.1:" + server.start(0)).path("self-test");
+            final LoadReport closed = builder().request(request)
+                                               .concurrency(4)
+                                               .duration(duration)
+                                               .build()
+                                               .run();
+            final LoadReport open = builder().request(request)
+                                             .concurrency(4)
+                                             .duration(duration)
+                                             .rate(Math.max(1, closed.throughput() / 2))
+                                             .build()
+                                             .run();
+            return Arrays.asList(closed, open);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Blocks until the configured duration elapses and all sent requests are answered
+     */
+    public LoadReport run() {
+        final Run run = new Run();
+        final Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Thread(run::work, "load-generator-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.end = System.nanoTime();
+        } finally {
+            if (ownClient) {
+                client.close();
+            }
+        }
+        final long[] statusClasses = new long[STATUS_CLASSES];
+        for (int i = 0; i < STATUS_CLASSES; i++) {
+            statusClasses[i] = run.statusClasses.get(i);
+        }
+        return new LoadReport(rate > 0 ? String.format("open loop at %.1f req/s", rate) : "closed loop",
+                run.completed.get(), run.errors.get(), statusClasses, System.nanoTime() - run.start,
+                run.latency, run.serviceTime);
+    }
+
+    /**
+     * State of a single run shared by the workers
+     */
+    private class Run {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = rate > 0 ? new LatencyHistogram() : latency;
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLongArray statusClasses = new AtomicLongArray(STATUS_CLASSES);
+        private final long start = System.nanoTime();
+        private volatile long end = start + duration.toNanos();
+
+        void work() {
+            while (!Thread.currentThread().isInterrupted()) {
+                final long n = sequence.getAndIncrement();
+                final long scheduledAt = rate > 0 ? start + (long) (n * 1e9 / rate) : System.nanoTime();
+                if (scheduledAt - end >= 0) {
+                    return;
+                }
+                waitUntil(scheduledAt);
+
+                final long sentAt = System.nanoTime();
+                try {
+                    final Response response = client.send(requests.get((int) (n % requests.size())));
+                    final int statusClass = response.status() / 100;
+                    statusClasses.incrementAndGet(statusClass > 0 && statusClass < STATUS_CLASSES ? statusClass : 0);
+                } catch (RuntimeException e) {
+                    errors.incrementAndGet();
+                }
+                final long now = System.nanoTime();
+                latency.record(now - scheduledAt);
+                if (serviceTime != latency) {
+                    serviceTime.record(now - sentAt);
+                }
+                completed.incrementAndGet();
+            }
+        }
+
+        private void waitUntil(long time) {
+            for (long delay = time - System.nanoTime(); delay > 0; delay = time - System.nanoTime()) {
+                LockSupport.parkNanos(delay);
+            }
+        }
+    }
+
+    /**
+     * Configures LoadGenerator instances
+     */
+    public static class Builder {
+        private RequestsClient client;
+        private final List<Request> requests = new ArrayList<>();
+        private int concurrency = 1;
+        private Duration duration = Duration.ofSeconds(10);
+        private double rate;
+
+        private Builder() {
+        }
+
+        /**
+         * @param client the client to send requests with, by default a client with a connection per worker
+         *               is created and closed after the run
+         * @return this builder
+         */
+        public Builder client(RequestsClient client) {
+            this.client = Objects.requireNonNull(client);
+            return this;
+        }
+
+        /**
+         * @param request a request template, templates are sent in turns
+         * @return this builder
+         */
+        public Builder request(Request request) {
+            this.requests.add(Objects.requireNonNull(request));
+            return this;
+        }
+
+        /**
+         * @param requests request templates, they are sent in turns
+         * @return this builder
+         */
+        public Builder requests(List<Request> requests) {
+            requests.forEach(this::request);
+            return this;
+        }
+
+        /**
+         * @param concurrency the number of worker threads, i.e. the max number of requests in flight
+         * @return this builder
+         */
+        public Builder concurrency(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency must be positive");
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * @param duration the time to send requests for
+         * @return this builder
+         */
+        public Builder duration(Duration duration) {
+            this.duration = Objects.requireNonNull(duration);
+            return this;
+        }
+
+        /**
+         * Switches to an open loop. The concurrency should be large enough to keep up with the rate,
+         * otherwise requests fall behind the schedule and it shows as latency.
+         *
+         * @param requestsPerSecond the constant arrival rate
+         * @return this builder
+         */
+        public Builder rate(double requestsPerSecond) {
+            if (requestsPerSecond <= 0) {
+                throw new IllegalArgumentException("rate must be positive");
+            }
+            this.rate = requestsPerSecond;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (requests.isEmpty()) {
+                throw new IllegalStateException("At least one request template is required");
+            }
+            return new LoadGenerator(this);
+        }
+    }
+}
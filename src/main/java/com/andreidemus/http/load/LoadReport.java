@@ -0,0 +1,100 @@
+package com.andreidemus.http.load;
+
+import com.andreidemus.http.client.LatencyHistogram;
+
+/**
+ * Result of a load generator run
+ */
+public class LoadReport {
+    private final String mode;
+    private final long requests;
+    private final long errors;
+    private final long[] statusClasses;
+    private final long durationNanos;
+    private final LatencyHistogram latency;
+    private final LatencyHistogram serviceTime;
+
+    LoadReport(String mode,
+               long requests,
+               long errors,
+               long[] statusClasses,
+               long durationNanos,
+               LatencyHistogram latency,
+               LatencyHistogram serviceTime) {
+        this.mode = mode;
+        this.requests = requests;
+        this.errors = errors;
+        this.statusClasses = statusClasses;
+        this.durationNanos = durationNanos;
+        this.latency = latency;
+        this.serviceTime = serviceTime;
+    }
+
+    /**
+     * @return the number of completed requests including failed ones
+     */
+    public long requests() {
+        return requests;
+    }
+
+    /**
+     * @return the number of requests failed with an exception, error statuses are not counted
+     */
+    public long errors() {
+        return errors;
+    }
+
+    /**
+     * @param statusClass the first digit of the status, 2 for 2xx
+     * @return the number of responses with the status class
+     */
+    public long responses(int statusClass) {
+        return statusClasses[statusClass];
+    }
+
+    public long durationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return completed requests per second
+     */
+    public double throughput() {
+        return durationNanos == 0 ? 0 : requests * 1e9 / durationNanos;
+    }
+
+    /**
+     * @return the latency as seen by users: for an open loop it is measured from the moment the request was
+     * scheduled, so the time spent waiting behind slow requests is included (coordinated omission correction)
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * @return the time from the request being actually sent to the response, the same as latency for a closed loop
+     */
+    public LatencyHistogram serviceTime() {
+        return serviceTime;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(mode)
+          .append(" - requests: ").append(requests)
+          .append(", errors: ").append(errors)
+          .append(", duration: ").append(String.format("%.2fs", durationNanos / 1e9))
+          .append(", throughput: ").append(String.format("%.1f req/s", throughput()));
+        for (int statusClass = 1; statusClass < statusClasses.length; statusClass++) {
+            if (statusClasses[statusClass] > 0) {
+                sb.append(", ").append(statusClass).append("xx: ").append(statusClasses[statusClass]);
+            }
+        }
+        sb.append("\nlatency - ").append(latency);
+        if (serviceTime != latency) {
+            sb.append("\nservice time - ").append(serviceTime);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * State of a persistent client connection served by an {@link EventLoop}: the request parsed so far and the
+ * responses which are not written yet. Pipelined requests are answered in the order they arrive.
+ */
+final class Connection {
+    private static final ByteBuffer BAD_REQUEST = Stub.builder(400).build().content(true);
+    // reading stops while this many responses wait for a client which doesn't read them
+    private static final int MAX_QUEUED_RESPONSES = 64;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final EventLoop loop;
+    private final Responses server;
+    // the shared content of the stubs, written through views of the loop
+    private final Deque<ByteBuffer> responses = new ArrayDeque<>(4);
+    // the number of bytes of the first response written so far
+    private int written;
+    // created on the first read, an idle connection which never sent anything keeps no parser state
+    private RequestParser parser;
+    private RequestBody body;
+    private int served;
+    // no more requests are read, the connection is closed once the queued responses are written
+    private boolean closing;
+    private long lastActiveAt = System.nanoTime();
+
+    Connection(SocketChannel channel, SelectionKey key, EventLoop loop, Responses server) {
+        this.channel = channel;
+        this.key = key;
+        this.loop = loop;
+        this.server = server;
+    }
+
+    /**
+     * Reads what has arrived and answers every request received completely. A malformed request is answered
+     * with 400 Bad Request and the connection is closed.
+     *
+     * @param buffer the buffer of the event loop to read into
+     */
+    void read(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        final int read = channel.read(buffer);
+        if (read < 0) {
+            // the client has nothing more to send, an incomplete request is dropped
+            closing = true;
+            flush();
+            return;
+        }
+        lastActiveAt = System.nanoTime();
+        buffer.flip();
+        // pipelined requests in the loop buffer are answered now, the buffer is reused by the next connection
+        while (buffer.hasRemaining() && !closing) {
+            if (!parseRequest(buffer)) {
+                break;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Writes the queued responses as far as the channel takes them
+     */
+    void write() throws IOException {
+        flush();
+    }
+
+    /**
+     * @return the time of the last read or write progress as {@link System#nanoTime()}
+     */
+    long lastActiveAt() {
+        return lastActiveAt;
+    }
+
+    void close() {
+        if (body != null) {
+            body.discard();
+            body = null;
+        }
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * @return true if a request has been received completely and answered
+     */
+    private boolean parseRequest(ByteBuffer buffer) throws IOException {
+        if (parser == null) {
+            parser = new RequestParser();
+        }
+        try {
+            if (!parser.isHeadComplete()) {
+                if (!parser.parseHead(buffer)) {
+                    return false;
+                }
+                body = new RequestBody(server, server.maxInMemoryBody(), parser.isChunked() ? -1 : parser.contentLength());
+            }
+            parser.decodeBody(buffer, body);
+        } catch (HttpServerException e) {
+            responses.add(BAD_REQUEST);
+            closing = true;
+            return false;
+        }
+        if (!parser.isDone()) {
+            return false;
+        }
+
+        final boolean keepAlive = parser.isKeepAlive() && ++served < server.maxRequestsPerConnection();
+        final Request request = body.complete(parser);
+        body = null;
+        parser.reset();
+        final Stub response = server.respond(request);
+        closing = !keepAlive || !response.isPersistent();
+        // the body of the answer to HEAD would be taken for the next response
+        responses.add("HEAD".equals(request.method()) ? response.head(closing) : response.content(closing));
+        return true;
+    }
+
+    private void flush() throws IOException {
+        while (!responses.isEmpty()) {
+            final ByteBuffer response = loop.view(responses.peek());
+            response.limit(response.capacity());
+            response.position(written);
+            final int n = channel.write(response);
+            if (n > 0) {
+                lastActiveAt = System.nanoTime();
+                written += n;
+            }
+            if (response.hasRemaining()) {
+                break;
+            }
+            responses.poll();
+            written = 0;
+        }
+        if (closing && responses.isEmpty()) {
+            close();
+            return;
+        }
+        final int reading = closing || responses.size() >= MAX_QUEUED_RESPONSES ? 0 : SelectionKey.OP_READ;
+        key.interestOps(reading | (responses.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+}
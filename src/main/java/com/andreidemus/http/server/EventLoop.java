@@ -0,0 +1,153 @@
+package com.andreidemus.http.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the connections assigned to it on a single thread. Channels are non-blocking and are read and written
+ * only when the selector reports them ready, so a slow client never holds up the others. Connections without
+ * any progress for the idle timeout are closed.
+ */
+final class EventLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_SWEEP_INTERVAL_MILLIS = 1000;
+    private static final int MAX_VIEWS = 1024;
+
+    private final Responses server;
+    private final Selector selector;
+    private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+    // shared by all connections of the loop, an idle connection keeps no buffer of its own
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    // a view of each shared stub buffer, repositioned for every write, so writing a response allocates nothing
+    private final Map<ByteBuffer, ByteBuffer> views = new IdentityHashMap<>();
+    private volatile boolean running = true;
+
+    EventLoop(Responses server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Hands an accepted channel over to the loop, may be called from any thread
+     */
+    void register(SocketChannel channel) {
+        accepted.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the loop and closes its connections
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        final long idleTimeout = server.idleTimeoutNanos();
+        // idle connections are looked for a few times per timeout, zero makes select wait without a limit
+        final long sweepInterval = idleTimeout == 0
+                ? 0
+                : Math.max(1, Math.min(MAX_SWEEP_INTERVAL_MILLIS, TimeUnit.NANOSECONDS.toMillis(idleTimeout) / 4));
+        long sweptAt = System.nanoTime();
+        try {
+            while (running) {
+                selector.select(sweepInterval);
+                registerAccepted();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                final long now = System.nanoTime();
+                if (idleTimeout > 0 && now - sweptAt >= TimeUnit.MILLISECONDS.toNanos(sweepInterval)) {
+                    sweptAt = now;
+                    closeIdle(now - idleTimeout);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace(); // TODO use logger
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void registerAccepted() {
+        for (SocketChannel channel = accepted.poll(); channel != null; channel = accepted.poll()) {
+            try {
+                channel.configureBlocking(false);
+                final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key, this, server));
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * @param content a read-only buffer shared by the event loops
+     * @return the view of the buffer owned by this loop, its position and limit are set by the caller
+     */
+    ByteBuffer view(ByteBuffer content) {
+        ByteBuffer view = views.get(content);
+        if (view == null) {
+            if (views.size() == MAX_VIEWS) {
+                // views of replaced stubs are dropped from time to time
+                views.clear();
+            }
+            view = content.duplicate();
+            views.put(content, view);
+        }
+        return view;
+    }
+
+    private void closeIdle(long activeSince) {
+        for (SelectionKey key : selector.keys()) {
+            final Connection connection = (Connection) key.attachment();
+            if (key.isValid() && connection.lastActiveAt() - activeSince < 0) {
+                connection.close();
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        final Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.write();
+            }
+        } catch (IOException | RuntimeException e) {
+            // a broken or malformed request only affects its own connection
+            connection.close();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Body of a request being received. It is kept in memory up to a threshold and moved to a temp file once it grows
+ * beyond, so recording large uploads doesn't take the heap.
+ */
+final class RequestBody {
+    private static final int INITIAL_SIZE = 1024;
+
+    private final Responses server;
+    private final int maxInMemory;
+    private byte[] bytes;
+    private int size;
+    private Path file;
+    private FileChannel channel;
+
+    /**
+     * @param contentLength the declared length, -1 for a chunked body
+     */
+    RequestBody(Responses server, int maxInMemory, long contentLength) {
+        this.server = server;
+        this.maxInMemory = maxInMemory;
+        this.bytes = new byte[(int) Math.min(contentLength < 0 ? INITIAL_SIZE : contentLength, maxInMemory)];
+    }
+
+    void write(ByteBuffer src) throws IOException {
+        if (channel == null && src.remaining() > maxInMemory - size) {
+            spill();
+        }
+        if (channel != null) {
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+            return;
+        }
+        if (src.remaining() > bytes.length - size) {
+            bytes = Arrays.copyOf(bytes, (int) Math.min(maxInMemory, Math.max(2L * bytes.length, size + src.remaining())));
+        }
+        final int n = src.remaining();
+        src.get(bytes, size, n);
+        size += n;
+    }
+
+    /**
+     * @return the request with the body in memory or, if it has been spilled, with the file as its body
+     */
+    Request complete(RequestParser parser) throws IOException {
+        if (channel == null) {
+            return parser.request(size == bytes.length ? bytes : Arrays.copyOf(bytes, size));
+        }
+        channel.close();
+        return parser.request(new byte[0]).body(file);
+    }
+
+    /**
+     * Deletes the file of an incomplete body
+     */
+    void discard() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+        server.deleteSpillFile(file);
+    }
+
+    private void spill() throws IOException {
+        file = server.createSpillFile();
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        final ByteBuffer buffered = ByteBuffer.wrap(bytes, 0, size);
+        while (buffered.hasRemaining()) {
+            channel.write(buffered);
+        }
+        bytes = null;
+    }
+}
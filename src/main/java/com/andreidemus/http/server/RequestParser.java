@@ -0,0 +1,430 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Headers;
+import com.andreidemus.http.common.Request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental HTTP/1.1 request parser. Bytes may be fed in arbitrary portions as they arrive from the network,
+ * the state is kept between them. Method, target, names and values are decoded straight from the bytes, no
+ * intermediate line strings are created. Lines may end with CRLF or a bare LF.
+ * <p>
+ * The body is framed by Content-Length or by chunked transfer coding, a request with neither has no body.
+ */
+final class RequestParser {
+    static final int DEFAULT_MAX_LINE_SIZE = 8 * 1024;
+    static final int DEFAULT_MAX_HEAD_SIZE = 64 * 1024;
+
+    private static final String[] METHODS = {"GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE", "CONNECT"};
+    private static final String[] VERSIONS = {"HTTP/1.1", "HTTP/1.0"};
+
+    private enum State {START, METHOD, TARGET, VERSION, HEADER_START, NAME, VALUE, BODY, DONE}
+
+    private enum ChunkState {SIZE, EXTENSION, DATA, DATA_END, TRAILERS}
+
+    private final int maxLineSize;
+    private final int maxHeadSize;
+    private byte[] token = new byte[64];
+    private int tokenLength;
+    private int lineSize;
+    private int headSize;
+
+    private State state = State.START;
+    private String method;
+    private String target;
+    private String version;
+    private String name;
+    private Headers.Builder fields;
+    private Headers headers;
+
+    private boolean chunked;
+    private ChunkState chunkState;
+    private int sizeDigits;
+    private long remaining;
+
+    RequestParser() {
+        this(DEFAULT_MAX_LINE_SIZE, DEFAULT_MAX_HEAD_SIZE);
+    }
+
+    /**
+     * @param maxLineSize the max length of the request line and of each header line
+     * @param maxHeadSize the max length of the whole head including the empty line
+     */
+    RequestParser(int maxLineSize, int maxHeadSize) {
+        this.maxLineSize = maxLineSize;
+        this.maxHeadSize = maxHeadSize;
+    }
+
+    /**
+     * Consumes the request line and headers from the buffer, the bytes after the head are left in it.
+     * Empty lines before the request line are ignored.
+     *
+     * @return true if the head is complete, false if more bytes are needed
+     * @throws HttpServerException if the head is malformed or exceeds a limit
+     */
+    boolean parseHead(ByteBuffer src) {
+        while (!isHeadComplete() && src.hasRemaining()) {
+            final byte b = src.get();
+            if (++headSize > maxHeadSize) {
+                throw new HttpServerException("Request head exceeds " + maxHeadSize + " bytes");
+            }
+            if (b == '\n') {
+                endLine();
+                continue;
+            }
+            if (++lineSize > maxLineSize) {
+                throw new HttpServerException((state == State.METHOD || state == State.TARGET || state == State.VERSION
+                        ? "Request line" : "Header line") + " exceeds " + maxLineSize + " bytes");
+            }
+            switch (state) {
+                case START:
+                    if (b == '\r') {
+                        lineSize = 0;
+                        break;
+                    }
+                    state = State.METHOD;
+                    // fall through
+                case METHOD:
+                    if (b == ' ') {
+                        method = known(METHODS);
+                        state = State.TARGET;
+                    } else {
+                        append(b);
+                    }
+                    break;
+                case TARGET:
+                    if (b != ' ') {
+                        append(b);
+                    } else if (tokenLength > 0) {
+                        target = string();
+                        state = State.VERSION;
+                    }
+                    break;
+                case VERSION:
+                    if (b != '\r' && (b != ' ' || tokenLength > 0)) {
+                        append(b);
+                    }
+                    break;
+                case HEADER_START:
+                    if (b == '\r') {
+                        break;
+                    }
+                    state = State.NAME;
+                    // fall through
+                case NAME:
+                    if (b == ':') {
+                        name = string().trim();
+                        state = State.VALUE;
+                    } else {
+                        append(b);
+                    }
+                    break;
+                case VALUE:
+                    if (b != '\r' && ((b != ' ' && b != '\t') || tokenLength > 0)) {
+                        append(b);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return isHeadComplete();
+    }
+
+    /**
+     * Moves the decoded body bytes from the network buffer to the body, stops at the end of the request
+     *
+     * @throws HttpServerException if the chunked coding is malformed
+     */
+    void decodeBody(ByteBuffer src, RequestBody body) throws IOException {
+        while (state == State.BODY && src.hasRemaining()) {
+            if (!chunked) {
+                transfer(src, body);
+                if (remaining == 0) {
+                    state = State.DONE;
+                }
+            } else if (chunkState == ChunkState.DATA) {
+                transfer(src, body);
+                if (remaining == 0) {
+                    chunkState = ChunkState.DATA_END;
+                }
+            } else {
+                parseChunkLine(src.get());
+            }
+        }
+    }
+
+    boolean isHeadComplete() {
+        return state == State.BODY || state == State.DONE;
+    }
+
+    /**
+     * @return true if the whole request including its body has been consumed
+     */
+    boolean isDone() {
+        return state == State.DONE;
+    }
+
+    /**
+     * @return true if at least one byte of a request line has been consumed
+     */
+    boolean isStarted() {
+        return state != State.START;
+    }
+
+    String method() {
+        return method;
+    }
+
+    /**
+     * @return the request target as it was sent: the path with the query string
+     */
+    String target() {
+        return target;
+    }
+
+    String version() {
+        return version;
+    }
+
+    Headers headers() {
+        return headers;
+    }
+
+    /**
+     * @return the declared body length or -1 if the request has no Content-Length
+     * @throws HttpServerException if Content-Length is not a number
+     */
+    long contentLength() {
+        final String contentLength = headers.first(Headers.CONTENT_LENGTH);
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            final long length = Long.parseLong(contentLength.trim());
+            if (length >= 0) {
+                return length;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new HttpServerException("Invalid Content-Length: " + contentLength);
+    }
+
+    /**
+     * @return true if the body is sent in chunks, its length is not known in advance
+     */
+    boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * @return true if the client allows another request on the connection: HTTP/1.1 unless it sends
+     * "Connection: close", HTTP/1.0 only with "Connection: keep-alive"
+     */
+    boolean isKeepAlive() {
+        final String connection = headers.first(Headers.CONNECTION);
+        if (version == VERSIONS[0]) {
+            return connection == null || !hasToken(connection, "close");
+        }
+        return connection != null && hasToken(connection, "keep-alive");
+    }
+
+    Request request(byte[] body) {
+        return new Request(method, "", target, headers, body);
+    }
+
+    /**
+     * Prepares the parser for the next request on the same connection
+     */
+    void reset() {
+        state = State.START;
+        tokenLength = 0;
+        lineSize = 0;
+        headSize = 0;
+        method = null;
+        target = null;
+        version = null;
+        fields = null;
+        headers = null;
+        chunked = false;
+        chunkState = null;
+        remaining = 0;
+    }
+
+    private void endLine() {
+        lineSize = 0;
+        switch (state) {
+            case START:
+                break;
+            case METHOD:
+            case TARGET:
+                throw new HttpServerException("Start line is invalid");
+            case VERSION:
+                version = known(VERSIONS);
+                if (!version.startsWith("HTTP/") || version.indexOf(' ') >= 0) {
+                    throw new HttpServerException("Start line is invalid, version: " + version);
+                }
+                fields = Headers.builder();
+                state = State.HEADER_START;
+                break;
+            case HEADER_START:
+                headers = fields.build();
+                fields = null;
+                startBody();
+                break;
+            case NAME:
+                // a line without a colon is not a header, it is skipped
+                tokenLength = 0;
+                state = State.HEADER_START;
+                break;
+            case VALUE:
+                while (tokenLength > 0 && (token[tokenLength - 1] == ' ' || token[tokenLength - 1] == '\t')) {
+                    tokenLength--;
+                }
+                fields.add(name, string());
+                state = State.HEADER_START;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void startBody() {
+        final String transferEncoding = headers.first(Headers.TRANSFER_ENCODING);
+        if (transferEncoding != null) {
+            // chunked must be the last coding, otherwise the end of the body can't be found
+            final String[] codings = transferEncoding.split(",");
+            if (!codings[codings.length - 1].trim().equalsIgnoreCase("chunked")) {
+                throw new HttpServerException("Unsupported Transfer-Encoding: " + transferEncoding);
+            }
+            chunked = true;
+            chunkState = ChunkState.SIZE;
+            state = State.BODY;
+            return;
+        }
+        remaining = Math.max(0, contentLength());
+        state = remaining > 0 ? State.BODY : State.DONE;
+    }
+
+    private void parseChunkLine(byte b) {
+        // trailers share the limit with the head
+        if (chunkState == ChunkState.TRAILERS && ++headSize > maxHeadSize) {
+            throw new HttpServerException("Request head exceeds " + maxHeadSize + " bytes");
+        }
+        if (b != '\n' && ++lineSize > maxLineSize) {
+            throw new HttpServerException("Chunk line exceeds " + maxLineSize + " bytes");
+        }
+        switch (chunkState) {
+            case SIZE:
+                final int digit = Character.digit(b, 16);
+                if (digit >= 0) {
+                    if (++sizeDigits > 15) {
+                        throw new HttpServerException("Chunk size is too large");
+                    }
+                    remaining = remaining << 4 | digit;
+                } else if (b == ';' || b == ' ' || b == '\t') {
+                    chunkState = ChunkState.EXTENSION;
+                } else if (b == '\n') {
+                    endChunkSize();
+                } else if (b != '\r') {
+                    throw new HttpServerException("Invalid chunk size");
+                }
+                break;
+            case EXTENSION:
+                if (b == '\n') {
+                    endChunkSize();
+                }
+                break;
+            case DATA_END:
+                if (b == '\n') {
+                    lineSize = 0;
+                    chunkState = ChunkState.SIZE;
+                } else if (b != '\r') {
+                    throw new HttpServerException("Chunk is longer than its size");
+                }
+                break;
+            case TRAILERS:
+                if (b == '\n') {
+                    if (lineSize == 0) {
+                        state = State.DONE;
+                    }
+                    lineSize = 0;
+                } else if (b == '\r') {
+                    lineSize--;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void endChunkSize() {
+        if (sizeDigits == 0) {
+            throw new HttpServerException("Invalid chunk size");
+        }
+        sizeDigits = 0;
+        lineSize = 0;
+        chunkState = remaining == 0 ? ChunkState.TRAILERS : ChunkState.DATA;
+    }
+
+    private void transfer(ByteBuffer src, RequestBody body) throws IOException {
+        final int n = (int) Math.min(remaining, src.remaining());
+        final ByteBuffer slice = src.duplicate();
+        slice.limit(slice.position() + n);
+        body.write(slice);
+        src.position(src.position() + n);
+        remaining -= n;
+    }
+
+    private static boolean hasToken(String value, String token) {
+        for (String it : value.split(",")) {
+            if (it.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(byte b) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, Math.min(2 * token.length, maxLineSize));
+        }
+        token[tokenLength++] = b;
+    }
+
+    private String string() {
+        final String str = new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1);
+        tokenLength = 0;
+        return str;
+    }
+
+    /**
+     * @return the constant equal to the token, so common methods and versions are not allocated for every request
+     */
+    private String known(String[] constants) {
+        for (String constant : constants) {
+            if (matches(constant)) {
+                tokenLength = 0;
+                return constant;
+            }
+        }
+        return string().trim();
+    }
+
+    private boolean matches(String constant) {
+        if (constant.length() != tokenLength) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != constant.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
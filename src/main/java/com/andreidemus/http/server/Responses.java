@@ -2,38 +2,78 @@ package com.andreidemus.http.server;
 
 import com.andreidemus.http.common.Request;
 
-import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
-
-import static java.util.Collections.singletonList;
 
+/**
+ * HTTP server for testing and debugging clients: records the requests it receives and answers them with the stub
+ * of the first matching {@link Route}, or with the stubbed response if no route matches. Connections are accepted
+ * by one thread and served by a fixed number of event loops, each of them a thread with its own selector, so the
+ * number of connections is not limited by the number of threads.
+ */
 public class Responses {
-    private final int numThreads;
-    private final ExecutorService requestsExecutor;
-    private final ExecutorService mainExecutor;
-    private final AtomicInteger count = new AtomicInteger();
-    private final List<Request> requests = Collections.synchronizedList(new LinkedList<>());
-    private volatile AtomicReference<String> stubbedResponse = new AtomicReference<>("HTTP/1.1 200 OK\n" +
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final int numEventLoops;
+    private final int maxInMemoryBody;
+    private final long idleTimeoutNanos;
+    private final int maxRequestsPerConnection;
+    private final Path spillDirectory;
+    private final int maxRecordedRequests;
+    private final boolean dumpRequests;
+    private final Set<Path> spilledBodies = ConcurrentHashMap.newKeySet();
+    // the most recent requests, guarded by itself
+    private final Deque<Request> requests = new ArrayDeque<>();
+    private volatile AtomicReference<Stub> stubbedResponse = new AtomicReference<>(Stub.raw("HTTP/1.1 200 OK\n" +
             "Server: Http Debug1\n" +
             "Content-Type: text/plain; charset=utf-8\n" +
             "Content-Length: 21\n" +
             "\n" +
-            "This is response body");
+            "This is response body"));
+    // replaced as a whole when a route is added, the event loops match against a snapshot
+    private volatile RouteTable routes = RouteTable.EMPTY;
     private int port;
-    private ServerSocket socket;
+    private ServerSocketChannel socket;
+    private EventLoop[] eventLoops;
+    private Thread[] threads;
 
+    /**
+     * Creates a server with an event loop per available processor
+     */
     public Responses() {
-        numThreads = 5;
-        requestsExecutor = Executors.newFixedThreadPool(numThreads);
-        mainExecutor = Executors.newSingleThreadExecutor();
+        this(builder());
+    }
+
+    /**
+     * @param numEventLoops the number of threads serving connections
+     */
+    public Responses(int numEventLoops) {
+        this(builder().eventLoops(numEventLoops));
+    }
+
+    private Responses(Builder builder) {
+        this.numEventLoops = builder.eventLoops;
+        this.maxInMemoryBody = builder.maxInMemoryBody;
+        this.spillDirectory = builder.spillDirectory;
+        this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+        this.maxRequestsPerConnection = builder.maxRequestsPerConnection;
+        this.maxRecordedRequests = builder.maxRecordedRequests;
+        this.dumpRequests = builder.dumpRequests;
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     public int start() throws IOException {
@@ -42,27 +82,22 @@ public class Responses {
 
     public int start(int port) throws IOException {
         socket = openSocket(port);
-        System.out.println("Started server on port " + socket.getLocalPort()); // TODO use logger
-        mainExecutor.submit(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    handleConnection(socket.accept());
-                } catch (IOException e) {
-                    e.printStackTrace(); // TODO use logger
-                }
-            }
-        });
-
-        this.port = socket.getLocalPort();
+        this.port = socket.socket().getLocalPort();
+        System.out.println("Started server on port " + this.port); // TODO use logger
+
+        eventLoops = new EventLoop[numEventLoops];
+        threads = new Thread[numEventLoops + 1];
+        for (int i = 0; i < numEventLoops; i++) {
+            eventLoops[i] = new EventLoop(this);
+            threads[i] = startThread(eventLoops[i], "responses-" + this.port + "-loop-" + i);
+        }
+        threads[numEventLoops] = startThread(this::accept, "responses-" + this.port + "-accept");
 
         return this.port;
     }
 
-
     public void stop() {
         System.out.println("Server is shutting down...");
-        mainExecutor.shutdownNow();
-        requestsExecutor.shutdown();
 
         System.out.println("Closing socket...");
         try {
@@ -70,139 +105,157 @@ public class Responses {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
 
         System.out.println("Waiting for handlers termination...");
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
         try {
-            requestsExecutor.awaitTermination(3, TimeUnit.SECONDS);
+            for (Thread thread : threads) {
+                thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+
+        for (Path body : spilledBodies) {
+            deleteSpillFile(body);
+        }
     }
 
+    /**
+     * @return the recorded requests in the order they were received, at most the last {@code maxRecordedRequests}
+     */
     public Queue<Request> requests() {
-        final Queue<Request> requests = new LinkedList<>();
-        requests.addAll(this.requests);
-        return requests;
+        synchronized (requests) {
+            return new LinkedList<>(requests);
+        }
     }
 
+    /**
+     * Forgets the recorded requests and deletes the files of their large bodies
+     */
+    public void clearRequests() {
+        synchronized (requests) {
+            requests.forEach(this::deleteBody);
+            requests.clear();
+        }
+    }
+
+    /**
+     * @param newStubbedResponse the response to the requests which match no route, as it is written to the socket
+     */
     public void stubResponse(String newStubbedResponse) {
-        this.stubbedResponse.set(newStubbedResponse);
+        this.stubbedResponse.set(Stub.raw(newStubbedResponse));
+    }
+
+    /**
+     * Serves the stub to the requests matching the route. Routes are tried in the order they are added, more
+     * specific path segments first.
+     */
+    public synchronized void stub(Route route, Stub stub) {
+        routes = routes.with(Objects.requireNonNull(route), Objects.requireNonNull(stub));
+    }
+
+    /**
+     * Removes all routes, the stubbed response is served to every request
+     */
+    public synchronized void clearRoutes() {
+        routes = RouteTable.EMPTY;
     }
 
     public int port() {
         return port;
     }
 
-    private void handleConnection(Socket connection) {
-        requestsExecutor.execute(() -> {
-            try {
-                System.out.println(port + " : Connection #" + count.addAndGet(1));
-                final Request request = readRequest(connection.getInputStream());
-                requests.add(request);
-                dumpRequest(request);
+    int maxInMemoryBody() {
+        return maxInMemoryBody;
+    }
 
-                OutputStream out = connection.getOutputStream();
-                out.write(stubbedResponse.get().getBytes());
-                out.flush();
+    long idleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
 
-                connection.close();
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-        });
+    int maxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /**
+     * @return a new temp file for a request body too large to be kept in memory, it is deleted when the server stops
+     */
+    Path createSpillFile() throws IOException {
+        final Path file = spillDirectory == null
+                ? Files.createTempFile("responses-", ".body")
+                : Files.createTempFile(spillDirectory, "responses-", ".body");
+        spilledBodies.add(file);
+        return file;
     }
 
-    private Request readRequest(InputStream in) {
+    /**
+     * Deletes a file created by {@link #createSpillFile()}
+     */
+    void deleteSpillFile(Path file) {
+        if (!spilledBodies.remove(file)) {
+            return;
+        }
         try {
-            final String startLine = readStartLine(in);
-            final String[] parsedStartLine = parseStartLine(startLine);
-            final String method = parsedStartLine[0];
-            final String path = parsedStartLine[1];
-//            final String protocol = parsedStartLine[2]; // TODO add field to Request
-
-            final List<String> unparsedHeaders = readHeaders(in);
-            final Map<String, Set<String>> headers = parseHeaders(unparsedHeaders);
-
-            final byte[] body;
-            int available = in.available();
-            if (available > 0) {
-                byte[] bytes = new byte[available];
-                int actuallyRead = in.read(bytes);
-                if (actuallyRead != available) {
-                    throw new IOException("Request body was not read completely.");
-                }
-                body = bytes;
-            } else {
-                body = new byte[]{};
-            }
-            return new Request(method, "", path, headers, body);
+            Files.deleteIfExists(file);
         } catch (IOException e) {
-            throw new UncheckedIOException(e);
+            e.printStackTrace();
         }
     }
 
-    private String readStartLine(InputStream in) throws IOException {
-        final DataInput dataInput = new DataInputStream(in);
-
-        String line = dataInput.readLine();
-        if (line == null)
-            throw new IOException("Request does not have a start line.");
-
-        /*
-        From the HTTP/1.1 spec:
-        "In the interest of robustness, servers SHOULD ignore any empty line(s) received where
-         a Request-Line is expected. In other words, if the server is reading the protocol stream
-         at the beginning of a message and receives a CRLF first, it should ignore the CRLF"
-         */
-        while (line.trim().isEmpty()) {
-            line = dataInput.readLine();
-            if (line == null)
-                throw new IOException("Request does not have a start line.");
+    private void deleteBody(Request request) {
+        if (request.hasBodySource() && request.bodySource().path() != null) {
+            deleteSpillFile(request.bodySource().path());
         }
-
-        return line;
     }
 
-    private String[] parseStartLine(String startLine) {
-        String[] parsed = startLine.split("[ ]+");
-
-        // Validate
-        if (parsed.length != 3) {
-            throw new HttpServerException("Start line is invalid. Start line:" + startLine);
+    /**
+     * Records the request, called by the event loops
+     *
+     * @return the response to send
+     */
+    Stub respond(Request request) {
+        synchronized (requests) {
+            if (requests.size() == maxRecordedRequests) {
+                // the body of a request no longer recorded would stay on disk until the server stops
+                deleteBody(requests.removeFirst());
+            }
+            requests.addLast(request);
         }
-        //TODO check request method and protocol
-
-        return parsed;
+        if (dumpRequests) {
+            dumpRequest(request);
+        }
+        final Stub stub = routes.match(request);
+        return stub == null ? stubbedResponse.get() : stub;
     }
 
-    private List<String> readHeaders(InputStream in) throws IOException {
-        List<String> headers = new ArrayList<>();
-
-        final DataInput dataInput = new DataInputStream(in);
-
-        // TODO replace with Stream for Java9 (use `takeWhile`)
-        for (String line = dataInput.readLine(); line != null && !line.trim().isEmpty(); line = dataInput.readLine()) {
-            headers.add(line);
+    /**
+     * Distributes accepted connections over the event loops in turn
+     */
+    private void accept() {
+        int next = 0;
+        while (socket.isOpen()) {
+            try {
+                final SocketChannel channel = socket.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace(); // TODO use logger
+            }
         }
-
-        return headers;
     }
 
-    private Map<String, Set<String>> parseHeaders(List<String> headers) {
-        return headers.stream()
-                      .map(it -> it.split(":"))
-                      .filter(it -> it.length == 2)
-                      .collect(Collectors.toMap(
-                              it -> it[0].trim(),
-                              it -> new HashSet<>(singletonList(it[1].trim())),
-                              (a, b) -> { // TODO improve performance
-                                  Set<String> result = new HashSet<>();
-                                  result.addAll(a);
-                                  result.addAll(b);
-                                  return result;
-                              },
-                              () -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER)
-                      ));
+    private static Thread startThread(Runnable task, String name) {
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
     }
 
     private void dumpRequest(Request request) { // TODO use logger
@@ -210,12 +263,115 @@ public class Responses {
         System.out.flush();
     }
 
-    private ServerSocket openSocket(int port) {
+    private ServerSocketChannel openSocket(int port) throws IOException {
         System.out.println("Trying to start server on port " + port); // TODO use logger
+        final ServerSocketChannel channel = ServerSocketChannel.open();
         try {
-            return new ServerSocket(port);
+            return channel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
         } catch (IOException e) {
+            channel.close();
             return openSocket(port + 1);
         }
     }
+
+    public static final class Builder {
+        private int eventLoops = Runtime.getRuntime().availableProcessors();
+        private int maxInMemoryBody = 1024 * 1024;
+        private Path spillDirectory;
+        private Duration idleTimeout = Duration.ofSeconds(60);
+        private int maxRequestsPerConnection = 1000;
+        private int maxRecordedRequests = 10_000;
+        private boolean dumpRequests;
+
+        private Builder() {
+        }
+
+        /**
+         * @param eventLoops the number of threads serving connections, one per available processor by default
+         * @return this builder
+         */
+        public Builder eventLoops(int eventLoops) {
+            if (eventLoops < 1) {
+                throw new IllegalArgumentException("At least one event loop is required");
+            }
+            this.eventLoops = eventLoops;
+            return this;
+        }
+
+        /**
+         * @param maxInMemoryBody the size of a request body above which it is written to a temp file instead of
+         *                        being kept in memory, 1 MB by default. Such a request has the file as its
+         *                        {@link Request#bodySource()}.
+         * @return this builder
+         */
+        public Builder maxInMemoryBody(int maxInMemoryBody) {
+            if (maxInMemoryBody < 0) {
+                throw new IllegalArgumentException("maxInMemoryBody must not be negative");
+            }
+            this.maxInMemoryBody = maxInMemoryBody;
+            return this;
+        }
+
+        /**
+         * @param spillDirectory the directory for the temp files of large bodies, the default temp directory if not set
+         * @return this builder
+         */
+        public Builder spillDirectory(Path spillDirectory) {
+            this.spillDirectory = Objects.requireNonNull(spillDirectory);
+            return this;
+        }
+
+        /**
+         * @param idleTimeout the time after which a connection without any reads or writes is closed, 60 seconds
+         *                    by default, zero means no timeout
+         * @return this builder
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            if (idleTimeout.isNegative()) {
+                throw new IllegalArgumentException("idleTimeout must not be negative");
+            }
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * @param maxRequestsPerConnection the number of requests after which a connection is closed, the last
+         *                                 response has "Connection: close", 1000 by default
+         * @return this builder
+         */
+        public Builder maxRequestsPerConnection(int maxRequestsPerConnection) {
+            if (maxRequestsPerConnection < 1) {
+                throw new IllegalArgumentException("maxRequestsPerConnection must be positive");
+            }
+            this.maxRequestsPerConnection = maxRequestsPerConnection;
+            return this;
+        }
+
+        /**
+         * @param maxRecordedRequests the number of the most recent requests kept for {@link #requests()}, older
+         *                            ones are dropped, 10 000 by default
+         * @return this builder
+         */
+        public Builder maxRecordedRequests(int maxRecordedRequests) {
+            if (maxRecordedRequests < 1) {
+                throw new IllegalArgumentException("maxRecordedRequests must be positive");
+            }
+            this.maxRecordedRequests = maxRecordedRequests;
+            return this;
+        }
+
+        /**
+         * @param dumpRequests true to print every request to stdout, off by default as printing blocks the event
+         *                     loop serving the connection
+         * @return this builder
+         */
+        public Builder dumpRequests(boolean dumpRequests) {
+            this.dumpRequests = dumpRequests;
+            return this;
+        }
+
+        public Responses build() {
+            return new Responses(this);
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Headers;
+import com.andreidemus.http.common.Request;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Condition for serving a {@link Stub}: the method, the path pattern and optionally query params and headers which
+ * the request must have. In the pattern {@code *} matches one path segment and a trailing {@code **} matches the rest
+ * of the path, e.g. {@code /users/*}{@code /orders} or {@code /static/**}.
+ */
+public final class Route {
+    static final String ANY_SEGMENT = "*";
+    static final String ANY_PATH = "**";
+
+    private final String method;
+    private final String path;
+    private final String[] segments;
+    // encoded the same way as clients send them, "name=value"
+    private final String[] queryParams;
+    private final String[] headerNames;
+    private final String[] headerValues;
+
+    private Route(Builder builder) {
+        this.method = builder.method;
+        this.path = builder.path;
+        this.segments = builder.segments;
+        this.queryParams = builder.queryParams.toArray(new String[0]);
+        this.headerNames = builder.headerNames.toArray(new String[0]);
+        this.headerValues = builder.headerValues.toArray(new String[0]);
+    }
+
+    /**
+     * @param method the method of the request, "*" for any method
+     * @param path   the path pattern
+     */
+    public static Builder builder(String method, String path) {
+        return new Builder(method, path);
+    }
+
+    public static Route get(String path) {
+        return builder("GET", path).build();
+    }
+
+    public static Route post(String path) {
+        return builder("POST", path).build();
+    }
+
+    public static Route any(String path) {
+        return builder("*", path).build();
+    }
+
+    String[] segments() {
+        return segments;
+    }
+
+    /**
+     * Checks the conditions except the path, which is matched by the {@link RouteTable}
+     *
+     * @param query the index of the query string in the target, -1 if there is none
+     */
+    boolean matches(Request request, String target, int query) {
+        if (method != null && !method.equals(request.method())) {
+            return false;
+        }
+        for (String param : queryParams) {
+            if (!hasQueryParam(target, query, param)) {
+                return false;
+            }
+        }
+        final Headers headers = request.headerFields();
+        for (int i = 0; i < headerNames.length; i++) {
+            if (!hasHeader(headers, headerNames[i], headerValues[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return (method == null ? "*" : method) + " " + path
+                + (queryParams.length == 0 ? "" : " ?" + String.join("&", queryParams))
+                + (headerNames.length == 0 ? "" : " " + Arrays.toString(headerNames));
+    }
+
+    private static boolean hasQueryParam(String target, int query, String param) {
+        if (query < 0) {
+            return false;
+        }
+        for (int start = query + 1; start < target.length(); ) {
+            int end = target.indexOf('&', start);
+            if (end < 0) {
+                end = target.length();
+            }
+            if (end - start == param.length() && target.regionMatches(start, param, 0, param.length())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static boolean hasHeader(Headers headers, String name, String value) {
+        for (int i = 0; i < headers.size(); i++) {
+            if (headers.name(i).equalsIgnoreCase(name) && headers.value(i).equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static final class Builder {
+        private final String method;
+        private final String path;
+        private final String[] segments;
+        private final List<String> queryParams = new ArrayList<>();
+        private final List<String> headerNames = new ArrayList<>();
+        private final List<String> headerValues = new ArrayList<>();
+
+        private Builder(String method, String path) {
+            Objects.requireNonNull(method);
+            if (!path.startsWith("/")) {
+                throw new IllegalArgumentException("Path must start with '/': " + path);
+            }
+            this.method = method.equals("*") ? null : method;
+            this.path = path;
+            this.segments = path.length() == 1 ? new String[0] : path.substring(1).split("/", -1);
+            for (int i = 0; i < segments.length - 1; i++) {
+                if (segments[i].equals(ANY_PATH)) {
+                    throw new IllegalArgumentException("'**' is only allowed at the end of the path: " + path);
+                }
+            }
+        }
+
+        /**
+         * @param name  the param name, as it is before encoding
+         * @param value the param value, as it is before encoding
+         * @return this builder
+         */
+        public Builder queryParam(String name, Object value) {
+            queryParams.add(encode(name) + "=" + encode(value.toString()));
+            return this;
+        }
+
+        /**
+         * @param name  the header name, case-insensitive
+         * @param value the header value, compared exactly with each value of the header
+         * @return this builder
+         */
+        public Builder header(String name, String value) {
+            headerNames.add(Headers.canonicalName(Objects.requireNonNull(name)));
+            headerValues.add(Objects.requireNonNull(value));
+            return this;
+        }
+
+        public Route build() {
+            return new Route(this);
+        }
+
+        private static String encode(String str) {
+            try {
+                return URLEncoder.encode(str, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Request;
+
+import java.util.Arrays;
+
+/**
+ * Immutable trie of routes by path segment. A path is matched by comparing regions of the request target with the
+ * segments of the nodes, so matching creates no substrings and allocates nothing. Literal segments are tried before
+ * {@code *}, {@code *} before {@code **}, and the routes of a node in the order they were added.
+ */
+final class RouteTable {
+    static final RouteTable EMPTY = new RouteTable(new Node(""));
+
+    private final Node root;
+
+    private RouteTable(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @return a new table with the route added after the existing ones
+     */
+    RouteTable with(Route route, Stub stub) {
+        final Node root = this.root.copy();
+        Node node = root;
+        final String[] segments = route.segments();
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].equals(Route.ANY_PATH)) {
+                node.rest = append(node.rest, route, stub);
+                return new RouteTable(root);
+            }
+            node = node.child(segments[i]);
+        }
+        node.routes = append(node.routes, route, stub);
+        return new RouteTable(root);
+    }
+
+    /**
+     * @return the stub of the first matching route or null if no route matches
+     */
+    Stub match(Request request) {
+        final String target = request.path();
+        final int query = target.indexOf('?');
+        final int end = query < 0 ? target.length() : query;
+        return match(root, request, target, target.startsWith("/") ? 1 : 0, end, query);
+    }
+
+    private static Stub match(Node node, Request request, String target, int start, int end, int query) {
+        if (start >= end) {
+            final Stub stub = first(node.routes, request, target, query);
+            if (stub != null) {
+                return stub;
+            }
+        } else {
+            int segmentEnd = target.indexOf('/', start);
+            if (segmentEnd < 0 || segmentEnd > end) {
+                segmentEnd = end;
+            }
+            final int length = segmentEnd - start;
+            for (Node child : node.children) {
+                if (child.segment.length() == length && target.regionMatches(start, child.segment, 0, length)) {
+                    final Stub stub = match(child, request, target, segmentEnd + 1, end, query);
+                    if (stub != null) {
+                        return stub;
+                    }
+                }
+            }
+            if (node.wildcard != null && length > 0) {
+                final Stub stub = match(node.wildcard, request, target, segmentEnd + 1, end, query);
+                if (stub != null) {
+                    return stub;
+                }
+            }
+        }
+        return first(node.rest, request, target, query);
+    }
+
+    private static Stub first(Entry[] entries, Request request, String target, int query) {
+        for (Entry entry : entries) {
+            if (entry.route.matches(request, target, query)) {
+                return entry.stub;
+            }
+        }
+        return null;
+    }
+
+    private static Entry[] append(Entry[] entries, Route route, Stub stub) {
+        final Entry[] appended = Arrays.copyOf(entries, entries.length + 1);
+        appended[entries.length] = new Entry(route, stub);
+        return appended;
+    }
+
+    private static final class Entry {
+        private final Route route;
+        private final Stub stub;
+
+        private Entry(Route route, Stub stub) {
+            this.route = route;
+            this.stub = stub;
+        }
+    }
+
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final Entry[] NO_ENTRIES = new Entry[0];
+
+        private final String segment;
+        private Node[] children = NO_CHILDREN;
+        private Node wildcard;
+        // routes ending at this node
+        private Entry[] routes = NO_ENTRIES;
+        // routes ending with ** at this node, they match any rest of the path including none
+        private Entry[] rest = NO_ENTRIES;
+
+        private Node(String segment) {
+            this.segment = segment;
+        }
+
+        /**
+         * @return a deep copy, the table a copy is made of stays unchanged
+         */
+        private Node copy() {
+            final Node copy = new Node(segment);
+            copy.children = new Node[children.length];
+            for (int i = 0; i < children.length; i++) {
+                copy.children[i] = children[i].copy();
+            }
+            copy.wildcard = wildcard == null ? null : wildcard.copy();
+            copy.routes = routes;
+            copy.rest = rest;
+            return copy;
+        }
+
+        private Node child(String segment) {
+            if (segment.equals(Route.ANY_SEGMENT)) {
+                if (wildcard == null) {
+                    wildcard = new Node(segment);
+                }
+                return wildcard;
+            }
+            for (Node child : children) {
+                if (child.segment.equals(segment)) {
+                    return child;
+                }
+            }
+            final Node child = new Node(segment);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Headers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Response served by {@link Responses}, serialized once into an immutable direct buffer when it is built. Serving it
+ * only copies the buffer to the socket. A stub built with {@link #builder(int)} always has the Content-Length of its
+ * body, so the connection can be kept open after it. The answer to HEAD is the head of the same bytes.
+ */
+public final class Stub {
+    private final ByteBuffer keepAlive;
+    private final ByteBuffer close;
+    // the heads of the above, sharing their content
+    private final ByteBuffer keepAliveHead;
+    private final ByteBuffer closeHead;
+    private final boolean persistent;
+
+    private Stub(ByteBuffer keepAlive, int keepAliveHeadLength, ByteBuffer close, int closeHeadLength, boolean persistent) {
+        this.keepAlive = keepAlive;
+        this.close = close;
+        this.keepAliveHead = head(keepAlive, keepAliveHeadLength);
+        this.closeHead = close == keepAlive ? keepAliveHead : head(close, closeHeadLength);
+        this.persistent = persistent;
+    }
+
+    /**
+     * @param status the status code of the response
+     */
+    public static Builder builder(int status) {
+        return new Builder(status);
+    }
+
+    /**
+     * The response as it is written, e.g. from {@link Responses#stubResponse(String)}. Its head is inspected to find
+     * out whether the connection can be kept open after it: a response without Content-Length or chunked coding ends
+     * when the connection is closed.
+     */
+    static Stub raw(String response) {
+        final ByteBuffer bytes = direct(response.getBytes(StandardCharsets.UTF_8));
+        final int statusLineEnd = response.indexOf('\n');
+        int headEnd = response.indexOf("\n\n");
+        if (headEnd < 0 || response.indexOf("\n\r\n") >= 0 && response.indexOf("\n\r\n") < headEnd) {
+            headEnd = response.indexOf("\n\r\n");
+        }
+        if (statusLineEnd < 0 || headEnd < 0) {
+            return new Stub(bytes, bytes.capacity(), bytes, bytes.capacity(), false);
+        }
+        final int headLength = utf8Length(response.substring(0, headEnd + (response.charAt(headEnd + 1) == '\r' ? 3 : 2)));
+
+        boolean framed = hasNoBody(response.substring(0, statusLineEnd));
+        boolean closes = false;
+        for (String line : response.substring(statusLineEnd + 1, headEnd).split("\n")) {
+            final int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            final String name = line.substring(0, colon).trim();
+            final String value = line.substring(colon + 1).trim().toLowerCase(Locale.ROOT);
+            if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Transfer-Encoding") && value.endsWith("chunked")) {
+                framed = true;
+            } else if (name.equalsIgnoreCase("Connection") && value.contains("close")) {
+                closes = true;
+            }
+        }
+        if (!framed || closes) {
+            return new Stub(bytes, headLength, bytes, headLength, false);
+        }
+        // the server announces that it closes the connection, e.g. after the last request allowed on it
+        final String eol = statusLineEnd > 0 && response.charAt(statusLineEnd - 1) == '\r' ? "\r\n" : "\n";
+        final String connectionClose = "Connection: close" + eol;
+        final String withClose = response.substring(0, statusLineEnd + 1) + connectionClose + response.substring(statusLineEnd + 1);
+        return new Stub(bytes, headLength, direct(withClose.getBytes(StandardCharsets.UTF_8)), headLength + connectionClose.length(), true);
+    }
+
+    /**
+     * @return false if the connection has to be closed after the response
+     */
+    boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * @param close true if the connection is closed after the response
+     * @return the read-only bytes of the response shared by all connections, it must be written through a view
+     */
+    ByteBuffer content(boolean close) {
+        return close ? this.close : keepAlive;
+    }
+
+    /**
+     * @param close true if the connection is closed after the response
+     * @return the read-only bytes of the response to a HEAD request, the same head without the body
+     */
+    ByteBuffer head(boolean close) {
+        return close ? closeHead : keepAliveHead;
+    }
+
+    @Override
+    public String toString() {
+        final ByteBuffer content = keepAlive.duplicate();
+        final byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static ByteBuffer head(ByteBuffer content, int length) {
+        final ByteBuffer head = content.duplicate();
+        head.limit(length);
+        return head.slice();
+    }
+
+    private static int utf8Length(String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static boolean hasNoBody(String statusLine) {
+        final String[] parts = statusLine.trim().split(" +");
+        return parts.length > 1 && (parts[1].startsWith("1") || parts[1].equals("204") || parts[1].equals("304"));
+    }
+
+    private static String reasonPhrase(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 201: return "Created";
+            case 202: return "Accepted";
+            case 204: return "No Content";
+            case 301: return "Moved Permanently";
+            case 302: return "Found";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 409: return "Conflict";
+            case 429: return "Too Many Requests";
+            case 500: return "Internal Server Error";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "";
+        }
+    }
+
+    public static final class Builder {
+        private final int status;
+        private String reason;
+        private final Headers.Builder headers = Headers.builder();
+        private byte[] body = new byte[0];
+
+        private Builder(int status) {
+            if (status < 100 || status > 999) {
+                throw new IllegalArgumentException("Invalid status: " + status);
+            }
+            this.status = status;
+            this.reason = reasonPhrase(status);
+        }
+
+        /**
+         * @param reason the reason phrase, the standard one for common statuses by default
+         * @return this builder
+         */
+        public Builder reason(String reason) {
+            this.reason = Objects.requireNonNull(reason);
+            return this;
+        }
+
+        /**
+         * @param name  the header name, Content-Length and Transfer-Encoding are ignored as the framing is set
+         *              by the builder
+         * @param value the header value
+         * @return this builder
+         */
+        public Builder header(String name, String value) {
+            headers.add(name, value);
+            return this;
+        }
+
+        /**
+         * @return this builder
+         */
+        public Builder body(byte[] body) {
+            this.body = body.clone();
+            return this;
+        }
+
+        /**
+         * @param body the body, encoded as UTF-8
+         * @return this builder
+         */
+        public Builder body(String body) {
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+            return this;
+        }
+
+        public Stub build() {
+            final Headers fields = headers.remove(Headers.CONTENT_LENGTH)
+                                          .remove(Headers.TRANSFER_ENCODING)
+                                          .build();
+            final boolean hasBody = status >= 200 && status != 204 && status != 304;
+            final StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+            boolean closes = false;
+            for (int i = 0; i < fields.size(); i++) {
+                head.append(fields.name(i)).append(": ").append(fields.value(i)).append("\r\n");
+                closes |= Headers.CONNECTION == fields.name(i) && fields.value(i).toLowerCase(Locale.ROOT).contains("close");
+            }
+            if (hasBody) {
+                head.append("Content-Length: ").append(body.length).append("\r\n");
+            }
+            final String keepAliveHead = head + "\r\n";
+            final ByteBuffer keepAlive = serialize(keepAliveHead, hasBody);
+            if (closes) {
+                return new Stub(keepAlive, keepAliveHead.length(), keepAlive, keepAliveHead.length(), false);
+            }
+            final String closeHead = head + "Connection: close\r\n\r\n";
+            return new Stub(keepAlive, keepAliveHead.length(), serialize(closeHead, hasBody), closeHead.length(), true);
+        }
+
+        private ByteBuffer serialize(String head, boolean hasBody) {
+            final byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(headBytes.length + (hasBody ? body.length : 0));
+            buffer.put(headBytes);
+            if (hasBody) {
+                buffer.put(body);
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+}
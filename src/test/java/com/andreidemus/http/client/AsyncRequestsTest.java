@@ -0,0 +1,63 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class AsyncRequestsTest extends RequestsTest {
+    @Test
+    public void testAsyncRequests() throws Exception {
+        final List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(Requests.postAsync(new Request(getUrl("/async")).body("body " + i)));
+        }
+
+        for (CompletableFuture<Response> future : futures) {
+            assertThat(future.join().status(), is(200));
+        }
+        assertThat(server.requests().size(), is(10));
+        assertThat(server.requests().poll().method(), is("POST"));
+    }
+
+    @Test
+    public void testCustomExecutor() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        final Executor executor = command -> {
+            executed.incrementAndGet();
+            command.run();
+        };
+        final RequestsClient client = RequestsClient.builder()
+                                                    .executor(executor)
+                                                    .build();
+
+        final Response resp = client.getAsync(new Request(getUrl("/custom-executor"))).join();
+
+        assertThat(resp.text(), is("This is response body"));
+        assertThat(executed.get(), is(1));
+    }
+
+    @Test
+    public void testFailedRequestCompletesExceptionally() throws Exception {
+        final RequestsClient client = new RequestsClient();
+        server.stubResponse("not a http response");
+
+        try {
+            client.headAsync(new Request(getUrl("/failed"))).join();
+            fail("Exception expected");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(HttpClientException.class));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.BodySource;
+import com.andreidemus.http.common.Headers;
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class CoalescingTest extends RequestsTest {
+    @Test
+    public void testIdenticalRequestsShareExchange() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger exchanges = new AtomicInteger();
+        final Response response = new Response(200, "OK", "shared".getBytes(), new LinkedHashMap<>());
+
+        final List<CompletableFuture<Response>> callers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            callers.add(CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+                exchanges.incrementAndGet();
+                await(release);
+                return response;
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        final List<Response> responses = new ArrayList<>();
+        for (CompletableFuture<Response> caller : callers) {
+            responses.add(caller.get(5, TimeUnit.SECONDS));
+        }
+        assertThat(exchanges.get(), is(1));
+        // every caller has its own response, a change to one body is not seen by the others
+        Arrays.fill(response.body(), (byte) 'x');
+        assertThat(responses.stream().filter(it -> it != response).count(), is(3L));
+        responses.stream()
+                 .filter(it -> it != response)
+                 .forEach(it -> assertThat(it.text(), is("shared")));
+    }
+
+    @Test
+    public void testFailureIsShared() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight();
+        final CountDownLatch release = new CountDownLatch(1);
+        final HttpClientException error = new HttpClientException("Connection refused");
+
+        final CompletableFuture<Response> first = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            await(release);
+            throw error;
+        }));
+        Thread.sleep(50);
+        final CompletableFuture<Response> second = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            throw new AssertionError("The second request must not be sent");
+        }));
+        Thread.sleep(50);
+        release.countDown();
+
+        for (CompletableFuture<Response> caller : Arrays.asList(first, second)) {
+            try {
+                caller.join();
+                fail("HttpClientException expected");
+            } catch (Exception e) {
+                assertThat(e.getCause(), is(sameInstance(error)));
+            }
+        }
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("Accept", singletonList("text/plain"));
+        headers.put("User-Agent", singletonList("test"));
+        final Map<String, List<String>> reordered = new LinkedHashMap<>();
+        reordered.put("user-agent", singletonList("test"));
+        reordered.put("ACCEPT", singletonList("text/plain"));
+        final Map<String, List<String>> other = new LinkedHashMap<>();
+        other.put("Accept", singletonList("application/json"));
+        other.put("User-Agent", singletonList("test"));
+
+        assertThat(SingleFlight.key(prepared("GET", headers, null)), is(SingleFlight.key(prepared("GET", reordered, null))));
+        assertThat(SingleFlight.key(prepared("GET", headers, null)), is(not(SingleFlight.key(prepared("GET", other, null)))));
+        assertThat(SingleFlight.key(prepared("GET", headers, null)), is(not(SingleFlight.key(prepared("HEAD", headers, null)))));
+        assertThat(SingleFlight.key(prepared("POST", headers, null)), is(nullValue()));
+        assertThat(SingleFlight.key(prepared("GET", headers, BodySource.of(new byte[]{1}))), is(nullValue()));
+    }
+
+    @Test
+    public void testCompletedRequestIsNotShared() throws Exception {
+        final RequestsClient client = RequestsClient.builder()
+                                                    .coalescing(true)
+                                                    .build();
+
+        assertThat(client.get(new Request(getUrl("/coalesced"))).text(), is("This is response body"));
+        assertThat(client.get(new Request(getUrl("/coalesced"))).status(), is(200));
+
+        assertThat(server.requests().size(), is(2));
+    }
+
+    private static PreparedRequest prepared(String method, Map<String, List<String>> headers, BodySource body) throws Exception {
+        return new PreparedRequest(method, new URL("http://example.com/items?page=2"), Headers.of(headers), body, false, null, null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
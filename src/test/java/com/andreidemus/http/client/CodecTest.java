@@ -0,0 +1,182 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.BodyCodec;
+import com.andreidemus.http.common.BodyCodecs;
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class CodecTest extends RequestsTest {
+    private static final BodyCodecs CODECS = BodyCodecs.of(new LinesCodec(), BodyCodecs.TEXT);
+    private static final int LINES = 20000;
+
+    @Test
+    public void testObjectBodyIsWrittenInChunks() throws Exception {
+        assertBodyIsWrittenInChunks(new RequestsClient());
+    }
+
+    @Test
+    public void testObjectBodyIsWrittenInChunksByUrlConnection() throws Exception {
+        assertBodyIsWrittenInChunks(RequestsClient.builder()
+                                                  .engine(Engine.URL_CONNECTION)
+                                                  .build());
+    }
+
+    @Test
+    public void testResponseBodyIsReadByCodec() throws Exception {
+        server.stubResponse("HTTP/1.1 200 OK\r\n" +
+                "Content-Type: application/x-lines\r\n" +
+                "Content-Length: 12\r\n" +
+                "\r\n" +
+                "first\nsecond");
+        final RequestsClient client = new RequestsClient();
+
+        final Response resp = client.stream(new Request(getUrl("/lines")));
+
+        assertThat(resp.body(List.class, CODECS).toString(), is("[first, second]"));
+        assertThat(client.poolStats().leased(), is(0));
+    }
+
+    @Test
+    public void testTextCodecUsesResponseCharset() throws Exception {
+        final Response resp = new Response(200, "OK", "café".getBytes(StandardCharsets.ISO_8859_1),
+                singletonMap("Content-Type", singletonList("text/plain; charset=ISO-8859-1")));
+
+        assertThat(resp.body(String.class, CODECS), is("café"));
+    }
+
+    @Test
+    public void testCodecIsChosenByContentType() throws Exception {
+        final Request request = new Request(getUrl("/json"));
+        try {
+            request.body("value", CODECS);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            request.header("Content-Type", "application/json").body("value", CODECS);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertThat(CODECS.forContentType("TEXT/Plain; charset=UTF-8"), is(BodyCodecs.TEXT));
+    }
+
+    private void assertBodyIsWrittenInChunks(RequestsClient client) throws Exception {
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < LINES; i++) {
+            lines.add("line " + i);
+        }
+
+        try (ServerSocket capture = new ServerSocket(0)) {
+            final CompletableFuture<String[]> raw = CompletableFuture.supplyAsync(() -> readChunkedRequest(capture));
+
+            final Response resp = client.post(new Request("http://127.0.0.1:" + capture.getLocalPort())
+                    .header("Content-Type", "application/x-lines")
+                    .body(lines, CODECS));
+
+            assertThat(resp.status(), is(200));
+            final String[] request = raw.get(5, TimeUnit.SECONDS);
+            assertThat(request[0], containsString("Transfer-Encoding: chunked\r\n"));
+            assertThat(Integer.parseInt(request[1]) > 1, is(true));
+            assertThat(request[2], is(String.join("\n", lines) + "\n"));
+        }
+    }
+
+    /**
+     * @return the head, the number of chunks and the decoded body
+     */
+    private static String[] readChunkedRequest(ServerSocket capture) {
+        try (Socket socket = capture.accept()) {
+            final InputStream in = socket.getInputStream();
+            final StringBuilder head = new StringBuilder();
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                head.append(line).append("\r\n");
+            }
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int chunks = 0;
+            for (int size = Integer.parseInt(readLine(in), 16); size > 0; size = Integer.parseInt(readLine(in), 16)) {
+                final byte[] chunk = new byte[size];
+                for (int read = 0; read < size; ) {
+                    final int n = in.read(chunk, read, size - read);
+                    if (n < 0) {
+                        throw new IOException("Unexpected end of chunk");
+                    }
+                    read += n;
+                }
+                body.write(chunk);
+                readLine(in);
+                chunks++;
+            }
+            readLine(in);
+            socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            socket.getOutputStream().flush();
+            return new String[]{head.toString(), String.valueOf(chunks), new String(body.toByteArray(), StandardCharsets.UTF_8)};
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new IOException("Unexpected end of request");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Writes a list of strings one per line and reads the lines back as a list
+     */
+    private static class LinesCodec implements BodyCodec {
+        @Override
+        public boolean supports(String mediaType) {
+            return mediaType.equals("application/x-lines");
+        }
+
+        @Override
+        public void write(Object value, OutputStream out, Charset charset) throws IOException {
+            for (Object line : (List<?>) value) {
+                out.write((line + "\n").getBytes(charset));
+            }
+        }
+
+        @Override
+        public <T> T read(InputStream in, Class<T> type, Charset charset) throws IOException {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset));
+            final List<String> lines = new ArrayList<>();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+            return type.cast(lines);
+        }
+    }
+}
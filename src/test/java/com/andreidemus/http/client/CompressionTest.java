@@ -0,0 +1,204 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class CompressionTest extends RequestsTest {
+    private static final String TEXT = "{\"compressed\": \"json\"}";
+    private static final int LARGE_TEXT_SIZE = 200 * 1000;
+
+    @Test
+    public void testGzip() throws Exception {
+        final byte[] text = largeText();
+        assertThat(inflate(gzip(text), true, 7), is(text));
+    }
+
+    @Test
+    public void testZlibDeflate() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(largeText());
+        }
+        assertThat(inflate(out.toByteArray(), false, 1024), is(largeText()));
+    }
+
+    @Test
+    public void testRawDeflate() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            deflate.write(largeText());
+        }
+        assertThat(inflate(out.toByteArray(), false, 1024), is(largeText()));
+    }
+
+    @Test
+    public void testCorruptGzip() throws Exception {
+        final byte[] gzip = gzip(TEXT.getBytes(StandardCharsets.UTF_8));
+        gzip[gzip.length - 8]++;
+        try {
+            inflate(gzip, true, 1024);
+            fail("CRC mismatch expected");
+        } catch (ZipException e) {
+            assertThat(e.getMessage(), containsString("CRC"));
+        }
+    }
+
+    @Test
+    public void testGzipResponse() throws Exception {
+        final RequestsClient client = RequestsClient.builder()
+                                                    .compression(true)
+                                                    .build();
+        try (ServerSocket server = new ServerSocket(0)) {
+            final CompletableFuture<String> head = serve(server, gzip(TEXT.getBytes(StandardCharsets.UTF_8)));
+
+            final Response resp = client.get(new Request("http://127.0.0.1:" + server.getLocalPort()));
+
+            assertThat(resp.text(), is(TEXT));
+            assertThat(resp.header("Content-Encoding"), is(empty()));
+            assertThat(head.get(5, TimeUnit.SECONDS), containsString("Accept-Encoding: gzip, deflate\r\n"));
+        }
+    }
+
+    @Test
+    public void testStreamedGzipResponse() throws Exception {
+        final RequestsClient client = RequestsClient.builder()
+                                                    .compression(true)
+                                                    .build();
+        try (ServerSocket server = new ServerSocket(0)) {
+            serve(server, gzip(largeText()));
+
+            try (Response resp = client.stream(new Request("http://127.0.0.1:" + server.getLocalPort()));
+                 InputStream body = resp.bodyStream()) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[4096];
+                for (int read = body.read(buffer); read >= 0; read = body.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+                assertThat(out.toByteArray(), is(largeText()));
+            }
+        }
+    }
+
+    @Test
+    public void testResponseIsNotDecodedByDefault() throws Exception {
+        final byte[] gzip = gzip(TEXT.getBytes(StandardCharsets.UTF_8));
+        try (ServerSocket server = new ServerSocket(0)) {
+            final CompletableFuture<String> head = serve(server, gzip);
+
+            final Response resp = new RequestsClient().get(new Request("http://127.0.0.1:" + server.getLocalPort()));
+
+            assertThat(resp.body(), is(gzip));
+            assertThat(head.get(5, TimeUnit.SECONDS).contains("Accept-Encoding"), is(false));
+        }
+    }
+
+    @Test
+    public void testRequestCompression() throws Exception {
+        final RequestsClient client = RequestsClient.builder()
+                                                    .requestCompressionThreshold(16)
+                                                    .build();
+
+        client.post(new Request(getUrl("/compressed")).body(TEXT));
+        client.post(new Request(getUrl("/small")).body("tiny"));
+
+        final Queue<Request> requests = server.requests();
+        final Request compressed = requests.poll();
+        assertThat(compressed.headers().get("Content-Encoding"), contains("gzip"));
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.body()))) {
+            final byte[] buffer = new byte[1024];
+            final int read = in.read(buffer);
+            assertThat(new String(buffer, 0, read, StandardCharsets.UTF_8), is(TEXT));
+        }
+        final Request small = requests.poll();
+        assertThat(small.headers().containsKey("Content-Encoding"), is(false));
+        assertThat(small.bodyAsString(), is("tiny"));
+    }
+
+    private static byte[] inflate(byte[] compressed, boolean gzip, int readSize) throws IOException {
+        final InflaterPool pool = new InflaterPool(1);
+        final ReadableByteChannel source = Channels.newChannel(new ByteArrayInputStream(compressed));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ReadableByteChannel channel = new InflatingChannel(source, pool, gzip, 512)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(readSize);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer.get());
+                }
+                buffer.clear();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] largeText() {
+        final byte[] text = new byte[LARGE_TEXT_SIZE];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + (i * 7 + i / 100) % 26);
+        }
+        return text;
+    }
+
+    /**
+     * Answers a single request with the gzip coded body
+     *
+     * @return the head of the received request
+     */
+    private static CompletableFuture<String> serve(ServerSocket server, byte[] body) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Socket socket = server.accept()) {
+                final InputStream in = socket.getInputStream();
+                final StringBuilder head = new StringBuilder();
+                while (!head.toString().endsWith("\r\n\r\n")) {
+                    head.append((char) in.read());
+                }
+                final OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\n" +
+                        "Content-Encoding: gzip\r\n" +
+                        "Content-Length: " + body.length + "\r\n" +
+                        "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.write(body);
+                out.flush();
+                return head.toString();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+}
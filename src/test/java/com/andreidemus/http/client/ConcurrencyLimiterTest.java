@@ -0,0 +1,111 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyLimiterTest extends RequestsTest {
+    private static final String HOST = "example.com:80";
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRequestAboveLimitIsRejected() throws Exception {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                                                             .initialLimit(2)
+                                                             .build();
+        limiter.acquire(HOST);
+        limiter.acquire(HOST);
+
+        try {
+            limiter.acquire(HOST);
+            fail("LimitExceededException expected");
+        } catch (LimitExceededException e) {
+            assertThat(limiter.rejected(), is(1L));
+            assertThat(limiter.inFlight(HOST), is(2));
+        }
+    }
+
+    @Test
+    public void testRequestWaitsForFreeSlot() throws Exception {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                                                             .initialLimit(1)
+                                                             .maxWait(Duration.ofSeconds(5))
+                                                             .build();
+        final ConcurrencyLimiter.HostLimit first = limiter.acquire(HOST);
+
+        final CompletableFuture<ConcurrencyLimiter.HostLimit> second = CompletableFuture.supplyAsync(() -> limiter.acquire(HOST));
+        Thread.sleep(50);
+        assertThat(second.isDone(), is(false));
+        first.release(FAST, false);
+
+        second.get(5, TimeUnit.SECONDS);
+        assertThat(limiter.inFlight(HOST), is(1));
+    }
+
+    @Test
+    public void testLimitGrowsWhileInUse() throws Exception {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                                                             .initialLimit(2)
+                                                             .build();
+        limiter.acquire(HOST);
+        limiter.acquire(HOST).release(FAST, false);
+
+        assertThat(limiter.limit(HOST), is(3));
+    }
+
+    @Test
+    public void testLimitIsCutOnOverload() throws Exception {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                                                             .initialLimit(10)
+                                                             .backoffRatio(0.5)
+                                                             .build();
+
+        limiter.acquire(HOST).release(FAST, true);
+
+        assertThat(limiter.limit(HOST), is(5));
+    }
+
+    @Test
+    public void testLimitIsCutOnSlowResponse() throws Exception {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                                                             .initialLimit(10)
+                                                             .backoffRatio(0.5)
+                                                             .latencyTolerance(2)
+                                                             .build();
+        limiter.acquire(HOST).release(FAST, false);
+
+        limiter.acquire(HOST).release(FAST * 3, false);
+
+        assertThat(limiter.limit(HOST), is(5));
+    }
+
+    @Test
+    public void testClientRejectsRequestWithoutSendingIt() throws Exception {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                                                             .initialLimit(1)
+                                                             .build();
+        final RequestsClient client = RequestsClient.builder()
+                                                    .limiter(limiter)
+                                                    .build();
+        final String host = "127.0.0.1:" + server.port();
+        final ConcurrencyLimiter.HostLimit taken = limiter.acquire(host);
+
+        try {
+            client.get(new Request(getUrl("/limited")));
+            fail("LimitExceededException expected");
+        } catch (LimitExceededException e) {
+            assertThat(server.requests().size(), is(0));
+        }
+
+        taken.release(FAST, false);
+        assertThat(client.get(new Request(getUrl("/limited"))).status(), is(200));
+        assertThat(limiter.inFlight(host), is(0));
+    }
+}
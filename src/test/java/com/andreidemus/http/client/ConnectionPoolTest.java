@@ -0,0 +1,98 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import com.andreidemus.http.server.Responses;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ConnectionPoolTest extends RequestsTest {
+    @Test
+    public void testConnectionIsReturnedToPool() throws Exception {
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+
+        final Response resp = client.get(new Request(getUrl("/pooled")));
+
+        assertThat(resp.status(), is(200));
+        assertThat(resp.text(), is("This is response body"));
+        final PoolStats stats = client.poolStats();
+        assertThat(stats.leased(), is(0));
+        assertThat(stats.idle(), is(1));
+        assertThat(stats.created(), is(1L));
+        assertThat(stats.evicted(), is(0L));
+    }
+
+    @Test
+    public void testConnectionClosedByServerIsReplaced() throws Exception {
+        final Responses server = Responses.builder()
+                                          .idleTimeout(Duration.ofMillis(50))
+                                          .build();
+        final String url = "http://127.0.0.1:" + server.start(0) + "/closed-by-server";
+        try {
+            final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+
+            // the server closes the idle connection while it is in the pool
+            client.post(new Request(url).body("first"));
+            Thread.sleep(500);
+            final Response resp = client.post(new Request(url).body("second"));
+
+            assertThat(resp.status(), is(200));
+            assertThat(server.requests().size(), is(2));
+            final PoolStats stats = client.poolStats();
+            assertThat(stats.created(), is(2L));
+            assertThat(stats.evicted(), is(1L));
+            assertThat(stats.idle(), is(1));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testNotReusableConnectionIsClosed() throws Exception {
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+        server.stubResponse("HTTP/1.1 200 OK\n" +
+                "Connection: close\n" +
+                "Content-Length: 4\n" +
+                "\n" +
+                "body");
+
+        client.get(new Request(getUrl("/not-reusable")));
+
+        final PoolStats stats = client.poolStats();
+        assertThat(stats.idle(), is(0));
+        assertThat(stats.evicted(), is(1L));
+    }
+
+    @Test
+    public void testExpiredConnectionIsEvicted() throws Exception {
+        final RequestsClient client = RequestsClient.builder()
+                                                    .engine(Engine.NIO)
+                                                    .idleTimeout(Duration.ZERO)
+                                                    .build();
+
+        client.get(new Request(getUrl("/expired")));
+        client.get(new Request(getUrl("/expired")));
+
+        final PoolStats stats = client.poolStats();
+        assertThat(stats.created(), is(2L));
+        assertThat(stats.evicted(), is(1L));
+    }
+
+    @Test(expected = HttpClientException.class)
+    public void testLeaseTimeout() throws Exception {
+        final ConnectionPool pool = new ConnectionPool(
+                1,
+                Long.MAX_VALUE,
+                Long.MAX_VALUE,
+                Duration.ofMillis(10).toNanos(),
+                (route, host, port) -> HttpConnection.open(route, host, port, SocketSettings.defaults(), new BufferPool(1024, 1))
+        );
+
+        pool.lease("127.0.0.1", server.port());
+        pool.lease("127.0.0.1", server.port());
+    }
+}
@@ -0,0 +1,92 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class EngineTest extends RequestsTest {
+    @Test
+    public void testUrlConnectionEngine() throws Exception {
+        final RequestsClient client = RequestsClient.builder()
+                                                    .engine(Engine.URL_CONNECTION)
+                                                    .build();
+
+        final Response resp = client.post(new Request(getUrl("/url-connection")).body("request body"));
+
+        assertThat(resp.status(), is(200));
+        assertThat(resp.text(), is("This is response body"));
+        assertThat(client.poolStats().created(), is(0L));
+        final Request request = server.requests().poll();
+        assertThat(request.bodyAsString(), is("request body"));
+    }
+
+    @Test
+    public void testChunkedResponse() throws Exception {
+        server.stubResponse("HTTP/1.1 200 OK\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "4\r\nsome\r\n" +
+                "5\r\n body\r\n" +
+                "0\r\n" +
+                "\r\n");
+
+        final Response resp = Requests.get(getUrl("/chunked"));
+
+        assertThat(resp.text(), is("some body"));
+        assertThat(resp.header("Transfer-Encoding"), contains("chunked"));
+    }
+
+    @Test
+    public void testHostHeaderIsSentOnce() throws Exception {
+        // HttpURLConnection doesn't let the Host header be set
+        final RequestsClient client = RequestsClient.builder()
+                                                    .engine(Engine.NIO)
+                                                    .build();
+
+        final Response resp = client.get(new Request(getUrl("/host")).header("Host", "example.com"));
+
+        assertThat(resp.status(), is(200));
+        assertThat(server.requests().poll().headerFields().get("Host"), contains("example.com"));
+    }
+
+    @Test
+    public void testLineBreakInHeaderIsRejected() throws Exception {
+        try {
+            Requests.get(new Request(getUrl("/injected")).header("X-Custom", "value\r\nX-Injected: true"));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertThat(server.requests().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0)) {
+            final RequestsClient client = RequestsClient.builder()
+                                                        .connectTimeout(Duration.ofSeconds(1))
+                                                        .readTimeout(Duration.ofMillis(100))
+                                                        .build();
+            try {
+                client.get(new Request("http://127.0.0.1:" + silent.getLocalPort()));
+                fail("Read timeout expected");
+            } catch (HttpClientException e) {
+                assertThat(e.getCause(), instanceOf(SocketTimeoutException.class));
+            }
+            try (Socket ignored = silent.accept()) {
+                assertThat(client.poolStats().leased(), is(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.server.Responses;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+public class LoadBalancerTest {
+    private final List<Responses> servers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            final Responses server = new Responses();
+            server.start(0);
+            servers.add(server);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        servers.forEach(Responses::stop);
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        final RequestsClient client = RequestsClient.builder()
+                                                    .service("users", balancer(LoadBalancer.Strategy.ROUND_ROBIN)
+                                                            .endpoints(urls())
+                                                            .build())
+                                                    .build();
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(client.get(new Request("http://users").path("items").pathParam("page", i)).status(), is(200));
+        }
+
+        for (Responses server : servers) {
+            assertThat(server.requests().size(), is(2));
+            assertThat(server.requests().peek().path(), is("/items?page=" + servers.indexOf(server)));
+        }
+    }
+
+    @Test
+    public void testFailingEndpointIsEjected() throws Exception {
+        final String dead;
+        try (ServerSocket closed = new ServerSocket(0)) {
+            dead = "http://127.0.0.1:" + closed.getLocalPort();
+        }
+        final LoadBalancer balancer = balancer(LoadBalancer.Strategy.POWER_OF_TWO_CHOICES)
+                .endpoints(urls())
+                .endpoint(dead)
+                .minRequests(2)
+                .build();
+        final RequestsClient client = RequestsClient.builder()
+                                                    .service("users", balancer)
+                                                    .build();
+
+        int failures = 0;
+        for (int i = 0; i < 50; i++) {
+            try {
+                client.get(new Request("http://users/items"));
+            } catch (HttpClientException e) {
+                failures++;
+            }
+        }
+
+        assertThat(failures, is(2));
+        assertThat(balancer.healthyEndpoints(), containsInAnyOrder(urls().toArray()));
+    }
+
+    @Test
+    public void testPipelinedResponsesAreReported() throws Exception {
+        servers.get(0).stubResponse("HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\n\r\n");
+        final LoadBalancer balancer = balancer(LoadBalancer.Strategy.ROUND_ROBIN)
+                .endpoints(urls())
+                .minRequests(2)
+                .build();
+        final RequestsClient client = RequestsClient.builder()
+                                                    .engine(Engine.NIO)
+                                                    .service("users", balancer)
+                                                    .build();
+        final List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            requests.add(new Request("http://users/items"));
+        }
+
+        client.sendAll(requests);
+
+        assertThat(servers.get(0).requests().size(), is(2));
+        assertThat(balancer.healthyEndpoints(), not(hasItem(urls().get(0))));
+    }
+
+    @Test
+    public void testRetryChoosesAnotherEndpoint() throws Exception {
+        final String dead;
+        try (ServerSocket closed = new ServerSocket(0)) {
+            dead = "http://127.0.0.1:" + closed.getLocalPort();
+        }
+        final RequestsClient client = RequestsClient.builder()
+                                                    .service("users", balancer(LoadBalancer.Strategy.ROUND_ROBIN)
+                                                            .endpoint(dead)
+                                                            .endpoint(urls().get(0))
+                                                            .minRequests(100)
+                                                            .build())
+                                                    .retryPolicy(RetryPolicy.builder()
+                                                                            .maxAttempts(2)
+                                                                            .initialBackoff(Duration.ZERO)
+                                                                            .build())
+                                                    .build();
+
+        // every first attempt goes to the dead endpoint and its retry to the live one
+        for (int i = 0; i < 4; i++) {
+            assertThat(client.get(new Request("http://users/items")).status(), is(200));
+        }
+        assertThat(servers.get(0).requests().size(), is(4));
+    }
+
+    @Test
+    public void testCacheIsSharedByEndpoints() throws Exception {
+        servers.forEach(it -> it.stubResponse("HTTP/1.1 200 OK\r\n" +
+                "Cache-Control: max-age=60\r\n" +
+                "Content-Length: 4\r\n" +
+                "\r\n" +
+                "body"));
+        final RequestsClient client = RequestsClient.builder()
+                                                    .service("users", balancer(LoadBalancer.Strategy.ROUND_ROBIN)
+                                                            .endpoints(urls())
+                                                            .build())
+                                                    .cache(ResponseCache.builder().build())
+                                                    .build();
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(client.get(new Request("http://users/items")).text(), is("body"));
+        }
+        client.get(new Request("http://users/other"));
+
+        // cache hits don't take turns of the endpoints
+        assertThat(servers.get(0).requests().size(), is(1));
+        assertThat(servers.get(1).requests().size(), is(1));
+        assertThat(servers.get(2).requests().size(), is(0));
+    }
+
+    @Test
+    public void testSlowEndpointIsEjected() throws Exception {
+        final LoadBalancer balancer = balancer(LoadBalancer.Strategy.ROUND_ROBIN)
+                .endpoints(urls())
+                .maxLatency(Duration.ofMillis(100))
+                .minRequests(1)
+                .build();
+        final LoadBalancer.Endpoint slow = balancer.choose();
+
+        slow.started();
+        slow.finished(TimeUnit.SECONDS.toNanos(1), false);
+
+        assertThat(balancer.healthyEndpoints(), not(hasItem(slow.baseUrl)));
+        for (int i = 0; i < 10; i++) {
+            assertThat(balancer.choose(), is(not(sameInstance(slow))));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinRequestsAboveErrorWindowIsRejected() {
+        LoadBalancer.builder().minRequests(101);
+    }
+
+    @Test
+    public void testLeastOutstanding() throws Exception {
+        final LoadBalancer balancer = balancer(LoadBalancer.Strategy.LEAST_OUTSTANDING)
+                .endpoints(urls().subList(0, 2))
+                .build();
+        final LoadBalancer.Endpoint busy = balancer.choose();
+        busy.started();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(balancer.choose(), is(not(sameInstance(busy))));
+        }
+        busy.finished(0, false);
+    }
+
+    private static LoadBalancer.Builder balancer(LoadBalancer.Strategy strategy) {
+        return LoadBalancer.builder()
+                           .strategy(strategy)
+                           .ejectionTime(Duration.ofMinutes(1));
+    }
+
+    private List<String> urls() {
+        final List<String> urls = new ArrayList<>();
+        servers.forEach(it -> urls.add("http://127.0.0.1:" + it.port()));
+        return urls;
+    }
+}
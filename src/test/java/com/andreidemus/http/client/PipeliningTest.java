@@ -0,0 +1,170 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+
+public class PipeliningTest extends RequestsTest {
+    private KeepAliveServer keepAlive;
+
+    @After
+    public void stopKeepAliveServer() throws Exception {
+        if (keepAlive != null) {
+            keepAlive.close();
+        }
+    }
+
+    @Test
+    public void testResponsesAreInOrder() throws Exception {
+        keepAlive = new KeepAliveServer(false);
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+        final List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            requests.add(new Request(keepAlive.url()).path(String.valueOf(i)));
+        }
+
+        final List<Response> responses = client.sendAll(requests);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(responses.get(i).text(), is("/" + i));
+        }
+        assertThat(keepAlive.connections.get(), lessThanOrEqualTo(7));
+    }
+
+    @Test(timeout = 5000)
+    public void testRequestsArePipelined() throws Exception {
+        // after the first exchange the server waits for two requests before it answers, so sequential requests hang
+        keepAlive = new KeepAliveServer(true);
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+        final List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(new Request(keepAlive.url()).path(String.valueOf(i)));
+        }
+
+        final List<Response> responses = client.sendAll(requests);
+
+        assertThat(responses.get(2).text(), is("/2"));
+        assertThat(keepAlive.connections.get(), is(1));
+        assertThat(client.poolStats().idle(), is(1));
+    }
+
+    @Test
+    public void testServerClosingConnections() throws Exception {
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+        final List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(new Request(getUrl("/closing")));
+        }
+
+        final List<Response> responses = client.sendAll(requests);
+
+        assertThat(responses.size(), is(5));
+        responses.forEach(it -> assertThat(it.text(), is("This is response body")));
+        assertThat(server.requests().size(), is(5));
+    }
+
+    @Test
+    public void testNotPipelinedRequests() throws Exception {
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+        final List<Request> requests = new ArrayList<>();
+        requests.add(new Request(getUrl("/get")));
+        requests.add(new Request(getUrl("/post")).method("POST").body("request body"));
+
+        final List<Response> responses = client.sendAll(requests);
+
+        assertThat(responses.get(1).status(), is(200));
+        assertThat(server.requests().size(), is(2));
+    }
+
+    /**
+     * Keeps connections open and answers with the request target as the body
+     */
+    private static class KeepAliveServer implements AutoCloseable {
+        private final ServerSocket socket = new ServerSocket(0);
+        private final AtomicInteger connections = new AtomicInteger();
+        private final boolean pairs;
+
+        KeepAliveServer(boolean pairs) throws IOException {
+            this.pairs = pairs;
+            final Thread acceptor = new Thread(this::accept);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + socket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    final Socket connection = socket.accept();
+                    connections.incrementAndGet();
+                    final Thread handler = new Thread(() -> handle(connection));
+                    handler.setDaemon(true);
+                    handler.start();
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void handle(Socket connection) {
+            try (Socket ignored = connection) {
+                final BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.ISO_8859_1));
+                final OutputStream out = connection.getOutputStream();
+                boolean first = true;
+                while (true) {
+                    final StringBuilder responses = new StringBuilder();
+                    for (int i = 0; i < (pairs && !first ? 2 : 1); i++) {
+                        final String target = readTarget(in);
+                        if (target == null) {
+                            return;
+                        }
+                        responses.append("HTTP/1.1 200 OK\r\nContent-Length: ")
+                                 .append(target.length())
+                                 .append("\r\n\r\n")
+                                 .append(target);
+                    }
+                    out.write(responses.toString().getBytes(StandardCharsets.ISO_8859_1));
+                    out.flush();
+                    first = false;
+                }
+            } catch (IOException e) {
+                // the client has gone
+            }
+        }
+
+        private static String readTarget(BufferedReader in) throws IOException {
+            final String startLine = in.readLine();
+            if (startLine == null) {
+                return null;
+            }
+            for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+                // headers are ignored
+            }
+            return startLine.split(" ")[1];
+        }
+    }
+}
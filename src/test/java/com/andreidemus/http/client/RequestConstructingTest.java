@@ -218,4 +218,67 @@ public class RequestConstructingTest extends RequestsTest {
         final Request request1 = server.requests().poll();
         assertThat(request1.path(), is("/test/composite/path"));
     }
+
+    @Test
+    public void testBuilder() throws Exception {
+        final Request.Builder builder = Request.builder("http://example.com")
+                                               .method("POST")
+                                               .path("items")
+                                               .header("header1", "value1-1")
+                                               .header("header1", "value1-2")
+                                               .pathParam("a", 5)
+                                               .pathParam("a", 7)
+                                               .formParam("b", "x y");
+        final Request request = builder.build();
+
+        assertThat(request.method(), is("POST"));
+        assertThat(request.path(), is("/items"));
+        assertThat(request.headers().get("header1"), contains("value1-1", "value1-2"));
+        assertThat(request.pathParamsAsString(), is("a=5&a=7"));
+        assertThat(request.formParamsAsString(), is("b=x+y"));
+
+        // the built request is not affected by the reused builder
+        final Request changed = builder.pathParam("a", 9).header("header1", "value1-3").build();
+        assertThat(request.pathParamsAsString(), is("a=5&a=7"));
+        assertThat(request.headers().get("header1"), contains("value1-1", "value1-2"));
+        assertThat(changed.pathParamsAsString(), is("a=5&a=7&a=9"));
+    }
+
+    @Test
+    public void testToBuilder() throws Exception {
+        final Request request = new Request("http://example.com").path("items")
+                                                                 .pathParam("a", 5)
+                                                                 .header("header1", "value1");
+
+        final Request copy = request.toBuilder()
+                                    .pathParam("a", 7)
+                                    .build();
+
+        assertThat(copy.path(), is("/items"));
+        assertThat(copy.pathParamsAsString(), is("a=5&a=7"));
+        assertThat(copy.headers().get("header1"), contains("value1"));
+        assertThat(request.pathParamsAsString(), is("a=5"));
+    }
+
+    @Test
+    public void testFluentMethodsDontChangeOriginalRequest() throws Exception {
+        final Request request = new Request("http://example.com").pathParam("a", 5)
+                                                                 .formParam("b", 1)
+                                                                 .header("header1", "value1");
+
+        request.pathParam("a", 7);
+        request.formParam("b", 2);
+        request.header("header1", "value2");
+
+        assertThat(request.pathParamsAsString(), is("a=5"));
+        assertThat(request.formParamsAsString(), is("b=1"));
+        assertThat(request.headers().get("header1"), contains("value1"));
+    }
+
+    @Test
+    public void testEncodedParamsAreCached() throws Exception {
+        final Request request = new Request("http://example.com").pathParam("q", "a b");
+
+        assertThat(request.pathParamsAsString(), is(CoreMatchers.sameInstance(request.pathParamsAsString())));
+    }
 }
@@ -0,0 +1,104 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class RequestMetricsTest extends RequestsTest {
+    @Test
+    public void testHistogramPercentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertThat(histogram.count(), is(1000L));
+        assertThat(histogram.maxNanos(), is(1000_000L));
+        assertThat(histogram.percentileNanos(50), is(allOf(greaterThanOrEqualTo(500_000L), lessThanOrEqualTo(515_000L))));
+        assertThat(histogram.percentileNanos(99), is(allOf(greaterThanOrEqualTo(990_000L), lessThanOrEqualTo(1000_000L))));
+        assertThat(histogram.percentileNanos(99.9), is(allOf(greaterThanOrEqualTo(999_000L), lessThanOrEqualTo(1000_000L))));
+    }
+
+    @Test
+    public void testPhaseTimings() throws Exception {
+        final List<RequestTimings> completed = new CopyOnWriteArrayList<>();
+        final RequestsClient client = RequestsClient.builder()
+                                                    .listener(completed::add)
+                                                    .build();
+
+        client.get(new Request(getUrl("/timed")));
+
+        assertThat(completed.size(), is(1));
+        final RequestTimings timings = completed.get(0);
+        assertThat(timings.status(), is(200));
+        assertThat(timings.host(), is("127.0.0.1:" + server.port()));
+        assertThat(timings.connectionReused(), is(false));
+        assertThat(timings.connectNanos(), is(greaterThan(0L)));
+        assertThat(timings.writeNanos(), is(greaterThan(0L)));
+        assertThat(timings.firstByteNanos(), is(greaterThan(0L)));
+        assertThat(timings.totalNanos(), is(greaterThanOrEqualTo(
+                timings.connectNanos() + timings.writeNanos() + timings.firstByteNanos() + timings.bodyNanos())));
+    }
+
+    @Test
+    public void testStreamedRequestIsReportedWhenClosed() throws Exception {
+        final List<RequestTimings> completed = new CopyOnWriteArrayList<>();
+        final RequestsClient client = RequestsClient.builder()
+                                                    .listener(completed::add)
+                                                    .build();
+
+        final Response resp = client.stream(new Request(getUrl("/streamed")));
+        assertThat(completed.size(), is(0));
+        resp.close();
+
+        assertThat(completed.size(), is(1));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        final RequestMetrics metrics = new RequestMetrics();
+        final RequestsClient client = RequestsClient.builder()
+                                                    .listener(metrics)
+                                                    .build();
+
+        for (int i = 0; i < 3; i++) {
+            client.get(new Request(getUrl("/metrics")));
+        }
+
+        final String host = "127.0.0.1:" + server.port();
+        assertThat(metrics.histogram(host, 2).count(), is(3L));
+        assertThat(metrics.report(), containsString(host + " 2xx - count: 3"));
+    }
+
+    @Test
+    public void testFailedRequest() throws Exception {
+        final RequestMetrics metrics = new RequestMetrics();
+        final RequestsClient client = RequestsClient.builder()
+                                                    .listener(metrics)
+                                                    .build();
+        final int port;
+        try (ServerSocket closed = new ServerSocket(0)) {
+            port = closed.getLocalPort();
+        }
+
+        try {
+            client.get(new Request("http://127.0.0.1:" + port));
+            fail("Connection refused expected");
+        } catch (HttpClientException e) {
+            assertThat(metrics.histogram("127.0.0.1:" + port, RequestMetrics.FAILED).count(), is(1L));
+        }
+    }
+}
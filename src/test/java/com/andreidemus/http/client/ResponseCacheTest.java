@@ -0,0 +1,224 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import com.andreidemus.http.server.Route;
+import com.andreidemus.http.server.Stub;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+public class ResponseCacheTest extends RequestsTest {
+    private static final String BODY = "This is response body";
+
+    @Test
+    public void testFreshResponseIsCached() throws Exception {
+        server.stubResponse(stub("Cache-Control: max-age=60\r\n"));
+        final ResponseCache cache = ResponseCache.builder().build();
+        final RequestsClient client = client(cache);
+
+        client.get(new Request(getUrl("/fresh")));
+        final Response resp = client.get(new Request(getUrl("/fresh")));
+
+        assertThat(resp.text(), is(BODY));
+        assertThat(server.requests().size(), is(1));
+        assertThat(cache.stats().hits(), is(1L));
+    }
+
+    @Test
+    public void testHugeMaxAgeIsClamped() throws Exception {
+        server.stubResponse(stub("Cache-Control: max-age=99999999999999999999\r\n"));
+        final ResponseCache cache = ResponseCache.builder().build();
+        final RequestsClient client = client(cache);
+
+        client.get(new Request(getUrl("/forever")));
+        client.get(new Request(getUrl("/forever")));
+
+        assertThat(server.requests().size(), is(1));
+        assertThat(cache.stats().hits(), is(1L));
+    }
+
+    @Test
+    public void testCachedBodyIsNotShared() throws Exception {
+        server.stubResponse(stub("Cache-Control: max-age=60\r\n"));
+        final RequestsClient client = client(ResponseCache.builder().build());
+
+        Arrays.fill(client.get(new Request(getUrl("/copy"))).body(), (byte) 'x');
+        Arrays.fill(client.get(new Request(getUrl("/copy"))).body(), (byte) 'y');
+
+        assertThat(client.get(new Request(getUrl("/copy"))).text(), is(BODY));
+        assertThat(server.requests().size(), is(1));
+    }
+
+    @Test
+    public void testRevalidationWithETag() throws Exception {
+        server.stubResponse(stub("Cache-Control: no-cache\r\nETag: \"v1\"\r\n"));
+        final ResponseCache cache = ResponseCache.builder().build();
+        final RequestsClient client = client(cache);
+        client.get(new Request(getUrl("/etag")));
+        server.stubResponse("HTTP/1.1 304 Not Modified\r\nETag: \"v1\"\r\nX-Updated: yes\r\n\r\n");
+
+        final Response resp = client.get(new Request(getUrl("/etag")));
+
+        assertThat(resp.status(), is(200));
+        assertThat(resp.text(), is(BODY));
+        assertThat(resp.header("X-Updated"), contains("yes"));
+        final Queue<Request> requests = server.requests();
+        requests.poll();
+        assertThat(requests.poll().headers().get("If-None-Match"), contains("\"v1\""));
+        assertThat(cache.stats().revalidations(), is(1L));
+    }
+
+    @Test
+    public void testRevalidationWithLastModified() throws Exception {
+        final String lastModified = "Mon, 01 Jan 2018 00:00:00 GMT";
+        server.stubResponse(stub("Expires: Tue, 02 Jan 2018 00:00:00 GMT\r\nLast-Modified: " + lastModified + "\r\n"));
+        final ResponseCache cache = ResponseCache.builder().build();
+        final RequestsClient client = client(cache);
+
+        client.get(new Request(getUrl("/expired")));
+        client.get(new Request(getUrl("/expired")));
+
+        final Queue<Request> requests = server.requests();
+        requests.poll();
+        assertThat(requests.poll().headers().get("If-Modified-Since"), contains(lastModified));
+    }
+
+    @Test
+    public void testNoStore() throws Exception {
+        server.stubResponse(stub("Cache-Control: no-store, max-age=60\r\n"));
+        final ResponseCache cache = ResponseCache.builder().build();
+        final RequestsClient client = client(cache);
+
+        client.get(new Request(getUrl("/no-store")));
+        client.get(new Request(getUrl("/no-store")));
+
+        assertThat(server.requests().size(), is(2));
+        assertThat(cache.stats().entries(), is(0));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        server.stubResponse(stub("Cache-Control: max-age=60\r\n"));
+        final ResponseCache cache = ResponseCache.builder()
+                                                 .maxMemoryBytes(700)
+                                                 .build();
+        final RequestsClient client = client(cache);
+
+        client.get(new Request(getUrl("/a")));
+        client.get(new Request(getUrl("/b")));
+        client.get(new Request(getUrl("/a")));
+        client.get(new Request(getUrl("/c")));
+        client.get(new Request(getUrl("/a")));
+        client.get(new Request(getUrl("/b")));
+
+        assertThat(cache.stats().entries(), is(2));
+        assertThat(cache.stats().hits(), is(2L));
+        assertThat(server.requests().size(), is(4));
+    }
+
+    @Test
+    public void testLargeBodyIsSpilledToDisk() throws Exception {
+        server.stubResponse(stub("Cache-Control: max-age=60\r\n"));
+        final Path directory = Files.createTempDirectory("http-kit-cache");
+        final ResponseCache cache = ResponseCache.builder()
+                                                 .directory(directory)
+                                                 .spillThreshold(10)
+                                                 .build();
+        final RequestsClient client = client(cache);
+
+        client.get(new Request(getUrl("/spilled")));
+        final Response resp = client.get(new Request(getUrl("/spilled")));
+
+        assertThat(resp.text(), is(BODY));
+        assertThat(cache.stats().diskBytes(), is((long) BODY.length()));
+        cache.clear();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count(), is(0L));
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testLostBodyIsFetchedAgain() throws Exception {
+        server.stub(Route.builder("GET", "/lost").header("If-None-Match", "\"v1\"").build(), Stub.builder(304).build());
+        server.stub(Route.get("/lost"),
+                Stub.builder(200).header("Cache-Control", "no-cache").header("ETag", "\"v1\"").body(BODY).build());
+        final Path directory = Files.createTempDirectory("http-kit-cache");
+        final ResponseCache cache = ResponseCache.builder()
+                                                 .directory(directory)
+                                                 .spillThreshold(10)
+                                                 .build();
+        final RequestsClient client = client(cache);
+        client.get(new Request(getUrl("/lost")));
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(it -> it.toFile().delete());
+        }
+
+        final Response resp = client.get(new Request(getUrl("/lost")));
+
+        assertThat(resp.status(), is(200));
+        assertThat(resp.text(), is(BODY));
+        final Queue<Request> requests = server.requests();
+        assertThat(requests.size(), is(3));
+        requests.poll();
+        requests.poll();
+        assertThat(requests.poll().headers().containsKey("If-None-Match"), is(false));
+        cache.clear();
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testUnsafeRequestInvalidatesEntry() throws Exception {
+        server.stubResponse(stub("Cache-Control: max-age=60\r\n"));
+        final ResponseCache cache = ResponseCache.builder().build();
+        final RequestsClient client = client(cache);
+
+        client.get(new Request(getUrl("/resource")));
+        client.post(new Request(getUrl("/resource")).body("update"));
+        client.get(new Request(getUrl("/resource")));
+
+        assertThat(server.requests().size(), is(3));
+    }
+
+    @Test
+    public void testBatchUsesCache() throws Exception {
+        server.stubResponse(stub("Cache-Control: max-age=60\r\n"));
+        final ResponseCache cache = ResponseCache.builder().build();
+        final RequestsClient client = client(cache);
+        client.get(new Request(getUrl("/batch")));
+
+        final List<Response> responses = client.sendAll(Arrays.asList(
+                new Request(getUrl("/batch")),
+                new Request(getUrl("/other"))));
+
+        assertThat(responses.get(0).text(), is(BODY));
+        assertThat(responses.get(1).text(), is(BODY));
+        assertThat(server.requests().size(), is(2));
+        assertThat(cache.stats().entries(), is(2));
+    }
+
+    private static RequestsClient client(ResponseCache cache) {
+        return RequestsClient.builder()
+                             .cache(cache)
+                             .build();
+    }
+
+    private static String stub(String cacheHeaders) {
+        return "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: text/plain; charset=utf-8\r\n" +
+                "Content-Length: " + BODY.length() + "\r\n" +
+                cacheHeaders +
+                "\r\n" +
+                BODY;
+    }
+}
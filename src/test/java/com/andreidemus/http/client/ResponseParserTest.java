@@ -0,0 +1,98 @@
+package com.andreidemus.http.client;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+public class ResponseParserTest {
+    @Test
+    public void testParsesResponseFedByteByByte() throws Exception {
+        final ResponseParser parser = new ResponseParser("GET");
+        final String response = "HTTP/1.1 100 Continue\r\n" +
+                "\r\n" +
+                "HTTP/1.1 201 Created\r\n" +
+                "Header1: value:with:colons\r\n" +
+                "header1: second\r\n" +
+                "Content-Length: 5\r\n" +
+                "\r\n" +
+                "hello";
+        final ByteBuffer body = ByteBuffer.allocate(5);
+
+        for (byte b : response.getBytes(StandardCharsets.ISO_8859_1)) {
+            final ByteBuffer src = ByteBuffer.wrap(new byte[]{b});
+            if (!parser.parseHead(src)) {
+                continue;
+            }
+            parser.decodeBody(src, body);
+        }
+
+        assertThat(parser.status(), is(201));
+        assertThat(parser.reason(), is("Created"));
+        assertThat(parser.headers().get("HEADER1"), contains("value:with:colons", "second"));
+        assertThat(parser.isDone(), is(true));
+        assertThat(parser.isKeepAlive(), is(true));
+        assertThat(new String(body.array(), StandardCharsets.ISO_8859_1), is("hello"));
+    }
+
+    @Test
+    public void testParsesChunkedBody() throws Exception {
+        final ResponseParser parser = new ResponseParser("GET");
+        final ByteBuffer src = ascii("HTTP/1.1 200 OK\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "5;ext=1\r\nhello\r\n" +
+                "7\r\n, world\r\n" +
+                "0\r\n" +
+                "Trailer: value\r\n" +
+                "\r\n");
+        final ByteBuffer body = ByteBuffer.allocate(64);
+
+        assertThat(parser.parseHead(src), is(true));
+        assertThat(parser.contentLength(), is(-1L));
+        parser.decodeBody(src, body);
+
+        assertThat(parser.isDone(), is(true));
+        assertThat(new String(body.array(), 0, body.position(), StandardCharsets.ISO_8859_1), is("hello, world"));
+    }
+
+    @Test
+    public void testBodyUntilConnectionClosed() throws Exception {
+        final ResponseParser parser = new ResponseParser("GET");
+        final ByteBuffer src = ascii("HTTP/1.0 200 OK\n\nsome body");
+        final ByteBuffer body = ByteBuffer.allocate(64);
+
+        parser.parseHead(src);
+        parser.decodeBody(src, body);
+        assertThat(parser.isDone(), is(false));
+        parser.finishBody();
+
+        assertThat(parser.isDone(), is(true));
+        assertThat(parser.isKeepAlive(), is(false));
+        assertThat(body.position(), is(9));
+    }
+
+    @Test
+    public void testHeadResponseHasNoBody() throws Exception {
+        final ResponseParser parser = new ResponseParser("HEAD");
+
+        parser.parseHead(ascii("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n"));
+
+        assertThat(parser.isDone(), is(true));
+        assertThat(parser.isKeepAlive(), is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidStatusLine() throws Exception {
+        new ResponseParser("GET").parseHead(ascii("SMTP 200 OK\r\n\r\n"));
+    }
+
+    private static ByteBuffer ascii(String str) {
+        return ByteBuffer.wrap(str.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
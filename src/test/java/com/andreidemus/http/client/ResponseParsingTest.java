@@ -3,6 +3,13 @@ package com.andreidemus.http.client;
 import com.andreidemus.http.common.Response;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.Matchers.*;
@@ -56,4 +63,24 @@ public class ResponseParsingTest extends RequestsTest {
         assertThat(resp.header("Header1"), contains("value1"));
         assertThat(resp.header("header2"), contains("value2"));
     }
+
+    @Test
+    public void charsetAndTextDecodedOnce() throws Exception {
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", singletonList("text/plain; charset=ISO-8859-1"));
+        final Response resp = new Response(200, "OK", "caf\u00e9".getBytes(StandardCharsets.ISO_8859_1), headers);
+
+        assertThat(resp.charset(), is(StandardCharsets.ISO_8859_1));
+        assertThat(resp.text(), is("caf\u00e9"));
+        assertThat(resp.text(), is(sameInstance(resp.text())));
+    }
+
+    @Test
+    public void unsupportedCharsetFallsBackToUtf8() throws Exception {
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", singletonList("text/plain; charset=no-such-charset"));
+        final Response resp = new Response(200, "OK", new byte[]{}, headers);
+
+        assertThat(resp.charset(), is(StandardCharsets.UTF_8));
+    }
 }
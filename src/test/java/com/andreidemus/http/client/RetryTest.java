@@ -0,0 +1,227 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class RetryTest {
+    private static final String OK = response("200 OK");
+    private static final String UNAVAILABLE = response("503 Service Unavailable");
+    // closes the connection without a response
+    private static final String CLOSE = null;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private ServerSocket serverSocket;
+    private volatile IntFunction<String> script = it -> OK;
+    private volatile int slowConnection = -1;
+    private volatile long slowMillis = 3000;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        handlers.execute(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final int n = connections.getAndIncrement();
+                    handlers.execute(() -> handle(socket, n));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverSocket.close();
+        handlers.shutdownNow();
+    }
+
+    @Test
+    public void testFailedRequestIsRetried() throws Exception {
+        script = n -> n == 0 ? CLOSE : OK;
+
+        final Response resp = client(RetryPolicy.builder()).get(new Request(url()));
+
+        assertThat(resp.status(), is(200));
+        assertThat(connections.get(), is(2));
+    }
+
+    @Test
+    public void testRetriedStatus() throws Exception {
+        script = n -> n == 0 ? UNAVAILABLE : OK;
+
+        final Response resp = client(RetryPolicy.builder()).get(new Request(url()));
+
+        assertThat(resp.status(), is(200));
+        assertThat(connections.get(), is(2));
+    }
+
+    @Test
+    public void testMaxAttempts() throws Exception {
+        script = n -> UNAVAILABLE;
+
+        final Response resp = client(RetryPolicy.builder().maxAttempts(3)).get(new Request(url()));
+
+        assertThat(resp.status(), is(503));
+        assertThat(connections.get(), is(3));
+    }
+
+    @Test
+    public void testInterruptedBackoffFails() throws Exception {
+        final Thread caller = Thread.currentThread();
+        script = n -> {
+            caller.interrupt();
+            return UNAVAILABLE;
+        };
+        final RequestsClient client = RequestsClient.builder()
+                                                    .engine(Engine.NIO)
+                                                    .retryPolicy(RetryPolicy.builder()
+                                                                            .initialBackoff(Duration.ofMinutes(1))
+                                                                            .maxBackoff(Duration.ofMinutes(1))
+                                                                            .build())
+                                                    .build();
+
+        try {
+            client.get(new Request(url()));
+            fail("HttpClientException expected");
+        } catch (HttpClientException e) {
+            assertThat(Thread.interrupted(), is(true));
+            assertThat(connections.get(), is(1));
+        }
+    }
+
+    @Test
+    public void testPostIsNotRetried() throws Exception {
+        script = n -> n == 0 ? CLOSE : OK;
+
+        try {
+            client(RetryPolicy.builder()).post(new Request(url()).body("data"));
+            fail("HttpClientException expected");
+        } catch (HttpClientException e) {
+            assertThat(connections.get(), is(1));
+        }
+    }
+
+    @Test
+    public void testBudgetLimitsRetries() throws Exception {
+        script = n -> CLOSE;
+        final RequestsClient client = client(RetryPolicy.builder()
+                                                        .maxAttempts(5)
+                                                        .budgetReserve(1)
+                                                        .budgetRatio(0));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.get(new Request(url()));
+                fail("HttpClientException expected");
+            } catch (HttpClientException e) {
+                // expected
+            }
+        }
+
+        // the first request is retried once, the second isn't retried at all
+        assertThat(connections.get(), is(3));
+    }
+
+    @Test
+    public void testSlowRequestIsHedged() throws Exception {
+        final RequestsClient client = client(RetryPolicy.builder()
+                                                        .hedgeAfterPercentile(95)
+                                                        .minHedgeDelay(Duration.ofMillis(20)));
+        for (int i = 0; i < 32; i++) {
+            client.get(new Request(url()));
+        }
+        slowConnection = 32;
+
+        final long startedAt = System.nanoTime();
+        final Response resp = client.get(new Request(url()));
+
+        assertThat(resp.status(), is(200));
+        assertThat(System.nanoTime() - startedAt, is(lessThan(Duration.ofSeconds(2).toNanos())));
+        assertThat(connections.get(), is(34));
+    }
+
+    @Test
+    public void testRetriedStatusOfHedgeDoesNotWin() throws Exception {
+        final RequestsClient client = client(RetryPolicy.builder()
+                                                        .maxAttempts(1)
+                                                        .hedgeAfterPercentile(95)
+                                                        .minHedgeDelay(Duration.ofMillis(20)));
+        for (int i = 0; i < 32; i++) {
+            client.get(new Request(url()));
+        }
+        // the first attempt is slow but succeeds, the hedge fails fast
+        slowConnection = 32;
+        slowMillis = 300;
+        script = n -> n == 33 ? UNAVAILABLE : OK;
+
+        final Response resp = client.get(new Request(url()));
+
+        assertThat(resp.status(), is(200));
+        assertThat(connections.get(), is(34));
+    }
+
+    private RequestsClient client(RetryPolicy.Builder policy) {
+        return RequestsClient.builder()
+                             .engine(Engine.NIO)
+                             .retryPolicy(policy.initialBackoff(Duration.ofMillis(1)).build())
+                             .build();
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/retried";
+    }
+
+    private void handle(Socket socket, int n) {
+        try (Socket s = socket) {
+            readHead(s.getInputStream());
+            final String response = script.apply(n);
+            if (n == slowConnection) {
+                Thread.sleep(slowMillis);
+            }
+            if (response != null) {
+                final OutputStream out = s.getOutputStream();
+                out.write(response.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // the client has gone
+        }
+    }
+
+    private static void readHead(InputStream in) throws IOException {
+        int matched = 0;
+        for (int b = in.read(); b >= 0; b = in.read()) {
+            matched = (b == '\r' || b == '\n') ? matched + 1 : 0;
+            if (matched == 4) {
+                return;
+            }
+        }
+    }
+
+    private static String response(String status) {
+        return "HTTP/1.1 " + status + "\r\nContent-Length: 2\r\nConnection: close\r\n\r\nok";
+    }
+}
@@ -0,0 +1,147 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.core.Is.is;
+
+public class StreamingRequestTest extends RequestsTest {
+    private static final int LARGE_BODY_SIZE = 4 * 1024 * 1024;
+
+    private Path file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = Files.createTempFile("http-kit", ".body");
+    }
+
+    @After
+    public void deleteFile() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testFileBody() throws Exception {
+        Files.write(file, "file body".getBytes(StandardCharsets.UTF_8));
+
+        final Response resp = Requests.post(new Request(getUrl("/file")).body(file));
+
+        assertThat(resp.status(), is(200));
+        final Request request = server.requests().poll();
+        assertThat(request.bodyAsString(), is("file body"));
+        assertThat(request.headers().get("Content-Length"), contains("9"));
+        assertThat(request.headers().get("Content-Type"), contains("application/octet-stream"));
+    }
+
+    @Test
+    public void testFileBodyWithUrlConnection() throws Exception {
+        Files.write(file, "file body".getBytes(StandardCharsets.UTF_8));
+        final RequestsClient client = RequestsClient.builder()
+                                                    .engine(Engine.URL_CONNECTION)
+                                                    .build();
+
+        client.post(new Request(getUrl("/file")).body(file));
+
+        assertThat(server.requests().poll().headers().get("Content-Length"), contains("9"));
+    }
+
+    @Test
+    public void testLargeFileBodyIsTransferred() throws Exception {
+        final byte[] content = new byte[LARGE_BODY_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        Files.write(file, content);
+
+        try (ServerSocket capture = new ServerSocket(0)) {
+            final CompletableFuture<String> head = CompletableFuture.supplyAsync(() -> readHeadAndSkipBody(capture));
+
+            final Response resp = Requests.post(new Request("http://127.0.0.1:" + capture.getLocalPort()).body(file));
+
+            assertThat(resp.status(), is(200));
+            assertThat(head.get(5, TimeUnit.SECONDS), containsString("Content-Length: " + LARGE_BODY_SIZE));
+        }
+    }
+
+    @Test
+    public void testStreamBodyIsChunked() throws Exception {
+        final InputStream body = new ByteArrayInputStream("streamed body".getBytes(StandardCharsets.UTF_8));
+
+        try (ServerSocket capture = new ServerSocket(0)) {
+            final CompletableFuture<String> raw = CompletableFuture.supplyAsync(() -> readChunkedRequest(capture));
+
+            final Response resp = Requests.post(new Request("http://127.0.0.1:" + capture.getLocalPort()).body(body));
+
+            assertThat(resp.status(), is(200));
+            final String request = raw.get(5, TimeUnit.SECONDS);
+            assertThat(request, containsString("Transfer-Encoding: chunked\r\n"));
+            assertThat(request, endsWith("\r\n\r\nd\r\nstreamed body\r\n0\r\n\r\n"));
+        }
+    }
+
+    private static String readHeadAndSkipBody(ServerSocket capture) {
+        try (Socket socket = capture.accept()) {
+            final InputStream in = socket.getInputStream();
+            final String head = readUntil(in, "\r\n\r\n");
+            long remaining = LARGE_BODY_SIZE;
+            final byte[] buffer = new byte[8192];
+            while (remaining > 0) {
+                final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Body is shorter than expected, " + remaining + " bytes missing");
+                }
+                remaining -= read;
+            }
+            respond(socket);
+            return head;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String readChunkedRequest(ServerSocket capture) {
+        try (Socket socket = capture.accept()) {
+            final String request = readUntil(socket.getInputStream(), "0\r\n\r\n");
+            respond(socket);
+            return request;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String readUntil(InputStream in, String terminator) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (!new String(out.toByteArray(), StandardCharsets.ISO_8859_1).endsWith(terminator)) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("Unexpected end of request");
+            }
+            out.write(b);
+        }
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static void respond(Socket socket) throws IOException {
+        socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+}
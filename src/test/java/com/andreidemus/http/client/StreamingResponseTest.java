@@ -0,0 +1,121 @@
+package com.andreidemus.http.client;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class StreamingResponseTest extends RequestsTest {
+    private static final int BODY_SIZE = 1024 * 1024;
+
+    @Test
+    public void testLargeBodyIsReadCompletely() throws Exception {
+        server.stubResponse(stub(BODY_SIZE));
+
+        final Response resp = Requests.get(getUrl("/large"));
+
+        assertThat(resp.body().length, is(BODY_SIZE));
+    }
+
+    @Test
+    public void testLargeBodyIsReadCompletelyByUrlConnection() throws Exception {
+        server.stubResponse(stub(BODY_SIZE));
+        final RequestsClient client = RequestsClient.builder()
+                                                    .engine(Engine.URL_CONNECTION)
+                                                    .build();
+
+        final Response resp = client.get(new Request(getUrl("/large")));
+
+        assertThat(resp.body().length, is(BODY_SIZE));
+    }
+
+    @Test
+    public void testLargeChunkedBodyIsReadCompletely() throws Exception {
+        final StringBuilder sb = new StringBuilder("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n");
+        for (int i = 0; i < 100; i++) {
+            sb.append("2710\r\n").append(body(10000)).append("\r\n");
+        }
+        server.stubResponse(sb.append("0\r\n\r\n").toString());
+
+        final Response resp = Requests.get(getUrl("/large-chunked"));
+
+        assertThat(resp.body().length, is(1000000));
+    }
+
+    @Test
+    public void testStreamedBody() throws Exception {
+        server.stubResponse(stub(BODY_SIZE));
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+
+        long total = 0;
+        try (Response resp = client.stream(new Request(getUrl("/streamed")))) {
+            assertThat(resp.isStreamed(), is(true));
+            assertThat(client.poolStats().leased(), is(1));
+
+            final InputStream in = resp.bodyStream();
+            final byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                total += read;
+            }
+        }
+
+        assertThat(total, is((long) BODY_SIZE));
+        assertThat(client.poolStats().leased(), is(0));
+        assertThat(client.poolStats().idle(), is(1));
+    }
+
+    @Test
+    public void testStreamedBodyChannel() throws Exception {
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+
+        try (Response resp = client.stream(new Request(getUrl("/streamed-channel")))) {
+            final ReadableByteChannel channel = resp.bodyChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(64);
+            while (channel.read(buffer) >= 0) {
+            }
+            assertThat(buffer.position(), is(21));
+        }
+    }
+
+    @Test
+    public void testNotConsumedStreamDiscardsConnection() throws Exception {
+        server.stubResponse(stub(BODY_SIZE));
+        final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+
+        final Response resp = client.stream(new Request(getUrl("/not-consumed")));
+        resp.close();
+
+        assertThat(client.poolStats().leased(), is(0));
+        assertThat(client.poolStats().idle(), is(0));
+        assertThat(client.poolStats().evicted(), is(1L));
+    }
+
+    @Test
+    public void testStreamedBodyReadIntoMemory() throws Exception {
+        final Response resp = RequestsClient.builder().engine(Engine.NIO).build().stream(new Request(getUrl("/into-memory")));
+
+        assertThat(resp.text(), is("This is response body"));
+        assertThat(resp.isStreamed(), is(false));
+    }
+
+    private static String stub(int bodySize) {
+        return "HTTP/1.1 200 OK\r\n" +
+                "Content-Length: " + bodySize + "\r\n" +
+                "\r\n" +
+                body(bodySize);
+    }
+
+    private static String body(int size) {
+        final StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.andreidemus.http.common;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+public class HeadersTest {
+    @Test
+    public void testLookupIgnoresCase() throws Exception {
+        final Headers headers = Headers.builder()
+                                       .add("X-Custom", "value1")
+                                       .add("content-type", "text/plain")
+                                       .add("x-custom", "value2")
+                                       .build();
+
+        assertThat(headers.size(), is(3));
+        assertThat(headers.get("X-CUSTOM"), contains("value1", "value2"));
+        assertThat(headers.first("Content-Type"), is("text/plain"));
+        assertThat(headers.first("CONTENT-TYPE"), is("text/plain"));
+        assertThat(headers.contains("Content-Length"), is(false));
+        assertThat(headers.first("Content-Length"), is(nullValue()));
+        assertThat(headers.get("Content-Length"), is(empty()));
+    }
+
+    @Test
+    public void testWellKnownNamesAreInterned() throws Exception {
+        final Headers headers = Headers.builder()
+                                       .add(new String("content-LENGTH".toCharArray()), "5")
+                                       .add("X-Custom", "value")
+                                       .build();
+
+        assertThat(headers.name(0), is(sameInstance(Headers.CONTENT_LENGTH)));
+        assertThat(headers.name(1), is("X-Custom"));
+        assertThat(Headers.canonicalName("etag"), is(sameInstance(Headers.ETAG)));
+        assertThat(Headers.canonicalName("X-Custom"), is("X-Custom"));
+    }
+
+    @Test
+    public void testBuilderKeepsOrderAndReplaces() throws Exception {
+        final Headers original = Headers.builder()
+                                        .add("Accept", "text/plain")
+                                        .add("X-Custom", "value1")
+                                        .add("accept", "text/html")
+                                        .add("X-Other", "value")
+                                        .build();
+
+        final Headers changed = original.toBuilder()
+                                        .set("ACCEPT", "application/json")
+                                        .remove("x-custom")
+                                        .build();
+
+        assertThat(changed.size(), is(2));
+        assertThat(changed.name(0), is("X-Other"));
+        assertThat(changed.first("Accept"), is("application/json"));
+        assertThat(original.get("Accept"), contains("text/plain", "text/html"));
+        assertThat(original.first("X-Custom"), is("value1"));
+    }
+
+    @Test
+    public void testMapView() throws Exception {
+        final Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("Accept", Arrays.asList("text/plain", "text/html"));
+        map.put(null, singletonList("HTTP/1.1 200 OK"));
+        map.put("X-Empty", null);
+
+        final Headers headers = Headers.of(map);
+
+        assertThat(headers.size(), is(2));
+        assertThat(headers.asMap().get("accept"), contains("text/plain", "text/html"));
+        assertThat(headers.asMap(), is(sameInstance(headers.asMap())));
+        assertThat(headers, is(Headers.of(map)));
+    }
+}
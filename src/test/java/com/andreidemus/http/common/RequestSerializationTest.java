@@ -0,0 +1,172 @@
+package com.andreidemus.http.common;
+
+import com.andreidemus.http.server.Responses;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class RequestSerializationTest {
+    @Test
+    public void testWritesRequestLineAndHeaders() throws Exception {
+        final Request request = new Request("http://example.com:8080/api").path("items")
+                                                                          .pathParam("page", 2)
+                                                                          .pathParam("q", "a b&c")
+                                                                          .header("Accept", "text/plain");
+
+        assertThat(write(request), is("GET /api/items?page=2&q=a+b%26c HTTP/1.1\r\n" +
+                "Host: example.com:8080\r\n" +
+                "Accept: text/plain\r\n" +
+                "\r\n"));
+        assertThat(write(new Request("http://example.com")), startsWith("GET / HTTP/1.1\r\n"));
+    }
+
+    @Test
+    public void testEncodesParamsSameAsUrlEncoder() throws Exception {
+        final String value = "a b*~-_.+/é€😀\uD800!";
+        final Request request = new Request("http://example.com").pathParam("q", value)
+                                                                 .pathParam("ключ", 1)
+                                                                 .formParam("f", value);
+
+        final String written = write(request);
+
+        assertThat(written, startsWith("GET /?" + request.pathParamsAsString() + " HTTP/1.1\r\n"));
+        final String form = request.formParamsAsString();
+        assertThat(written, is("GET /?" + request.pathParamsAsString() + " HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Content-Length: " + form.length() + "\r\n" +
+                "\r\n" +
+                form));
+    }
+
+    @Test
+    public void testStreamedBodyOfUnknownLengthIsChunked() throws Exception {
+        final Request request = new Request("http://example.com").method("POST")
+                                                                 .body(new ByteArrayInputStream("streamed body".getBytes(StandardCharsets.US_ASCII)));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        final long written = request.writeTo(Channels.newChannel(out));
+
+        final String expected = "POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "d\r\nstreamed body\r\n" +
+                "0\r\n\r\n";
+        assertThat(out.toString("US-ASCII"), is(expected));
+        assertThat(written, is((long) expected.length()));
+    }
+
+    @Test
+    public void testWrittenBodyIsChunked() throws Exception {
+        final Request request = new Request("http://example.com").method("POST")
+                                                                 .header("Content-Type", "text/plain")
+                                                                 .body("codec body", BodyCodecs.of(BodyCodecs.TEXT));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        request.writeTo(Channels.newChannel(out));
+
+        assertThat(out.toString("US-ASCII"), is("POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "a\r\ncodec body\r\n" +
+                "0\r\n\r\n"));
+    }
+
+    @Test
+    public void testHostHeaderReplacesDefault() throws Exception {
+        final Request request = new Request("http://127.0.0.1:8080").header("Host", "example.com")
+                                                                    .header("Accept", "text/plain");
+
+        assertThat(write(request), is("GET / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Accept: text/plain\r\n" +
+                "\r\n"));
+    }
+
+    @Test
+    public void testFramingFollowsBody() throws Exception {
+        final Request streamed = new Request("http://example.com").method("POST")
+                                                                  .header("Content-Length", "3")
+                                                                  .body(new ByteArrayInputStream("streamed".getBytes(StandardCharsets.US_ASCII)));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamed.writeTo(Channels.newChannel(out));
+
+        assertThat(out.toString("US-ASCII"), is("POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "8\r\nstreamed\r\n" +
+                "0\r\n\r\n"));
+        assertThat(write(new Request("http://example.com").method("POST")
+                                                          .header("Transfer-Encoding", "chunked")
+                                                          .body("sized")), is("POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Content-Length: 5\r\n" +
+                "\r\n" +
+                "sized"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLineBreakInHeaderIsRejected() throws Exception {
+        write(new Request("http://example.com").header("X-Custom", "value\r\nX-Injected: true"));
+    }
+
+    @Test
+    public void testRequestLargerThanBufferOverflows() throws Exception {
+        final Request request = new Request("http://example.com").method("POST")
+                                                                 .body(new byte[1024]);
+        try {
+            request.writeTo(ByteBuffer.allocate(512));
+            fail("BufferOverflowException expected");
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testServerReadsWrittenRequest() throws Exception {
+        final Responses server = new Responses();
+        final int port = server.start(0);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            final Request request = new Request("http://127.0.0.1:" + port).method("POST")
+                                                                           .path("forms")
+                                                                           .header("X-Custom", "value")
+                                                                           .formParam("name", "value with spaces");
+
+            request.writeTo(channel);
+            channel.read(ByteBuffer.allocate(1024));
+
+            final Queue<Request> requests = server.requests();
+            assertThat(requests.size(), is(1));
+            final Request received = requests.poll();
+            assertThat(received.method(), is("POST"));
+            assertThat(received.path(), is("/forms"));
+            assertThat(received.headers().get("x-custom"), contains("value"));
+            assertThat(received.bodyAsString(), is("name=value+with+spaces"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String write(Request request) {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        request.writeTo(buffer);
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+    }
+}
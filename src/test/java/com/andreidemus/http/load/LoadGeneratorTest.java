@@ -0,0 +1,92 @@
+package com.andreidemus.http.load;
+
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.server.Responses;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+
+public class LoadGeneratorTest {
+    private Responses server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Responses();
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testClosedLoop() throws Exception {
+        final LoadReport report = LoadGenerator.builder()
+                                               .request(new Request(getUrl("/closed")))
+                                               .concurrency(2)
+                                               .duration(Duration.ofMillis(300))
+                                               .build()
+                                               .run();
+
+        assertThat(report.requests(), is(greaterThan(0L)));
+        assertThat(report.responses(2), is(report.requests()));
+        assertThat(report.errors(), is(0L));
+        assertThat(report.latency().count(), is(report.requests()));
+        assertThat(report.serviceTime(), is(report.latency()));
+        assertThat(report.throughput(), is(greaterThan(0.0)));
+    }
+
+    @Test
+    public void testOpenLoopKeepsRate() throws Exception {
+        final LoadReport report = LoadGenerator.builder()
+                                               .request(new Request(getUrl("/open")))
+                                               .concurrency(4)
+                                               .duration(Duration.ofMillis(500))
+                                               .rate(40)
+                                               .build()
+                                               .run();
+
+        assertThat(report.requests(), is(20L));
+        assertThat(report.serviceTime().count(), is(20L));
+        assertThat(report.latency().maxNanos(), is(greaterThanOrEqualTo(report.serviceTime().maxNanos())));
+        assertThat(report.toString(), containsString("service time"));
+    }
+
+    @Test
+    public void testTemplatesAreUsedInTurns() throws Exception {
+        LoadGenerator.builder()
+                     .request(new Request(getUrl("/first")))
+                     .request(new Request(getUrl("/second")))
+                     .duration(Duration.ofMillis(100))
+                     .rate(40)
+                     .build()
+                     .run();
+
+        assertThat(server.requests().stream().map(Request::path).distinct().count(), is(2L));
+    }
+
+    @Test
+    public void testSelfTest() throws Exception {
+        final List<LoadReport> reports = LoadGenerator.selfTest(Duration.ofMillis(200));
+
+        assertThat(reports.size(), is(2));
+        assertThat(reports.get(0).requests(), is(greaterThan(0L)));
+        assertThat(reports.get(1).requests(), is(allOf(greaterThan(0L), lessThanOrEqualTo(reports.get(0).requests()))));
+    }
+
+    private String getUrl(String path) {
+        return "http://127.0.0.1:" + server.port() + path;
+    }
+}
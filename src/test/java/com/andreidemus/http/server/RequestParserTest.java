@@ -0,0 +1,166 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.common.Request;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class RequestParserTest {
+    @Test
+    public void testParsesRequestFedByteByByte() throws Exception {
+        final RequestParser parser = new RequestParser();
+        final String request = "\r\n" +
+                "POST /items?page=2 HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "X-Custom:   value:with:colons  \r\n" +
+                "x-custom: second\r\n" +
+                "Content-Length: 4\r\n" +
+                "\r\n" +
+                "body";
+        final ByteBuffer src = ascii(request);
+
+        int consumed = 0;
+        while (!parser.isHeadComplete()) {
+            final ByteBuffer portion = ByteBuffer.wrap(src.array(), consumed, 1);
+            parser.parseHead(portion);
+            consumed = portion.position();
+        }
+
+        assertThat(request.substring(consumed), is("body"));
+        assertThat(parser.method(), is(sameInstance("POST")));
+        assertThat(parser.target(), is("/items?page=2"));
+        assertThat(parser.version(), is("HTTP/1.1"));
+        assertThat(parser.headers().get("X-CUSTOM"), contains("value:with:colons", "second"));
+        assertThat(parser.contentLength(), is(4L));
+        final Request parsed = parser.request(new byte[0]);
+        assertThat(parsed.path(), is("/items?page=2"));
+        assertThat(parsed.headers().get("host"), contains("localhost"));
+    }
+
+    @Test
+    public void testLeavesBodyInBuffer() throws Exception {
+        final RequestParser parser = new RequestParser();
+        final ByteBuffer src = ascii("PUT  /lf-only  HTTP/1.0\n" +
+                "Not a header\n" +
+                "Accept: */*\n" +
+                "\n" +
+                "rest");
+
+        assertThat(parser.parseHead(src), is(true));
+
+        assertThat(parser.method(), is("PUT"));
+        assertThat(parser.target(), is("/lf-only"));
+        assertThat(parser.version(), is("HTTP/1.0"));
+        assertThat(parser.headers().size(), is(1));
+        assertThat(parser.contentLength(), is(-1L));
+        assertThat(src.remaining(), is(4));
+    }
+
+    @Test
+    public void testResetForNextRequest() throws Exception {
+        final RequestParser parser = new RequestParser();
+        final ByteBuffer src = ascii("GET /first HTTP/1.1\r\n\r\nGET /second HTTP/1.1\r\nAccept: */*\r\n\r\n");
+
+        assertThat(parser.parseHead(src), is(true));
+        assertThat(parser.target(), is("/first"));
+        parser.reset();
+        assertThat(parser.parseHead(src), is(true));
+
+        assertThat(parser.target(), is("/second"));
+        assertThat(parser.headers().first("Accept"), is("*/*"));
+        assertThat(src.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void testDecodesChunkedBody() throws Exception {
+        final RequestParser parser = new RequestParser();
+        final ByteBuffer src = ascii("POST /upload HTTP/1.1\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "5;ext=1\r\nhello\r\n" +
+                "7\r\n, world\r\n" +
+                "0\r\n" +
+                "Trailer: value\r\n" +
+                "\r\n" +
+                "GET /next");
+        final RequestBody body = new RequestBody(null, 1024, -1);
+
+        assertThat(parser.parseHead(src), is(true));
+        assertThat(parser.isChunked(), is(true));
+        while (!parser.isDone()) {
+            final int limit = src.limit();
+            src.limit(src.position() + 1);
+            parser.decodeBody(src, body);
+            src.limit(limit);
+        }
+
+        assertThat(body.complete(parser).bodyAsString(), is("hello, world"));
+        assertThat(src.remaining(), is(9));
+    }
+
+    @Test
+    public void testRejectsMalformedChunks() throws Exception {
+        final String head = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n";
+        assertRejectedBody(head + "zz\r\n", "Invalid chunk size");
+        assertRejectedBody(head + "\r\n", "Invalid chunk size");
+        assertRejectedBody(head + "3\r\ntoo long\r\n", "Chunk is longer than its size");
+        assertRejectedBody(head + "1000000000000000\r\n", "Chunk size is too large");
+        assertRejected(new RequestParser(), "POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n", "Unsupported Transfer-Encoding");
+    }
+
+    @Test
+    public void testRejectsMalformedHead() throws Exception {
+        assertRejected(new RequestParser(), "GET\r\n\r\n", "Start line is invalid");
+        assertRejected(new RequestParser(), "GET / FTP/1.0\r\n\r\n", "Start line is invalid");
+        assertRejected(new RequestParser(64, 1024), "GET /" + repeat('a', 64) + " HTTP/1.1\r\n\r\n", "Request line exceeds 64 bytes");
+        assertRejected(new RequestParser(64, 1024), "GET / HTTP/1.1\r\nX: " + repeat('a', 64) + "\r\n\r\n", "Header line exceeds 64 bytes");
+
+        final StringBuilder head = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 50; i++) {
+            head.append("X-Header-").append(i).append(": value\r\n");
+        }
+        assertRejected(new RequestParser(64, 512), head.append("\r\n").toString(), "Request head exceeds 512 bytes");
+
+        assertRejected(new RequestParser(), "POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n", "Invalid Content-Length");
+    }
+
+    private static void assertRejectedBody(String request, String message) throws Exception {
+        final RequestParser parser = new RequestParser();
+        final ByteBuffer src = ascii(request);
+        parser.parseHead(src);
+        try {
+            parser.decodeBody(src, new RequestBody(null, 1024, -1));
+            fail("HttpServerException expected for " + request);
+        } catch (HttpServerException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+
+    private static void assertRejected(RequestParser parser, String head, String message) {
+        try {
+            parser.parseHead(ascii(head));
+            fail("HttpServerException expected for " + head);
+        } catch (HttpServerException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+
+    private static String repeat(char c, int times) {
+        final char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static ByteBuffer ascii(String str) {
+        return ByteBuffer.wrap(str.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -2,10 +2,24 @@ package com.andreidemus.http.server;
 
 import com.andreidemus.http.common.Request;
 import com.andreidemus.http.client.Requests;
+import com.andreidemus.http.client.Engine;
+import com.andreidemus.http.client.RequestsClient;
 import com.andreidemus.http.common.Response;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.hasSize;
@@ -62,4 +76,269 @@ public class ResponsesTest {
         assertThat(r.header("Content-Length"), hasItem("21"));
         assertThat(r.bodyAsString(), is("Stubbed response body"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSlowClientsDoNotBlockOthers() throws Exception {
+        final Responses server = new Responses(1);
+        final int port = server.start(0);
+        final List<Socket> slowClients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                final Socket socket = new Socket("127.0.0.1", port);
+                socket.getOutputStream().write("GET /slow HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+                slowClients.add(socket);
+            }
+
+            final Response r = Requests.get("http://127.0.0.1:" + port + "/fast");
+
+            assertThat(r.status(), is(200));
+            for (Socket socket : slowClients) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write("Host: 127.0.0.1\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                assertThat(readAll(socket.getInputStream()).startsWith("HTTP/1.1 200 OK"), is(true));
+            }
+            assertThat(server.requests(), hasSize(51));
+        } finally {
+            for (Socket socket : slowClients) {
+                socket.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testMalformedRequestIsRejected() throws Exception {
+        final Responses server = new Responses(1);
+        final int port = server.start(0);
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("NOT-HTTP\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+            assertThat(readAll(socket.getInputStream()).startsWith("HTTP/1.1 400 Bad Request\r\n"), is(true));
+            assertThat(server.requests(), hasSize(0));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testBodyArrivingLaterIsWaitedFor() throws Exception {
+        final Responses server = new Responses(1);
+        final int port = server.start(0);
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("POST /late HTTP/1.1\r\nConnection: close\r\nContent-Length: 9\r\n\r\nlate".getBytes(StandardCharsets.US_ASCII));
+            Thread.sleep(100);
+            socket.getOutputStream().write(" body".getBytes(StandardCharsets.US_ASCII));
+
+            assertThat(readAll(socket.getInputStream()).startsWith("HTTP/1.1 200 OK"), is(true));
+            assertThat(server.requests().poll().bodyAsString(), is("late body"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testChunkedBodyIsDecoded() throws Exception {
+        final Responses server = new Responses(1);
+        final int port = server.start(0);
+        try {
+            final byte[] content = "streamed request body".getBytes(StandardCharsets.UTF_8);
+
+            Requests.post(new Request("http://127.0.0.1:" + port).path("chunked").body(new ByteArrayInputStream(content)));
+
+            final Request received = server.requests().poll();
+            assertThat(received.headers().get("Transfer-Encoding"), hasItem("chunked"));
+            assertThat(received.bodyAsString(), is("streamed request body"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testLargeBodyIsSpilledToFile() throws Exception {
+        final Path directory = Files.createTempDirectory("responses-test");
+        final Responses server = Responses.builder()
+                                          .eventLoops(1)
+                                          .maxInMemoryBody(1024)
+                                          .spillDirectory(directory)
+                                          .build();
+        final int port = server.start(0);
+        try {
+            final byte[] content = new byte[256 * 1024];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) ('a' + i % 26);
+            }
+
+            Requests.post(new Request("http://127.0.0.1:" + port).path("large").body(content));
+            Requests.post(new Request("http://127.0.0.1:" + port).path("small").body("small body"));
+
+            final Queue<Request> requests = server.requests();
+            final Request large = requests.poll();
+            assertThat(large.hasBodySource(), is(true));
+            assertThat(large.bodySource().length(), is((long) content.length));
+            try (InputStream in = Channels.newInputStream(large.bodySource().open())) {
+                assertThat(readAll(in), is(new String(content, StandardCharsets.UTF_8)));
+            }
+            assertThat(requests.poll().bodyAsString(), is("small body"));
+            assertThat(directoryEntries(directory), is(1L));
+
+            server.stop();
+            assertThat(directoryEntries(directory), is(0L));
+        } finally {
+            server.stop();
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testSpilledBodyIsDeletedWithItsRequest() throws Exception {
+        final Path directory = Files.createTempDirectory("responses-test");
+        final Responses server = Responses.builder()
+                                          .eventLoops(1)
+                                          .maxInMemoryBody(16)
+                                          .maxRecordedRequests(1)
+                                          .spillDirectory(directory)
+                                          .build();
+        final int port = server.start(0);
+        try {
+            final String body = "a body larger than the in-memory limit";
+
+            Requests.post(new Request("http://127.0.0.1:" + port).path("first").body(body));
+            Requests.post(new Request("http://127.0.0.1:" + port).path("second").body(body));
+            assertThat(directoryEntries(directory), is(1L));
+
+            server.clearRequests();
+            assertThat(directoryEntries(directory), is(0L));
+        } finally {
+            server.stop();
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testConnectionIsKeptAlive() throws Exception {
+        final Responses server = new Responses(1);
+        final int port = server.start(0);
+        try {
+            final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+
+            client.get(new Request("http://127.0.0.1:" + port).path("first"));
+            client.post(new Request("http://127.0.0.1:" + port).path("second").body("body"));
+
+            assertThat(server.requests(), hasSize(2));
+            assertThat(client.poolStats().created(), is(1L));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testOnlyRecentRequestsAreRecorded() throws Exception {
+        final Responses server = Responses.builder()
+                                          .eventLoops(1)
+                                          .maxRecordedRequests(2)
+                                          .build();
+        final int port = server.start(0);
+        try {
+            final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+            for (int i = 1; i <= 3; i++) {
+                client.get(new Request("http://127.0.0.1:" + port).path(String.valueOf(i)));
+            }
+
+            final Queue<Request> requests = server.requests();
+            assertThat(requests.poll().path(), is("/2"));
+            assertThat(requests.poll().path(), is("/3"));
+            assertThat(requests.isEmpty(), is(true));
+            server.clearRequests();
+            assertThat(server.requests().isEmpty(), is(true));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testPipelinedRequestsAreAnsweredInOrder() throws Exception {
+        final Responses server = Responses.builder()
+                                          .eventLoops(1)
+                                          .maxRequestsPerConnection(3)
+                                          .build();
+        final int port = server.start(0);
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET /1 HTTP/1.1\r\n\r\n" +
+                    "POST /2 HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody" +
+                    "GET /3 HTTP/1.1\r\n\r\n" +
+                    "GET /4 HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            // the connection is closed after the third request, the last response says so
+            final String[] responses = readAll(socket.getInputStream()).split("HTTP/1.1 200 OK");
+            assertThat(responses.length, is(4));
+            assertThat(responses[2].contains("Connection: close"), is(false));
+            assertThat(responses[3].contains("Connection: close"), is(true));
+            final Queue<Request> requests = server.requests();
+            assertThat(requests.poll().path(), is("/1"));
+            assertThat(requests.poll().bodyAsString(), is("body"));
+            assertThat(requests.poll().path(), is("/3"));
+            assertThat(requests.isEmpty(), is(true));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testHeadIsAnsweredWithoutBody() throws Exception {
+        final Responses server = new Responses(1);
+        final int port = server.start(0);
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("HEAD /1 HTTP/1.1\r\n\r\n" +
+                    "GET /2 HTTP/1.1\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            final String head = "Server: Http Debug1\n" +
+                    "Content-Type: text/plain; charset=utf-8\n" +
+                    "Content-Length: 21\n" +
+                    "\n";
+            assertThat(readAll(socket.getInputStream()), is("HTTP/1.1 200 OK\n" + head +
+                    "HTTP/1.1 200 OK\nConnection: close\n" + head + "This is response body"));
+            assertThat(server.requests().size(), is(2));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testIdleConnectionIsClosed() throws Exception {
+        final Responses server = Responses.builder()
+                                          .eventLoops(1)
+                                          .idleTimeout(Duration.ofMillis(100))
+                                          .build();
+        final int port = server.start(0);
+        try (Socket idle = new Socket("127.0.0.1", port);
+             Socket http10 = new Socket("127.0.0.1", port)) {
+            idle.setSoTimeout(5000);
+            http10.setSoTimeout(5000);
+            http10.getOutputStream().write("GET / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+            assertThat(idle.getInputStream().read(), is(-1));
+            assertThat(readAll(http10.getInputStream()).startsWith("HTTP/1.1 200 OK"), is(true));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long directoryEntries(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static String readAll(InputStream in) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
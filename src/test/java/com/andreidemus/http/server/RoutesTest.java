@@ -0,0 +1,103 @@
+package com.andreidemus.http.server;
+
+import com.andreidemus.http.client.Engine;
+import com.andreidemus.http.client.RequestsClient;
+import com.andreidemus.http.common.Request;
+import com.andreidemus.http.common.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+
+public class RoutesTest {
+    private final RequestsClient client = RequestsClient.builder().engine(Engine.NIO).build();
+    private Responses server;
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Responses(1);
+        url = "http://127.0.0.1:" + server.start(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testRoutesByMethodQueryAndHeaders() throws Exception {
+        server.stub(Route.builder("GET", "/items").queryParam("q", "a b").build(), Stub.builder(200).body("found").build());
+        server.stub(Route.builder("GET", "/items").header("Accept", "application/json").build(),
+                Stub.builder(200).header("Content-Type", "application/json").body("[]").build());
+        server.stub(Route.get("/items"), Stub.builder(200).body("all items").build());
+        server.stub(Route.post("/items"), Stub.builder(201).body("created").build());
+
+        assertThat(text(new Request(url).path("items").pathParam("page", 1).pathParam("q", "a b")), is("found"));
+        final Response json = client.get(new Request(url).path("items").header("accept", "application/json"));
+        assertThat(json.text(), is("[]"));
+        assertThat(json.header("Content-Type"), contains("application/json"));
+        assertThat(text(new Request(url).path("items").pathParam("q", "other")), is("all items"));
+        final Response created = client.post(new Request(url).path("items").body("item"));
+        assertThat(created.status(), is(201));
+        assertThat(created.reason(), is("Created"));
+        assertThat(created.text(), is("created"));
+        assertThat(server.requests().size(), is(4));
+    }
+
+    @Test
+    public void testRoutesAreTriedInTheOrderTheyWereAdded() throws Exception {
+        server.stub(Route.get("/items"), Stub.builder(200).body("first").build());
+        server.stub(Route.builder("GET", "/items").queryParam("q", "a").build(), Stub.builder(200).body("second").build());
+
+        assertThat(text(new Request(url).path("items").pathParam("q", "a")), is("first"));
+
+        server.clearRoutes();
+        server.stubResponse("HTTP/1.1 200 OK\r\nContent-Length: 8\r\n\r\nfallback");
+
+        assertThat(text(new Request(url).path("items")), is("fallback"));
+    }
+
+    @Test
+    public void testWildcards() throws Exception {
+        server.stub(Route.get("/users/*/orders"), Stub.builder(200).body("orders").build());
+        server.stub(Route.get("/users/me/orders"), Stub.builder(200).body("my orders").build());
+        server.stub(Route.any("/static/**"), Stub.builder(200).body("static").build());
+        server.stub(Route.get("/"), Stub.builder(200).body("root").build());
+
+        assertThat(text(new Request(url).path("users").path("42").path("orders")), is("orders"));
+        assertThat(text(new Request(url).path("users").path("me").path("orders")), is("my orders"));
+        assertThat(text(new Request(url).path("static")), is("static"));
+        assertThat(text(new Request(url).path("static").path("css").path("site.css")), is("static"));
+        assertThat(text(new Request(url)), is("root"));
+        assertThat(text(new Request(url).path("users").path("42")), is("This is response body"));
+    }
+
+    @Test
+    public void testStubsAreFramedByTheirBody() throws Exception {
+        server.stub(Route.get("/utf8"), Stub.builder(200)
+                                            .header("Content-Length", "999")
+                                            .header("Content-Type", "text/plain; charset=utf-8")
+                                            .body("héllo")
+                                            .build());
+        server.stub(Route.any("/empty"), Stub.builder(204).body("ignored").build());
+
+        final Response utf8 = client.get(new Request(url).path("utf8"));
+        assertThat(utf8.header("Content-Length"), contains("6"));
+        assertThat(utf8.text(), is("héllo"));
+        final Response empty = client.delete(new Request(url).path("empty"));
+        assertThat(empty.status(), is(204));
+        assertThat(empty.header("Content-Length"), is(empty()));
+
+        // the connection is kept open after every stub
+        assertThat(client.poolStats().created(), is(1L));
+    }
+
+    private String text(Request request) {
+        return client.get(request).text();
+    }
+}